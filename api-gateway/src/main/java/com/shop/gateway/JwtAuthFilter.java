@@ -10,6 +10,7 @@ import org.springframework.core.Ordered;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.server.reactive.ServerHttpRequest;
 import org.springframework.stereotype.Component;
+import org.springframework.util.AntPathMatcher;
 import org.springframework.web.server.ServerWebExchange;
 import reactor.core.publisher.Mono;
 
@@ -31,13 +32,24 @@ public class JwtAuthFilter implements GlobalFilter, Ordered {
             "/actuator"
     );
 
+    // Административные операции склада внутри открытого /api/inventory требуют токен
+    private final List<String> protectedEndpoints = List.of(
+            "/api/inventory/import",
+            "/api/inventory/product/*/shards",
+            "/api/inventory/product/*/low-stock-threshold",
+            "/api/inventory/product/*/rebuild"
+    );
+
+    private final AntPathMatcher pathMatcher = new AntPathMatcher();
+
     @Override
     public Mono<Void> filter(ServerWebExchange exchange, GatewayFilterChain chain) {
         ServerHttpRequest request = exchange.getRequest();
         String path = request.getPath().toString();
 
         // Пропускаем открытые эндпоинты
-        if (openEndpoints.stream().anyMatch(path::startsWith)) {
+        if (openEndpoints.stream().anyMatch(path::startsWith)
+                && protectedEndpoints.stream().noneMatch(pattern -> pathMatcher.match(pattern, path))) {
             return chain.filter(exchange);
         }
 
@@ -0,0 +1,24 @@
+-- Переход с IDENTITY на последовательности с шагом 50 (pooled optimizer Hibernate).
+-- Один скрипт на все сервисы: таблицы, которых нет в текущей БД, пропускаются.
+-- Выполнить один раз на каждой существующей БД PostgreSQL до запуска новой версии сервисов (см. README).
+-- Скрипт можно запускать повторно: последовательность никогда не сдвигается назад.
+-- Hibernate выдаёт диапазон (nextval - 50, nextval], поэтому достаточно поставить last_value = MAX(id).
+DO $$
+DECLARE
+    t TEXT;
+BEGIN
+    FOREACH t IN ARRAY ARRAY['users', 'products', 'orders', 'order_items', 'outbox_events',
+                             'inventory', 'notifications'] LOOP
+        CONTINUE WHEN to_regclass(t) IS NULL;
+        EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %I START WITH 1 INCREMENT BY 50', t || '_seq');
+        EXECUTE format('SELECT setval(%L, GREATEST(COALESCE(MAX(id), 1), (SELECT last_value FROM %I))) FROM %I',
+                       t || '_seq', t || '_seq', t);
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP IDENTITY IF EXISTS', t);
+    END LOOP;
+    
+    -- Реактивный профиль Order Service вставляет заказы без id и берёт их из тех же последовательностей
+    FOREACH t IN ARRAY ARRAY['orders', 'order_items'] LOOP
+        CONTINUE WHEN to_regclass(t) IS NULL;
+        EXECUTE format('ALTER TABLE %I ALTER COLUMN id SET DEFAULT nextval(%L)', t, t || '_seq');
+    END LOOP;
+END $$;
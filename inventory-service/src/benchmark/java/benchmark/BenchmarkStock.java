@@ -0,0 +1,302 @@
+package benchmark;
+
+import com.shop.inventory.InventoryServiceApplication;
+import com.shop.inventory.dto.InventoryDto;
+import com.shop.inventory.dto.StockUpdateRequest;
+import com.shop.inventory.repository.StockOperation;
+import com.shop.inventory.service.InventoryService;
+import com.shop.inventory.service.ReservationService;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.dao.TransientDataAccessException;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Склад для нагрузочных замеров: контекст inventory-service без веба на встроенной H2
+ * или на локальном Postgres, отдельный диапазон товаров и счётчики исходов.
+ *
+ * Операции идут через ReservationService, как у /api/inventory/reservations: каждый резерв —
+ * отдельный заказ с одним товаром. Отказ из-за нехватки остатка (условие StockOperation
+ * не выполнилось) считается отказом, временная ошибка БД (таймаут блокировки, взаимоблокировка) —
+ * повтором, после max-retries — ошибкой. После прогона verify
+ * сверяет остатки с тем, что прогон подтвердил: продажа сверх остатка и потерянные изменения
+ * видны числом, а не только по пропускной способности.
+ */
+public final class BenchmarkStock implements AutoCloseable {
+    
+    // Выше товаров DataInitializer и тестовых данных
+    static final long FIRST_PRODUCT_ID = 1_000_000L;
+    
+    private final Settings settings;
+    private final ConfigurableApplicationContext context;
+    private final InventoryService inventoryService;
+    private final ReservationService reservationService;
+    private final AtomicLong nextOrderId = new AtomicLong();
+    private final AtomicLongArray confirmed;
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    
+    private BenchmarkStock(Settings settings, ConfigurableApplicationContext context) {
+        this.settings = settings;
+        this.context = context;
+        this.inventoryService = context.getBean(InventoryService.class);
+        this.reservationService = context.getBean(ReservationService.class);
+        this.confirmed = new AtomicLongArray(settings.products());
+    }
+    
+    public static BenchmarkStock start(Settings settings) {
+        if (settings.postgres()) {
+            deleteBenchmarkRows(settings);
+        }
+        ConfigurableApplicationContext context = new SpringApplicationBuilder(InventoryServiceApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(settings.springArguments());
+        BenchmarkStock stock = new BenchmarkStock(settings, context);
+        stock.seed();
+        return stock;
+    }
+    
+    // Товары заводятся пакетами массового импорта; горячие при shards > 0 раскладываются по шардам
+    private void seed() {
+        Map<Long, Integer> chunk = new HashMap<>();
+        for (int i = 0; i < settings.products(); i++) {
+            chunk.put(FIRST_PRODUCT_ID + i, settings.stock());
+            if (chunk.size() == 1000 || i == settings.products() - 1) {
+                inventoryService.importStock(chunk);
+                chunk.clear();
+            }
+        }
+        if (settings.shards() > 0) {
+            for (int i = 0; i < settings.hotProducts(); i++) {
+                inventoryService.enableSharding(FIRST_PRODUCT_ID + i, settings.shards());
+            }
+        }
+    }
+    
+    public long nextProduct() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (settings.distribution() == Distribution.HOT && random.nextDouble() < settings.hotShare()) {
+            return FIRST_PRODUCT_ID + random.nextInt(settings.hotProducts());
+        }
+        return FIRST_PRODUCT_ID + random.nextInt(settings.products());
+    }
+    
+    // Номер заказа с резервом или 0, если остатка не хватило
+    public long reserve(long productId) {
+        long orderId = nextOrderId.incrementAndGet();
+        return execute(StockOperation.RESERVE, orderId, productId) ? orderId : 0;
+    }
+    
+    public boolean confirm(long orderId, long productId) {
+        boolean done = execute(StockOperation.CONFIRM, orderId, productId);
+        if (done) {
+            confirmed.addAndGet((int) (productId - FIRST_PRODUCT_ID), settings.quantity());
+        }
+        return done;
+    }
+    
+    public boolean release(long orderId, long productId) {
+        return execute(StockOperation.RELEASE, orderId, productId);
+    }
+    
+    private boolean execute(StockOperation operation, long orderId, long productId) {
+        StockUpdateRequest item = new StockUpdateRequest();
+        item.setOrderId(orderId);
+        item.setProductId(productId);
+        item.setQuantity(settings.quantity());
+        List<StockUpdateRequest> items = List.of(item);
+        for (int attempt = 0; ; attempt++) {
+            try {
+                switch (operation) {
+                    case RESERVE -> reservationService.reserve(items);
+                    case CONFIRM -> reservationService.confirm(items);
+                    case RELEASE -> reservationService.release(items);
+                }
+                return true;
+            } catch (TransientDataAccessException e) {
+                if (attempt >= settings.maxRetries()) {
+                    errors.increment();
+                    return false;
+                }
+                retries.increment();
+            } catch (RuntimeException e) {
+                if (operation.failure(productId).equals(e.getMessage())) {
+                    rejected.increment();
+                } else {
+                    errors.increment();
+                }
+                return false;
+            }
+        }
+    }
+    
+    public long rejected() {
+        return rejected.sum();
+    }
+    
+    public long retries() {
+        return retries.sum();
+    }
+    
+    public long errors() {
+        return errors.sum();
+    }
+    
+    public Settings settings() {
+        return settings;
+    }
+    
+    // Вызывать, когда все операции завершены: незакрытых резервов быть не должно
+    public Verification verify() {
+        long oversold = 0;
+        long lostUpdates = 0;
+        List<Long> productIds = new ArrayList<>();
+        for (int i = 0; i < settings.products(); i++) {
+            productIds.add(FIRST_PRODUCT_ID + i);
+            if (productIds.size() == 1000 || i == settings.products() - 1) {
+                for (InventoryDto inventory : inventoryService.getByProductIds(productIds)) {
+                    int index = (int) (inventory.getProductId() - FIRST_PRODUCT_ID);
+                    long sold = confirmed.get(index);
+                    oversold += Math.max(0, sold - settings.stock()) + Math.max(0, -inventory.getAvailableQuantity());
+                    lostUpdates += Math.abs(settings.stock() - sold - inventory.getQuantity())
+                            + Math.abs(inventory.getReservedQuantity());
+                }
+                productIds.clear();
+            }
+        }
+        return new Verification(oversold, lostUpdates);
+    }
+    
+    @Override
+    public void close() {
+        context.close();
+    }
+    
+    // Повторные прогоны на одном Postgres начинают с тех же остатков
+    private static void deleteBenchmarkRows(Settings settings) {
+        try (Connection connection = DriverManager.getConnection(
+                settings.jdbcUrl(), settings.dbUser(), settings.dbPassword());
+             Statement statement = connection.createStatement()) {
+            for (String table : List.of("stock_journal", "stock_snapshot", "stock_reservation", "inventory_shard", "inventory")) {
+                statement.executeUpdate("DELETE FROM " + table + " WHERE product_id >= " + FIRST_PRODUCT_ID);
+            }
+        } catch (SQLException e) {
+            // Первый запуск: таблиц ещё нет, их создаст ddl-auto
+            if (!"42P01".equals(e.getSQLState())) {
+                throw new IllegalStateException("Failed to clean benchmark rows", e);
+            }
+        }
+    }
+    
+    public enum Distribution {
+        // hot-share запросов приходится на hot-products товаров
+        HOT,
+        UNIFORM
+    }
+    
+    public record Verification(long oversold, long lostUpdates) {
+    }
+    
+    /**
+     * Параметры прогона; по умолчанию берутся из системных свойств bench.*.
+     */
+    public record Settings(
+            String db,
+            int products,
+            int stock,
+            int quantity,
+            Distribution distribution,
+            int hotProducts,
+            double hotShare,
+            double confirmRatio,
+            int shards,
+            boolean ledger,
+            boolean cache,
+            int pool,
+            int maxRetries) {
+        
+        public static Settings fromSystemProperties() {
+            return new Settings(
+                    System.getProperty("bench.db", "h2"),
+                    Integer.getInteger("bench.products", 1000),
+                    Integer.getInteger("bench.stock", 1_000_000),
+                    Integer.getInteger("bench.quantity", 1),
+                    Distribution.valueOf(System.getProperty("bench.distribution", "hot").toUpperCase()),
+                    Integer.getInteger("bench.hot-products", 1),
+                    Double.parseDouble(System.getProperty("bench.hot-share", "0.9")),
+                    Double.parseDouble(System.getProperty("bench.confirm-ratio", "0.5")),
+                    Integer.getInteger("bench.shards", 0),
+                    Boolean.getBoolean("bench.ledger"),
+                    Boolean.parseBoolean(System.getProperty("bench.cache", "true")),
+                    Integer.getInteger("bench.pool", 32),
+                    Integer.getInteger("bench.max-retries", 3));
+        }
+        
+        public Settings with(Distribution distribution, int shards, boolean ledger) {
+            return new Settings(db, products, stock, quantity, distribution, hotProducts, hotShare,
+                    confirmRatio, shards, ledger, cache, pool, maxRetries);
+        }
+        
+        boolean postgres() {
+            return "postgres".equalsIgnoreCase(db);
+        }
+        
+        String jdbcUrl() {
+            return System.getProperty("bench.jdbc-url", postgres()
+                    ? "jdbc:postgresql://localhost:5436/inventorydb"
+                    : "jdbc:h2:mem:bench;DB_CLOSE_DELAY=-1");
+        }
+        
+        String dbUser() {
+            return System.getProperty("bench.db-user", postgres() ? "postgres" : "sa");
+        }
+        
+        String dbPassword() {
+            return System.getProperty("bench.db-password", postgres() ? "postgres" : "");
+        }
+        
+        // Аргументами командной строки, чтобы перекрыть application.yml
+        String[] springArguments() {
+            Map<String, Object> properties = new HashMap<>();
+            properties.put("spring.main.banner-mode", "off");
+            properties.put("logging.level.root", "WARN");
+            properties.put("spring.datasource.url", jdbcUrl());
+            properties.put("spring.datasource.username", dbUser());
+            properties.put("spring.datasource.password", dbPassword());
+            properties.put("spring.datasource.hikari.maximum-pool-size", pool);
+            properties.put("spring.jpa.show-sql", false);
+            if (!postgres()) {
+                properties.put("spring.datasource.driver-class-name", "org.h2.Driver");
+                properties.put("spring.jpa.properties.hibernate.dialect", "org.hibernate.dialect.H2Dialect");
+            }
+            properties.put("inventory.ledger.enabled", ledger);
+            properties.put("inventory.cache.enabled", cache);
+            properties.put("inventory.low-stock.alerts.enabled", false);
+            return properties.entrySet().stream()
+                    .map(property -> "--" + property.getKey() + "=" + property.getValue())
+                    .toArray(String[]::new);
+        }
+        
+        public String describe() {
+            String keys = distribution == Distribution.HOT
+                    ? String.format("hot (%d of %d products get %.0f%% of requests)", hotProducts, products, hotShare * 100)
+                    : String.format("uniform over %d products", products);
+            return String.format("%s, %s, stock %d, ledger=%s, cache=%s, shards=%d",
+                    db, keys, stock, ledger, cache, shards);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package benchmark;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Резерв, затем подтверждение (доля bench.confirm-ratio) или снятие из bench.threads потоков в течение bench.duration
+ * после прогрева bench.warmup. Печатает пропускную способность, перцентили задержки каждой
+ * операции, отказы, долю повторов и после остановки — продажу сверх остатка и потерянные изменения.
+ *
+ * ./gradlew :inventory-service:contentionBenchmark -Dbench.threads=32 -Dbench.distribution=uniform
+ */
+public final class ContentionBenchmark {
+    
+    private static final String[] OPERATIONS = {"reserve", "confirm", "release"};
+    
+    private ContentionBenchmark() {
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int threads = Integer.getInteger("bench.threads", 16);
+        Duration warmup = Duration.parse("PT" + System.getProperty("bench.warmup", "10s"));
+        Duration duration = Duration.parse("PT" + System.getProperty("bench.duration", "20s"));
+        BenchmarkStock.Settings settings = BenchmarkStock.Settings.fromSystemProperties();
+        
+        try (BenchmarkStock stock = BenchmarkStock.start(settings)) {
+            System.out.printf("%d threads, %s%n", threads, settings.describe());
+            run(stock, threads, warmup);
+            Result result = run(stock, threads, duration);
+            print(stock, result, duration);
+        }
+    }
+    
+    // Счётчики исходов общие для прогрева и замера, поэтому замер считает их разницу
+    private static Result run(BenchmarkStock stock, int threads, Duration duration) throws Exception {
+        Recorder[] recorders = {new Recorder(3), new Recorder(3), new Recorder(3)};
+        LongAdder completed = new LongAdder();
+        long rejected = stock.rejected();
+        long retries = stock.retries();
+        long errors = stock.errors();
+        long deadline = System.nanoTime() + duration.toNanos();
+        
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<?>> workers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            workers.add(executor.submit(() -> {
+                while (System.nanoTime() < deadline) {
+                    long productId = stock.nextProduct();
+                    long start = System.nanoTime();
+                    long orderId = stock.reserve(productId);
+                    long reserved = System.nanoTime();
+                    recorders[0].recordValue(reserved - start);
+                    if (orderId != 0) {
+                        if (ThreadLocalRandom.current().nextDouble() < stock.settings().confirmRatio()) {
+                            stock.confirm(orderId, productId);
+                            recorders[1].recordValue(System.nanoTime() - reserved);
+                        } else {
+                            stock.release(orderId, productId);
+                            recorders[2].recordValue(System.nanoTime() - reserved);
+                        }
+                    }
+                    completed.increment();
+                }
+            }));
+        }
+        for (Future<?> worker : workers) {
+            worker.get();
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        
+        Histogram[] histograms = new Histogram[OPERATIONS.length];
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            histograms[i] = recorders[i].getIntervalHistogram();
+        }
+        return new Result(histograms, completed.sum(), stock.rejected() - rejected,
+                stock.retries() - retries, stock.errors() - errors);
+    }
+    
+    private static void print(BenchmarkStock stock, Result result, Duration duration) {
+        double seconds = duration.toNanos() / 1e9;
+        System.out.printf("%-8s %10s %9s %9s %9s %9s %9s%n", "op", "ops/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        for (int i = 0; i < OPERATIONS.length; i++) {
+            Histogram histogram = result.histograms()[i];
+            System.out.printf("%-8s %10.0f %9.3f %9.3f %9.3f %9.3f %9.3f%n", OPERATIONS[i],
+                    histogram.getTotalCount() / seconds,
+                    millis(histogram.getValueAtPercentile(50)),
+                    millis(histogram.getValueAtPercentile(90)),
+                    millis(histogram.getValueAtPercentile(99)),
+                    millis(histogram.getValueAtPercentile(99.9)),
+                    millis(histogram.getMaxValue()));
+        }
+        
+        long operations = 0;
+        for (Histogram histogram : result.histograms()) {
+            operations += histogram.getTotalCount();
+        }
+        System.out.printf("orders %d (%.0f/s), rejected %d, retries %d (%.2f%% of operations), errors %d%n",
+                result.orders(), result.orders() / seconds, result.rejected(), result.retries(),
+                operations == 0 ? 0.0 : result.retries() * 100.0 / (operations + result.retries()),
+                result.errors());
+        
+        BenchmarkStock.Verification verification = stock.verify();
+        System.out.printf("oversold %d, lost updates %d%n", verification.oversold(), verification.lostUpdates());
+    }
+    
+    private static double millis(long nanos) {
+        return nanos / 1e6;
+    }
+    
+    private record Result(Histogram[] histograms, long orders, long rejected, long retries, long errors) {
+    }
+}
@@ -0,0 +1,112 @@
+package benchmark;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * JMH-замер резерва по заказу с подтверждением или снятием.
+ *
+ * Остальные параметры склада берутся из bench.*, как у ContentionBenchmark. Отказы и повторы
+ * выводятся вспомогательными счётчиками, после замера сверяются остатки: продажа сверх остатка
+ * завершает прогон ошибкой.
+ *
+ * ./gradlew :inventory-service:jmh -Pjmh="ReservationBenchmark -t 32 -p distribution=hot -p shards=8"
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 3)
+@Measurement(iterations = 3, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Threads(16)
+@State(Scope.Benchmark)
+public class ReservationBenchmark {
+    
+    @Param({"hot", "uniform"})
+    public String distribution;
+    
+    @Param({"0"})
+    public int shards;
+    
+    @Param({"false"})
+    public boolean ledger;
+    
+    private BenchmarkStock stock;
+    
+    @Setup(Level.Trial)
+    public void start() {
+        BenchmarkStock.Settings settings = BenchmarkStock.Settings.fromSystemProperties()
+                .with(BenchmarkStock.Distribution.valueOf(distribution.toUpperCase()), shards, ledger);
+        stock = BenchmarkStock.start(settings);
+    }
+    
+    @TearDown(Level.Trial)
+    public void verify() {
+        try {
+            BenchmarkStock.Verification verification = stock.verify();
+            System.out.printf("%n%s: rejected %d, retries %d, errors %d, oversold %d, lost updates %d%n",
+                    stock.settings().describe(), stock.rejected(), stock.retries(), stock.errors(),
+                    verification.oversold(), verification.lostUpdates());
+            if (verification.oversold() > 0) {
+                throw new IllegalStateException("Oversold " + verification.oversold() + " units");
+            }
+        } finally {
+            stock.close();
+        }
+    }
+    
+    @Benchmark
+    public boolean reserveAndConfirm(Outcomes outcomes) {
+        long productId = stock.nextProduct();
+        long orderId = stock.reserve(productId);
+        return outcomes.count(orderId != 0 && stock.confirm(orderId, productId));
+    }
+    
+    @Benchmark
+    public boolean reserveAndRelease(Outcomes outcomes) {
+        long productId = stock.nextProduct();
+        long orderId = stock.reserve(productId);
+        return outcomes.count(orderId != 0 && stock.release(orderId, productId));
+    }
+    
+    /**
+     * Исходы вызовов потока; JMH суммирует их по потокам и делит на время замера.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Outcomes {
+        
+        public long completed;
+        
+        public long failed;
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            completed = 0;
+            failed = 0;
+        }
+        
+        boolean count(boolean done) {
+            if (done) {
+                completed++;
+            } else {
+                failed++;
+            }
+            return done;
+        }
+    }
+}
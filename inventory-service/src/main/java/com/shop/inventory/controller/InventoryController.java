@@ -1,14 +1,27 @@
 package com.shop.inventory.controller;
 
+import com.shop.inventory.dto.BatchStockRequest;
 import com.shop.inventory.dto.InventoryDto;
+import com.shop.inventory.dto.LowStockDto;
+import com.shop.inventory.dto.LowStockPageDto;
 import com.shop.inventory.dto.StockCheckResponse;
+import com.shop.inventory.dto.StockImportResponse;
+import com.shop.inventory.dto.StockJournalEntryDto;
+import com.shop.inventory.dto.StockReplayDto;
 import com.shop.inventory.dto.StockUpdateRequest;
 import com.shop.inventory.service.InventoryService;
+import com.shop.inventory.service.InventoryStream;
+import com.shop.inventory.service.StockImport;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.List;
 
 @RestController
@@ -17,12 +30,28 @@ import java.util.List;
 public class InventoryController {
     
     private final InventoryService inventoryService;
+    private final InventoryStream inventoryStream;
+    private final StockImport stockImport;
     
     @GetMapping
     public ResponseEntity<List<InventoryDto>> getAllInventory() {
         return ResponseEntity.ok(inventoryService.getAllInventory());
     }
     
+    // Снимок остатков, затем дельты по изменившимся товарам; productIds=1,2 ограничивает поток этими товарами
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestParam(required = false) List<Long> productIds) {
+        return inventoryStream.subscribe(productIds);
+    }
+    
+    // Товары ниже порога, сначала с меньшим остатком
+    @GetMapping("/low-stock")
+    public ResponseEntity<LowStockPageDto> getLowStock(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(inventoryService.getLowStock(page, size));
+    }
+    
     @GetMapping("/product/{productId}")
     public ResponseEntity<InventoryDto> getByProductId(@PathVariable Long productId) {
         return ResponseEntity.ok(inventoryService.getByProductId(productId));
@@ -35,11 +64,62 @@ public class InventoryController {
         return ResponseEntity.ok(inventoryService.checkStock(productId, quantity));
     }
     
+    @PutMapping("/product/{productId}/shards")
+    public ResponseEntity<InventoryDto> enableSharding(
+            @PathVariable Long productId,
+            @RequestParam Integer count) {
+        return ResponseEntity.ok(inventoryService.enableSharding(productId, count));
+    }
+    
+    @DeleteMapping("/product/{productId}/shards")
+    public ResponseEntity<InventoryDto> disableSharding(@PathVariable Long productId) {
+        return ResponseEntity.ok(inventoryService.disableSharding(productId));
+    }
+    
+    @PutMapping("/product/{productId}/low-stock-threshold")
+    public ResponseEntity<LowStockDto> setLowStockThreshold(
+            @PathVariable Long productId,
+            @RequestParam Integer threshold) {
+        return ResponseEntity.ok(inventoryService.setLowStockThreshold(productId, threshold));
+    }
+    
+    @DeleteMapping("/product/{productId}/low-stock-threshold")
+    public ResponseEntity<LowStockDto> resetLowStockThreshold(@PathVariable Long productId) {
+        return ResponseEntity.ok(inventoryService.setLowStockThreshold(productId, null));
+    }
+    
+    // Записи журнала товара после afterId по возрастанию id: аудит и догон копии остатков
+    @GetMapping("/product/{productId}/journal")
+    public ResponseEntity<List<StockJournalEntryDto>> getJournal(
+            @PathVariable Long productId,
+            @RequestParam(defaultValue = "0") long afterId,
+            @RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(inventoryService.getJournal(productId, afterId, limit));
+    }
+    
+    @GetMapping("/product/{productId}/replay")
+    public ResponseEntity<StockReplayDto> replayJournal(@PathVariable Long productId) {
+        return ResponseEntity.ok(inventoryService.replayJournal(productId));
+    }
+    
+    @PostMapping("/product/{productId}/rebuild")
+    public ResponseEntity<StockReplayDto> rebuildFromJournal(@PathVariable Long productId) {
+        return ResponseEntity.ok(inventoryService.rebuildFromJournal(productId));
+    }
+    
     @PostMapping("/add")
     public ResponseEntity<InventoryDto> addStock(@Valid @RequestBody StockUpdateRequest request) {
         return ResponseEntity.ok(inventoryService.addStock(request.getProductId(), request.getQuantity()));
     }
     
+    // Фид поставщика: тело читается потоком и применяется кусками, см. StockImport
+    @PostMapping(value = "/import", consumes = {"text/csv", "application/x-ndjson"})
+    public ResponseEntity<StockImportResponse> importStock(
+            @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+            InputStream body) throws IOException {
+        return ResponseEntity.ok(stockImport.importStock(body, contentType));
+    }
+    
     @PostMapping("/reserve")
     public ResponseEntity<InventoryDto> reserveStock(@Valid @RequestBody StockUpdateRequest request) {
         return ResponseEntity.ok(inventoryService.reserveStock(request.getProductId(), request.getQuantity()));
@@ -54,4 +134,24 @@ public class InventoryController {
     public ResponseEntity<InventoryDto> releaseReservation(@Valid @RequestBody StockUpdateRequest request) {
         return ResponseEntity.ok(inventoryService.releaseReservation(request.getProductId(), request.getQuantity()));
     }
+    
+    @PostMapping("/batch/check")
+    public ResponseEntity<List<StockCheckResponse>> checkStockBatch(@Valid @RequestBody BatchStockRequest request) {
+        return ResponseEntity.ok(inventoryService.checkStockBatch(request.getItems()));
+    }
+    
+    @PostMapping("/batch/reserve")
+    public ResponseEntity<List<InventoryDto>> reserveStockBatch(@Valid @RequestBody BatchStockRequest request) {
+        return ResponseEntity.ok(inventoryService.reserveStockBatch(request.getItems()));
+    }
+    
+    @PostMapping("/batch/confirm")
+    public ResponseEntity<List<InventoryDto>> confirmReservationBatch(@Valid @RequestBody BatchStockRequest request) {
+        return ResponseEntity.ok(inventoryService.confirmReservationBatch(request.getItems()));
+    }
+    
+    @PostMapping("/batch/release")
+    public ResponseEntity<List<InventoryDto>> releaseReservationBatch(@Valid @RequestBody BatchStockRequest request) {
+        return ResponseEntity.ok(inventoryService.releaseReservationBatch(request.getItems()));
+    }
 }
@@ -0,0 +1,40 @@
+package com.shop.inventory.controller;
+
+import com.shop.inventory.dto.BatchStockRequest;
+import com.shop.inventory.dto.ReservationDto;
+import com.shop.inventory.service.ReservationService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+// Резервы по заказам: у каждого элемента обязателен orderId, повтор запроса ничего не меняет
+@RestController
+@RequestMapping("/api/inventory/reservations")
+@RequiredArgsConstructor
+public class ReservationController {
+    
+    private final ReservationService reservationService;
+    
+    @PostMapping("/reserve")
+    public ResponseEntity<List<ReservationDto>> reserve(@Valid @RequestBody BatchStockRequest request) {
+        return ResponseEntity.ok(reservationService.reserve(request.getItems()));
+    }
+    
+    @PostMapping("/pin")
+    public ResponseEntity<List<ReservationDto>> pin(@Valid @RequestBody BatchStockRequest request) {
+        return ResponseEntity.ok(reservationService.pin(request.getItems()));
+    }
+    
+    @PostMapping("/confirm")
+    public ResponseEntity<List<ReservationDto>> confirm(@Valid @RequestBody BatchStockRequest request) {
+        return ResponseEntity.ok(reservationService.confirm(request.getItems()));
+    }
+    
+    @PostMapping("/release")
+    public ResponseEntity<List<ReservationDto>> release(@Valid @RequestBody BatchStockRequest request) {
+        return ResponseEntity.ok(reservationService.release(request.getItems()));
+    }
+}
@@ -0,0 +1,15 @@
+package com.shop.inventory.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchStockRequest {
+    
+    @NotEmpty(message = "At least one item is required")
+    @Valid
+    private List<StockUpdateRequest> items;
+}
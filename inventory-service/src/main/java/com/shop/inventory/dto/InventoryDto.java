@@ -15,4 +15,6 @@ public class InventoryDto {
     private Integer quantity;
     private Integer reservedQuantity;
     private Integer availableQuantity;
+    private Integer shardCount;
+    private Long version;
 }
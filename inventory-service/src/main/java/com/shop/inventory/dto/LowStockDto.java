@@ -0,0 +1,16 @@
+package com.shop.inventory.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LowStockDto {
+    private Long productId;
+    private Integer availableQuantity;
+    private Integer threshold;
+}
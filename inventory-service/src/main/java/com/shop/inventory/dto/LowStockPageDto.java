@@ -0,0 +1,20 @@
+package com.shop.inventory.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class LowStockPageDto {
+    private List<LowStockDto> items;
+    private int page;
+    private int size;
+    private long totalElements;
+    private int totalPages;
+}
@@ -0,0 +1,19 @@
+package com.shop.inventory.dto;
+
+import com.shop.inventory.model.StockReservation;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class ReservationDto {
+    private Long orderId;
+    private Long productId;
+    private Integer quantity;
+    private StockReservation.Status status;
+    private LocalDateTime expiresAt;
+}
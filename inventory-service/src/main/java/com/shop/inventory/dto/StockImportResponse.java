@@ -0,0 +1,25 @@
+package com.shop.inventory.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+@AllArgsConstructor
+public class StockImportResponse {
+    private long rows;
+    private long applied;
+    private long created;
+    private long rejected;
+    private List<RowError> errors;
+    
+    @Data
+    @AllArgsConstructor
+    public static class RowError {
+        private long line;
+        private String reason;
+    }
+}
@@ -0,0 +1,21 @@
+package com.shop.inventory.dto;
+
+import com.shop.inventory.model.StockJournalEntry;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockJournalEntryDto {
+    private Long id;
+    private Long productId;
+    private StockJournalEntry.Type type;
+    private Integer quantity;
+    private LocalDateTime createdAt;
+}
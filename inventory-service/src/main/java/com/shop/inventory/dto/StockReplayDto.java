@@ -0,0 +1,32 @@
+package com.shop.inventory.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Остаток товара, восстановленный по журналу (последний снимок и записи после него),
+ * рядом с текущей строкой inventory.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReplayDto {
+    private Long productId;
+    // null — снимка нет, история читается с записи CREATE
+    private Long snapshotJournalId;
+    private LocalDateTime snapshotAt;
+    private Integer entriesReplayed;
+    private Integer quantity;
+    private Integer reservedQuantity;
+    private Integer availableQuantity;
+    private Integer currentQuantity;
+    private Integer currentReservedQuantity;
+    private boolean consistent;
+    // Строка перезаписана остатком из журнала (POST .../rebuild)
+    private boolean rebuilt;
+}
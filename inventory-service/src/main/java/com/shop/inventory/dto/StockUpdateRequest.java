@@ -7,6 +7,9 @@ import lombok.Data;
 @Data
 public class StockUpdateRequest {
     
+    // Заказ, под который держится резерв (/api/inventory/reservations/*)
+    private Long orderId;
+    
     @NotNull(message = "Product ID is required")
     private Long productId;
     
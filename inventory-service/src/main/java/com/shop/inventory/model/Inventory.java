@@ -5,6 +5,7 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Formula;
 
 import java.time.LocalDateTime;
 
@@ -17,7 +18,8 @@ import java.time.LocalDateTime;
 public class Inventory {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_seq")
+    @SequenceGenerator(name = "inventory_seq", sequenceName = "inventory_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "product_id", unique = true, nullable = false)
@@ -29,6 +31,26 @@ public class Inventory {
     @Column(name = "reserved_quantity")
     private Integer reservedQuantity = 0;
     
+    // Число шардов (InventoryShard) у горячего товара; null или 0 — весь остаток в этой строке
+    @Column(name = "shard_count")
+    private Integer shardCount;
+    
+    // Суммы по шардам: в шардированном режиме quantity и reservedQuantity строки обнулены
+    @Formula("(SELECT COALESCE(SUM(s.quantity), 0) FROM inventory_shard s WHERE s.product_id = product_id)")
+    private Integer shardQuantity;
+    
+    @Formula("(SELECT COALESCE(SUM(s.reserved_quantity), 0) FROM inventory_shard s WHERE s.product_id = product_id)")
+    private Integer shardReservedQuantity;
+    
+    // Ниже этого остатка товар попадает в LowStockIndex; null — порог по умолчанию (inventory.low-stock.default-threshold)
+    @Column(name = "low_stock_threshold")
+    private Integer lowStockThreshold;
+    
+    // Растёт с каждым изменением строки: по ней StockCache не даёт старому значению вытеснить новое
+    @Builder.Default
+    @Column(columnDefinition = "bigint default 0")
+    private Long version = 0L;
+    
     @Column(name = "updated_at")
     private LocalDateTime updatedAt;
     
@@ -38,7 +60,20 @@ public class Inventory {
         updatedAt = LocalDateTime.now();
     }
     
+    public boolean isSharded() {
+        return shardCount != null && shardCount > 0;
+    }
+    
+    public Integer getTotalQuantity() {
+        return quantity + (shardQuantity != null ? shardQuantity : 0);
+    }
+    
+    public Integer getTotalReservedQuantity() {
+        return (reservedQuantity != null ? reservedQuantity : 0)
+                + (shardReservedQuantity != null ? shardReservedQuantity : 0);
+    }
+    
     public Integer getAvailableQuantity() {
-        return quantity - (reservedQuantity != null ? reservedQuantity : 0);
+        return getTotalQuantity() - getTotalReservedQuantity();
     }
 }
@@ -0,0 +1,40 @@
+package com.shop.inventory.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Часть остатка товара в шардированном режиме (Inventory.shardCount > 0).
+ *
+ * Остаток горячего товара разложен по нескольким строкам, чтобы параллельные резервы
+ * блокировали разные строки. Доступное количество товара — сумма по всем его шардам.
+ */
+@Entity
+@Table(name = "inventory_shard",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"product_id", "shard_no"}))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class InventoryShard {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_shard_seq")
+    @SequenceGenerator(name = "inventory_shard_seq", sequenceName = "inventory_shard_seq", allocationSize = 50)
+    private Long id;
+    
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    
+    @Column(name = "shard_no", nullable = false)
+    private Integer shardNo;
+    
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    @Column(name = "reserved_quantity", nullable = false)
+    private Integer reservedQuantity;
+}
@@ -0,0 +1,53 @@
+package com.shop.inventory.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запись журнала остатков: одна применённая операция над товаром. Журнал только дописывается.
+ *
+ * id выдаёт БД при вставке (IDENTITY, а не последовательность с шагом 50): запись вставляется
+ * под блокировкой строки товара, поэтому записи одного товара идут по id в порядке применения
+ * и на нескольких инстансах. Пакетом записи вставляет StockJournalWritesImpl, а не Hibernate.
+ */
+@Entity
+@Table(name = "stock_journal",
+        indexes = @Index(name = "idx_stock_journal_product", columnList = "product_id, id"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockJournalEntry {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+    
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Type type;
+    
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+    
+    public enum Type {
+        // Строка товара создана с начальным остатком
+        CREATE,
+        ADD,
+        RESERVE,
+        CONFIRM,
+        // Как и сама операция, не опускает резерв ниже нуля
+        RELEASE
+    }
+}
@@ -0,0 +1,63 @@
+package com.shop.inventory.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Резерв товара под заказ. Пока резерв в HELD, его количество входит в Inventory.reservedQuantity;
+ * после expires_at его снимает ReservationService.releaseExpired. У резерва принятого заказа
+ * expires_at пустой: он держится до подтверждения или снятия.
+ */
+@Entity
+@Table(name = "stock_reservation",
+        uniqueConstraints = @UniqueConstraint(columnNames = {"order_id", "product_id"}),
+        indexes = @Index(name = "idx_stock_reservation_expiry", columnList = "status, expires_at"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReservation {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_reservation_seq")
+    @SequenceGenerator(name = "stock_reservation_seq", sequenceName = "stock_reservation_seq", allocationSize = 50)
+    private Long id;
+    
+    @Column(name = "order_id", nullable = false)
+    private Long orderId;
+    
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false)
+    private Status status;
+    
+    @Column(name = "expires_at")
+    private LocalDateTime expiresAt;
+    
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+    
+    @PrePersist
+    @PreUpdate
+    protected void onUpdate() {
+        updatedAt = LocalDateTime.now();
+    }
+    
+    public enum Status {
+        HELD,
+        CONFIRMED,
+        RELEASED,
+        // Снят сборщиком по истечении срока; подтверждение заберёт остаток заново, если он есть
+        EXPIRED
+    }
+}
@@ -0,0 +1,44 @@
+package com.shop.inventory.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Снимок остатка товара: состояние после всех записей журнала с id не больше journalId.
+ * Восстановление берёт последний снимок и дочитывает записи после него.
+ */
+@Entity
+@Table(name = "stock_snapshot",
+        indexes = @Index(name = "idx_stock_snapshot_product", columnList = "product_id, journal_id"))
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockSnapshot {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "stock_snapshot_seq")
+    @SequenceGenerator(name = "stock_snapshot_seq", sequenceName = "stock_snapshot_seq", allocationSize = 50)
+    private Long id;
+    
+    @Column(name = "product_id", nullable = false)
+    private Long productId;
+    
+    // 0 — записей журнала у товара ещё не было (начальный снимок строки, созданной до журнала)
+    @Column(name = "journal_id", nullable = false)
+    private Long journalId;
+    
+    @Column(nullable = false)
+    private Integer quantity;
+    
+    @Column(name = "reserved_quantity", nullable = false)
+    private Integer reservedQuantity;
+    
+    @Column(name = "created_at", nullable = false)
+    private LocalDateTime createdAt;
+}
@@ -1,12 +1,36 @@
 package com.shop.inventory.repository;
 
 import com.shop.inventory.model.Inventory;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface InventoryRepository extends JpaRepository<Inventory, Long> {
+public interface InventoryRepository extends JpaRepository<Inventory, Long>, InventoryStockUpdates {
     Optional<Inventory> findByProductId(Long productId);
+    List<Inventory> findByProductIdIn(Collection<Long> productIds);
+    
+    // Строка товара блокируется на время переключения в шардированный режим и обратно
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM Inventory i WHERE i.productId = :productId")
+    Optional<Inventory> lockByProductId(Long productId);
+    
+    // Снимки журнала (StockJournal): строки куска блокируются одним запросом по возрастанию product_id,
+    // как и в пакетных UPDATE. Шардированные строки не выбираются, их снимки берутся по одной
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT i FROM Inventory i WHERE i.productId IN :productIds AND COALESCE(i.shardCount, 0) = 0 " +
+            "ORDER BY i.productId")
+    List<Inventory> lockUnshardedByProductIdIn(Collection<Long> productIds);
+    
+    // Только порог: остатки строки могут одновременно менять условные UPDATE и запись StockLedger
+    @Modifying
+    @Query("UPDATE Inventory i SET i.lowStockThreshold = :threshold WHERE i.productId = :productId")
+    int updateLowStockThreshold(Long productId, Integer threshold);
 }
@@ -0,0 +1,19 @@
+package com.shop.inventory.repository;
+
+import com.shop.inventory.model.InventoryShard;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface InventoryShardRepository extends JpaRepository<InventoryShard, Long> {
+    
+    // Переключение режима блокирует все шарды товара, чтобы сложить их остатки без потерь
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT s FROM InventoryShard s WHERE s.productId = :productId ORDER BY s.shardNo")
+    List<InventoryShard> lockByProductId(Long productId);
+}
@@ -0,0 +1,42 @@
+package com.shop.inventory.repository;
+
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.model.InventoryShard;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Атомарные изменения остатков без чтения строки в Java.
+ *
+ * Каждая позиция — один условный UPDATE, все позиции уходят одним JDBC-пакетом.
+ * Для каждой позиции возвращается число изменённых строк: 0 означает, что условие
+ * не выполнилось (не хватает остатка или резерва), строки нет или товар шардирован.
+ *
+ * У шардированного товара остаток лежит в inventory_shard, и меняется он по одному шарду:
+ * updateShard возвращает 1, если шард смог отдать всё запрошенное количество.
+ */
+public interface InventoryStockUpdates {
+    
+    int[] reserve(Map<Long, Integer> quantities);
+    
+    int[] confirm(Map<Long, Integer> quantities);
+    
+    int[] release(Map<Long, Integer> quantities);
+    
+    int add(Long productId, int quantity);
+    
+    int[] add(Map<Long, Integer> quantities);
+    
+    int[] applyDeltas(Map<Long, StockDelta> deltas);
+    
+    int updateShard(StockOperation operation, Long productId, int shardNo, int quantity);
+    
+    int addToShard(Long productId, int shardNo, int quantity);
+    
+    // Текущие остатки простым SELECT, без загрузки сущностей в контекст Hibernate; шарды уже просуммированы
+    List<Inventory> readStock(Collection<Long> productIds);
+    
+    List<InventoryShard> readShards(Long productId);
+}
@@ -0,0 +1,166 @@
+package com.shop.inventory.repository;
+
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.model.InventoryShard;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+@RequiredArgsConstructor
+class InventoryStockUpdatesImpl implements InventoryStockUpdates {
+    
+    // Строки шардированных товаров не подходят под условие: их остаток лежит в inventory_shard
+    private static final String UNSHARDED = " AND COALESCE(shard_count, 0) = 0";
+    
+    // Каждое изменение строки увеличивает её версию (см. StockCache)
+    private static final String NEXT_VERSION = ", version = COALESCE(version, 0) + 1 ";
+    
+    private static final String RESERVE = "UPDATE inventory " +
+            "SET reserved_quantity = COALESCE(reserved_quantity, 0) + ?, updated_at = ?" + NEXT_VERSION +
+            "WHERE product_id = ? AND quantity - COALESCE(reserved_quantity, 0) >= ?" + UNSHARDED;
+    
+    private static final String CONFIRM = "UPDATE inventory " +
+            "SET quantity = quantity - ?, reserved_quantity = reserved_quantity - ?, updated_at = ?" + NEXT_VERSION +
+            "WHERE product_id = ? AND reserved_quantity >= ?" + UNSHARDED;
+    
+    private static final String RELEASE = "UPDATE inventory " +
+            "SET reserved_quantity = GREATEST(COALESCE(reserved_quantity, 0) - ?, 0), updated_at = ?" + NEXT_VERSION +
+            "WHERE product_id = ?" + UNSHARDED;
+    
+    private static final String ADD = "UPDATE inventory " +
+            "SET quantity = quantity + ?, updated_at = ?" + NEXT_VERSION +
+            "WHERE product_id = ?" + UNSHARDED;
+    
+    private static final String RESERVE_SHARD = "UPDATE inventory_shard " +
+            "SET reserved_quantity = reserved_quantity + ? " +
+            "WHERE product_id = ? AND shard_no = ? AND quantity - reserved_quantity >= ?";
+    
+    private static final String CONFIRM_SHARD = "UPDATE inventory_shard " +
+            "SET quantity = quantity - ?, reserved_quantity = reserved_quantity - ? " +
+            "WHERE product_id = ? AND shard_no = ? AND reserved_quantity >= ?";
+    
+    private static final String RELEASE_SHARD = "UPDATE inventory_shard " +
+            "SET reserved_quantity = reserved_quantity - ? " +
+            "WHERE product_id = ? AND shard_no = ? AND reserved_quantity >= ?";
+    
+    private static final String ADD_TO_SHARD = "UPDATE inventory_shard SET quantity = quantity + ? " +
+            "WHERE product_id = ? AND shard_no = ?";
+    
+    // Изменения из StockLedger: приращения, а не значения, поэтому суммы строки и шардов сходятся
+    private static final String APPLY_DELTA = "UPDATE inventory " +
+            "SET quantity = quantity + ?, reserved_quantity = COALESCE(reserved_quantity, 0) + ?, updated_at = ?" +
+            NEXT_VERSION + "WHERE product_id = ?";
+    
+    // Остаток товара — его строка плюс сумма шардов. Шарды суммируются только у шардированных строк:
+    // на больших пачках (массовый импорт) соединение со сгруппированными шардами обходится дороже
+    private static final String READ = "SELECT i.id, i.product_id, i.quantity, i.reserved_quantity, " +
+            "i.shard_count, COALESCE(i.version, 0) AS version, i.updated_at, " +
+            shardSum("quantity") + ", " + shardSum("reserved_quantity") + " " +
+            "FROM inventory i WHERE i.product_id IN (:productIds)";
+    
+    private static final String READ_SHARDS = "SELECT id, product_id, shard_no, quantity, reserved_quantity " +
+            "FROM inventory_shard WHERE product_id = ? ORDER BY shard_no";
+    
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    
+    private static String shardSum(String column) {
+        return "CASE WHEN COALESCE(i.shard_count, 0) > 0 THEN (SELECT COALESCE(SUM(s." + column + "), 0) " +
+                "FROM inventory_shard s WHERE s.product_id = i.product_id) ELSE 0 END AS shard_" + column;
+    }
+    
+    @Override
+    public int[] reserve(Map<Long, Integer> quantities) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> args.add(new Object[]{quantity, now, productId, quantity}));
+        return jdbcTemplate.getJdbcOperations().batchUpdate(RESERVE, args);
+    }
+    
+    @Override
+    public int[] confirm(Map<Long, Integer> quantities) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> args.add(new Object[]{quantity, quantity, now, productId, quantity}));
+        return jdbcTemplate.getJdbcOperations().batchUpdate(CONFIRM, args);
+    }
+    
+    @Override
+    public int[] release(Map<Long, Integer> quantities) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> args.add(new Object[]{quantity, now, productId}));
+        return jdbcTemplate.getJdbcOperations().batchUpdate(RELEASE, args);
+    }
+    
+    @Override
+    public int add(Long productId, int quantity) {
+        return jdbcTemplate.getJdbcOperations()
+                .update(ADD, quantity, Timestamp.valueOf(LocalDateTime.now()), productId);
+    }
+    
+    @Override
+    public int[] add(Map<Long, Integer> quantities) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> args.add(new Object[]{quantity, now, productId}));
+        return jdbcTemplate.getJdbcOperations().batchUpdate(ADD, args);
+    }
+    
+    @Override
+    public int[] applyDeltas(Map<Long, StockDelta> deltas) {
+        Timestamp now = Timestamp.valueOf(LocalDateTime.now());
+        List<Object[]> args = new ArrayList<>();
+        deltas.forEach((productId, delta) -> args.add(
+                new Object[]{delta.quantity(), delta.reservedQuantity(), now, productId}));
+        return jdbcTemplate.getJdbcOperations().batchUpdate(APPLY_DELTA, args);
+    }
+    
+    @Override
+    public int updateShard(StockOperation operation, Long productId, int shardNo, int quantity) {
+        return switch (operation) {
+            case RESERVE -> jdbcTemplate.getJdbcOperations()
+                    .update(RESERVE_SHARD, quantity, productId, shardNo, quantity);
+            case CONFIRM -> jdbcTemplate.getJdbcOperations()
+                    .update(CONFIRM_SHARD, quantity, quantity, productId, shardNo, quantity);
+            case RELEASE -> jdbcTemplate.getJdbcOperations()
+                    .update(RELEASE_SHARD, quantity, productId, shardNo, quantity);
+        };
+    }
+    
+    @Override
+    public int addToShard(Long productId, int shardNo, int quantity) {
+        return jdbcTemplate.getJdbcOperations().update(ADD_TO_SHARD, quantity, productId, shardNo);
+    }
+    
+    @Override
+    public List<Inventory> readStock(Collection<Long> productIds) {
+        return jdbcTemplate.query(READ, Map.of("productIds", productIds), (rs, rowNum) -> Inventory.builder()
+                .id(rs.getLong("id"))
+                .productId(rs.getLong("product_id"))
+                .quantity(rs.getInt("quantity"))
+                .reservedQuantity(rs.getInt("reserved_quantity"))
+                .shardCount(rs.getObject("shard_count", Integer.class))
+                .version(rs.getLong("version"))
+                .shardQuantity(rs.getInt("shard_quantity"))
+                .shardReservedQuantity(rs.getInt("shard_reserved_quantity"))
+                .updatedAt(rs.getObject("updated_at", LocalDateTime.class))
+                .build());
+    }
+    
+    @Override
+    public List<InventoryShard> readShards(Long productId) {
+        return jdbcTemplate.getJdbcOperations().query(READ_SHARDS, (rs, rowNum) -> InventoryShard.builder()
+                .id(rs.getLong("id"))
+                .productId(rs.getLong("product_id"))
+                .shardNo(rs.getInt("shard_no"))
+                .quantity(rs.getInt("quantity"))
+                .reservedQuantity(rs.getInt("reserved_quantity"))
+                .build(), productId);
+    }
+}
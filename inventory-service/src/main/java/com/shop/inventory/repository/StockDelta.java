@@ -0,0 +1,7 @@
+package com.shop.inventory.repository;
+
+/**
+ * Накопленное изменение остатка и резерва товара, которое ещё не записано в БД.
+ */
+public record StockDelta(int quantity, int reservedQuantity) {
+}
@@ -0,0 +1,17 @@
+package com.shop.inventory.repository;
+
+import com.shop.inventory.model.StockJournalEntry;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface StockJournalRepository extends JpaRepository<StockJournalEntry, Long>, StockJournalWrites {
+    
+    // Идут по индексу (product_id, id)
+    List<StockJournalEntry> findByProductIdAndIdGreaterThanOrderById(Long productId, Long afterId);
+    
+    List<StockJournalEntry> findByProductIdAndIdGreaterThanOrderById(Long productId, Long afterId, Pageable pageable);
+}
@@ -0,0 +1,18 @@
+package com.shop.inventory.repository;
+
+import com.shop.inventory.model.StockJournalEntry;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Дописывание журнала остатков одним JDBC-пакетом и последние записи товаров для снимков.
+ */
+public interface StockJournalWrites {
+    
+    void append(List<StockJournalEntry> entries);
+    
+    // Товар -> id его последней записи; товаров без записей в ответе нет
+    Map<Long, Long> lastEntryIds(Collection<Long> productIds);
+}
@@ -0,0 +1,41 @@
+package com.shop.inventory.repository;
+
+import com.shop.inventory.model.StockJournalEntry;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@RequiredArgsConstructor
+class StockJournalWritesImpl implements StockJournalWrites {
+    
+    // id выдаёт БД при вставке, см. StockJournalEntry
+    private static final String APPEND = "INSERT INTO stock_journal (product_id, type, quantity, created_at) " +
+            "VALUES (?, ?, ?, ?)";
+    
+    private static final String LAST_ENTRY_IDS = "SELECT product_id, MAX(id) AS last_id FROM stock_journal " +
+            "WHERE product_id IN (:productIds) GROUP BY product_id";
+    
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    
+    @Override
+    public void append(List<StockJournalEntry> entries) {
+        List<Object[]> args = entries.stream()
+                .map(entry -> new Object[]{entry.getProductId(), entry.getType().name(), entry.getQuantity(),
+                        Timestamp.valueOf(entry.getCreatedAt())})
+                .toList();
+        jdbcTemplate.getJdbcOperations().batchUpdate(APPEND, args);
+    }
+    
+    @Override
+    public Map<Long, Long> lastEntryIds(Collection<Long> productIds) {
+        return jdbcTemplate.query(LAST_ENTRY_IDS, Map.of("productIds", productIds),
+                        (rs, rowNum) -> Map.entry(rs.getLong("product_id"), rs.getLong("last_id")))
+                .stream()
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+    }
+}
@@ -0,0 +1,32 @@
+package com.shop.inventory.repository;
+
+import com.shop.inventory.model.InventoryShard;
+
+/**
+ * Изменение остатка, которое выполняется условным UPDATE.
+ */
+public enum StockOperation {
+    RESERVE("Insufficient stock for product: "),
+    CONFIRM("Reserved quantity is lower than confirmed for product: "),
+    RELEASE("Inventory not found for product: ");
+    
+    private final String failure;
+    
+    StockOperation(String failure) {
+        this.failure = failure;
+    }
+    
+    // Текст ошибки, когда условие операции не выполнилось
+    public String failure(Long productId) {
+        return failure + productId;
+    }
+    
+    // Сколько можно отдать под операцию: свободный остаток для резерва, резерв — для остальных
+    public int capacity(int quantity, int reservedQuantity) {
+        return this == RESERVE ? quantity - reservedQuantity : reservedQuantity;
+    }
+    
+    public int capacity(InventoryShard shard) {
+        return capacity(shard.getQuantity(), shard.getReservedQuantity());
+    }
+}
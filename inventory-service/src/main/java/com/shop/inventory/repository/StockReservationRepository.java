@@ -0,0 +1,31 @@
+package com.shop.inventory.repository;
+
+import com.shop.inventory.model.StockReservation;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface StockReservationRepository extends JpaRepository<StockReservation, Long> {
+    List<StockReservation> findByOrderIdInOrderById(Collection<Long> orderIds);
+    
+    // Повторы одного запроса и сборщик истёкших резервов меняют резервы заказа по очереди
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM StockReservation r WHERE r.orderId IN :orderIds ORDER BY r.id")
+    List<StockReservation> lockByOrderIdIn(Collection<Long> orderIds);
+    
+    // Идёт по индексу (status, expires_at)
+    @Query("SELECT r.id FROM StockReservation r WHERE r.status = :status AND r.expiresAt < :now ORDER BY r.expiresAt")
+    List<Long> findIdsByStatusExpiredBefore(StockReservation.Status status, LocalDateTime now, Pageable pageable);
+    
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT r FROM StockReservation r WHERE r.id IN :ids AND r.status = :status ORDER BY r.id")
+    List<StockReservation> lockByIdInAndStatus(Collection<Long> ids, StockReservation.Status status);
+}
@@ -0,0 +1,20 @@
+package com.shop.inventory.repository;
+
+import com.shop.inventory.model.StockSnapshot;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface StockSnapshotRepository extends JpaRepository<StockSnapshot, Long> {
+    Optional<StockSnapshot> findFirstByProductIdOrderByJournalIdDescIdDesc(Long productId);
+    
+    // Строки, созданные до журнала (или DataInitializer), получают начальный снимок
+    @Query("SELECT i.productId FROM Inventory i " +
+            "WHERE NOT EXISTS (SELECT s.id FROM StockSnapshot s WHERE s.productId = i.productId) ORDER BY i.productId")
+    List<Long> findProductIdsWithoutSnapshot(Pageable pageable);
+}
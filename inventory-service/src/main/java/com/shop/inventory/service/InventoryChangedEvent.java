@@ -0,0 +1,11 @@
+package com.shop.inventory.service;
+
+import com.shop.inventory.model.Inventory;
+
+import java.util.List;
+
+/**
+ * Новые остатки товаров, изменённых InventoryService; слушатели получают событие после коммита.
+ */
+public record InventoryChangedEvent(List<Inventory> inventories) {
+}
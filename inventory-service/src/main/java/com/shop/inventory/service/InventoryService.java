@@ -1,36 +1,101 @@
 package com.shop.inventory.service;
 
 import com.shop.inventory.dto.InventoryDto;
+import com.shop.inventory.dto.LowStockDto;
+import com.shop.inventory.dto.LowStockPageDto;
 import com.shop.inventory.dto.StockCheckResponse;
+import com.shop.inventory.dto.StockJournalEntryDto;
+import com.shop.inventory.dto.StockReplayDto;
+import com.shop.inventory.dto.StockUpdateRequest;
 import com.shop.inventory.model.Inventory;
+import com.shop.inventory.model.StockJournalEntry;
 import com.shop.inventory.repository.InventoryRepository;
+import com.shop.inventory.repository.StockOperation;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
+@Slf4j
 public class InventoryService {
     
     private final InventoryRepository inventoryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final ShardedStock shardedStock;
+    private final StockLedger stockLedger;
+    private final StockCache stockCache;
+    private final LowStockIndex lowStockIndex;
+    private final StockJournal stockJournal;
+    private final ApplicationEventPublisher eventPublisher;
+    
+    private static final int MAX_PAGE_SIZE = 100;
     
     public List<InventoryDto> getAllInventory() {
-        return inventoryRepository.findAll().stream()
+        List<Inventory> inventories = stockLedger.isEnabled() ? stockLedger.getAll() : inventoryRepository.findAll();
+        return inventories.stream()
                 .map(this::toDto)
                 .collect(Collectors.toList());
     }
     
     public InventoryDto getByProductId(Long productId) {
-        Inventory inventory = inventoryRepository.findByProductId(productId)
+        Inventory inventory = findInventory(productId)
                 .orElseThrow(() -> new RuntimeException("Inventory not found for product: " + productId));
         return toDto(inventory);
     }
     
+    // Снимок для подписчиков InventoryStream; товары без строки пропускаются
+    public List<InventoryDto> getByProductIds(Collection<Long> productIds) {
+        return new TreeMap<>(loadInventories(productIds)).values().stream()
+                .map(this::toDto)
+                .collect(Collectors.toList());
+    }
+    
+    // Страница берётся из LowStockIndex, таблица не читается
+    public LowStockPageDto getLowStock(int page, int size) {
+        if (page < 0) {
+            throw new RuntimeException("Page index must not be negative");
+        }
+        if (size < 1) {
+            throw new RuntimeException("Page size must be positive");
+        }
+        return lowStockIndex.getPage(page, Math.min(size, MAX_PAGE_SIZE));
+    }
+    
+    // null — порог по умолчанию
+    public LowStockDto setLowStockThreshold(Long productId, Integer threshold) {
+        if (threshold != null && threshold < 0) {
+            throw new RuntimeException("Low-stock threshold must not be negative");
+        }
+        Integer updated = transactionTemplate.execute(
+                status -> inventoryRepository.updateLowStockThreshold(productId, threshold));
+        if (updated == null || updated == 0) {
+            throw new RuntimeException("Inventory not found for product: " + productId);
+        }
+        Inventory inventory = findInventory(productId)
+                .orElseThrow(() -> new RuntimeException("Inventory not found for product: " + productId));
+        return lowStockIndex.setThreshold(inventory, threshold);
+    }
+    
     public StockCheckResponse checkStock(Long productId, Integer requiredQuantity) {
-        return inventoryRepository.findByProductId(productId)
+        return findInventory(productId)
                 .map(inv -> StockCheckResponse.builder()
                         .productId(productId)
                         .inStock(inv.getAvailableQuantity() >= requiredQuantity)
@@ -45,60 +110,393 @@ public class InventoryService {
     
     @Transactional
     public InventoryDto addStock(Long productId, Integer quantity) {
-        Inventory inventory = inventoryRepository.findByProductId(productId)
-                .orElse(Inventory.builder()
-                        .productId(productId)
-                        .quantity(0)
-                        .reservedQuantity(0)
-                        .build());
+        if (stockLedger.isEnabled()) {
+            Inventory inventory = stockLedger.add(productId, quantity);
+            if (inventory != null) {
+                changed(List.of(inventory));
+                return toDto(inventory);
+            }
+        }
         
-        inventory.setQuantity(inventory.getQuantity() + quantity);
-        inventory = inventoryRepository.save(inventory);
+        // Приход по существующей строке — тоже условный UPDATE: резерв не перечитывается и не перезаписывается
+        if (inventoryRepository.add(productId, quantity) == 0) {
+            Optional<Inventory> existing = inventoryRepository.findByProductId(productId);
+            if (existing.isEmpty()) {
+                Inventory inventory = inventoryRepository.save(newInventory(productId, quantity));
+                stockJournal.record(StockJournalEntry.Type.CREATE, Map.of(productId, quantity));
+                if (stockLedger.isEnabled()) {
+                    afterCommit(() -> stockLedger.register(inventory));
+                }
+                changed(List.of(inventory));
+                return toDto(inventory);
+            }
+            
+            // Приход горячего товара ложится в случайный шард
+            Inventory inventory = existing.get();
+            if (!inventory.isSharded() || !shardedStock.add(productId, quantity, inventory.getShardCount())) {
+                throw new RuntimeException("Sharding mode of product " + productId + " changed, please retry");
+            }
+        }
+        stockJournal.record(StockJournalEntry.Type.ADD, Map.of(productId, quantity));
+        Inventory inventory = readStock(Set.of(productId)).get(productId);
+        changed(List.of(inventory));
         return toDto(inventory);
     }
     
+    // Кусок массового импорта (StockImport) в одной транзакции: приход по существующим строкам —
+    // один пакет условных UPDATE, недостающие строки вставляются пакетом. Возвращает товары,
+    // для которых строка создана
     @Transactional
-    public InventoryDto reserveStock(Long productId, Integer quantity) {
-        Inventory inventory = inventoryRepository.findByProductId(productId)
-                .orElseThrow(() -> new RuntimeException("Inventory not found for product: " + productId));
-        
-        if (inventory.getAvailableQuantity() < quantity) {
-            throw new RuntimeException("Insufficient stock for product: " + productId);
+    public Set<Long> importStock(Map<Long, Integer> quantities) {
+        Map<Long, Integer> ordered = new TreeMap<>(quantities);
+        if (stockLedger.isEnabled()) {
+            return importToLedger(ordered);
+        }
+        int[] updated = inventoryRepository.add(ordered);
+        Map<Long, Integer> missed = new TreeMap<>();
+        int i = 0;
+        for (Map.Entry<Long, Integer> entry : ordered.entrySet()) {
+            if (updated[i++] == 0) {
+                missed.put(entry.getKey(), entry.getValue());
+            }
         }
         
-        inventory.setReservedQuantity(inventory.getReservedQuantity() + quantity);
-        inventory = inventoryRepository.save(inventory);
+        Set<Long> created = new TreeSet<>();
+        if (!missed.isEmpty()) {
+            Map<Long, Inventory> existing = readStock(missed.keySet());
+            List<Inventory> inserts = new ArrayList<>();
+            for (Map.Entry<Long, Integer> entry : missed.entrySet()) {
+                Long productId = entry.getKey();
+                Inventory inventory = existing.get(productId);
+                if (inventory == null) {
+                    inserts.add(newInventory(productId, entry.getValue()));
+                    created.add(productId);
+                } else if (!inventory.isSharded()
+                        || !shardedStock.add(productId, entry.getValue(), inventory.getShardCount())) {
+                    throw new RuntimeException("Sharding mode of product " + productId + " changed, please retry");
+                }
+            }
+            inventoryRepository.saveAll(inserts);
+            inventoryRepository.flush();
+        }
+        journal(ordered, created);
+        changed(readStock(ordered.keySet()).values());
+        return created;
+    }
+    
+    // Резерв, подтверждение и снятие — условные UPDATE: проверка и запись атомарны в БД,
+    // параллельные резервы на один товар не теряют обновления и не продают больше остатка.
+    // С включённым StockLedger те же операции выполняются в памяти
+    public InventoryDto reserveStock(Long productId, Integer quantity) {
+        return update(Map.of(productId, quantity), StockOperation.RESERVE).get(0);
+    }
+    
+    public InventoryDto confirmReservation(Long productId, Integer quantity) {
+        return update(Map.of(productId, quantity), StockOperation.CONFIRM).get(0);
+    }
+    
+    public InventoryDto releaseReservation(Long productId, Integer quantity) {
+        return update(Map.of(productId, quantity), StockOperation.RELEASE).get(0);
+    }
+    
+    // Переводит горячий товар в шардированный режим (или меняет число шардов) без остановки резервов
+    @Transactional
+    public InventoryDto enableSharding(Long productId, Integer shardCount) {
+        requireDatabaseStock();
+        if (shardCount == null || shardCount < 2) {
+            throw new RuntimeException("Shard count must be at least 2");
+        }
+        shardedStock.enable(productId, shardCount);
+        inventoryRepository.flush();
+        Inventory inventory = readStock(Set.of(productId)).get(productId);
+        changed(List.of(inventory));
         return toDto(inventory);
     }
     
     @Transactional
-    public InventoryDto confirmReservation(Long productId, Integer quantity) {
-        Inventory inventory = inventoryRepository.findByProductId(productId)
-                .orElseThrow(() -> new RuntimeException("Inventory not found for product: " + productId));
-        
-        inventory.setQuantity(inventory.getQuantity() - quantity);
-        inventory.setReservedQuantity(inventory.getReservedQuantity() - quantity);
-        inventory = inventoryRepository.save(inventory);
+    public InventoryDto disableSharding(Long productId) {
+        requireDatabaseStock();
+        shardedStock.disable(productId);
+        inventoryRepository.flush();
+        Inventory inventory = readStock(Set.of(productId)).get(productId);
+        changed(List.of(inventory));
         return toDto(inventory);
     }
     
+    public List<StockJournalEntryDto> getJournal(Long productId, long afterId, int limit) {
+        return stockJournal.getEntries(productId, afterId, limit);
+    }
+    
+    // Остаток по журналу (StockJournal) рядом с текущей строкой
+    public StockReplayDto replayJournal(Long productId) {
+        return stockJournal.replay(productId);
+    }
+    
+    // Строка, разошедшаяся с журналом, перезаписывается им; StockLedger держит свою копию остатков в памяти
     @Transactional
-    public InventoryDto releaseReservation(Long productId, Integer quantity) {
-        Inventory inventory = inventoryRepository.findByProductId(productId)
-                .orElseThrow(() -> new RuntimeException("Inventory not found for product: " + productId));
+    public StockReplayDto rebuildFromJournal(Long productId) {
+        requireDatabaseStock();
+        StockReplayDto replay = stockJournal.rebuild(productId);
+        if (replay.isRebuilt()) {
+            changed(readStock(Set.of(productId)).values());
+        }
+        return replay;
+    }
+    
+    @Transactional(readOnly = true)
+    public List<StockCheckResponse> checkStockBatch(List<StockUpdateRequest> items) {
+        Map<Long, Integer> quantities = mergeQuantities(items);
+        Map<Long, Inventory> inventories = loadInventories(quantities.keySet());
         
-        inventory.setReservedQuantity(Math.max(0, inventory.getReservedQuantity() - quantity));
-        inventory = inventoryRepository.save(inventory);
-        return toDto(inventory);
+        return quantities.entrySet().stream()
+                .map(entry -> {
+                    Inventory inv = inventories.get(entry.getKey());
+                    int available = inv != null ? inv.getAvailableQuantity() : 0;
+                    return StockCheckResponse.builder()
+                            .productId(entry.getKey())
+                            .inStock(inv != null && available >= entry.getValue())
+                            .availableQuantity(available)
+                            .build();
+                })
+                .collect(Collectors.toList());
+    }
+    
+    // Пакет применяется целиком или откатывается: если хоть одна позиция не прошла, транзакция снимает остальные
+    public List<InventoryDto> reserveStockBatch(List<StockUpdateRequest> items) {
+        return update(mergeQuantities(items), StockOperation.RESERVE);
+    }
+    
+    public List<InventoryDto> confirmReservationBatch(List<StockUpdateRequest> items) {
+        return update(mergeQuantities(items), StockOperation.CONFIRM);
+    }
+    
+    public List<InventoryDto> releaseReservationBatch(List<StockUpdateRequest> items) {
+        return update(mergeQuantities(items), StockOperation.RELEASE);
+    }
+    
+    // Позиции идут по возрастанию product_id, поэтому параллельные пакеты блокируют строки
+    // в одном порядке и не ждут друг друга по кругу. Остатки перечитываются простым SELECT
+    // в той же транзакции: блокировка строки держится только на время двух коротких запросов.
+    // Строки шардированных товаров условие не выбирает, их позиции применяются к шардам.
+    // Резервы по заказам (ReservationService) проходят здесь же
+    public List<InventoryDto> update(Map<Long, Integer> quantities, StockOperation operation) {
+        Map<Long, Integer> ordered = new TreeMap<>(quantities);
+        if (stockLedger.isEnabled()) {
+            return applyToLedger(operation, ordered).stream()
+                    .map(this::toDto)
+                    .collect(Collectors.toList());
+        }
+        return transactionTemplate.execute(status -> {
+            int[] updated = statement(operation, ordered);
+            Map<Long, Inventory> inventories = readStock(ordered.keySet());
+            
+            // Исключение откатывает уже применённые позиции пакета
+            boolean sharded = false;
+            int i = 0;
+            for (Map.Entry<Long, Integer> entry : ordered.entrySet()) {
+                if (updated[i++] > 0) {
+                    continue;
+                }
+                Inventory inventory = inventories.get(entry.getKey());
+                if (inventory == null) {
+                    throw new RuntimeException("Inventory not found for product: " + entry.getKey());
+                }
+                if (!inventory.isSharded() || !applyToShards(operation, inventory, entry.getValue())) {
+                    throw new RuntimeException(operation.failure(entry.getKey()));
+                }
+                sharded = true;
+            }
+            if (sharded) {
+                inventories = readStock(ordered.keySet());
+            }
+            stockJournal.record(operation, ordered);
+            changed(inventories.values());
+            return ordered.keySet().stream()
+                    .map(inventories::get)
+                    .map(this::toDto)
+                    .collect(Collectors.toList());
+        });
+    }
+    
+    // Внутри транзакции ReservationService память не должна расходиться с откаченными записями резервов:
+    // резерв проверяется и берётся сразу и возвращается при откате, подтверждение и снятие только
+    // уменьшают резерв, поэтому применяются после коммита (условия подтверждения проверяются заранее)
+    private List<Inventory> applyToLedger(StockOperation operation, Map<Long, Integer> quantities) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return applyToLedgerNow(operation, quantities);
+        }
+        if (operation == StockOperation.RESERVE) {
+            List<Inventory> inventories = applyToLedgerNow(operation, quantities);
+            afterRollback(() -> applyToLedgerNow(StockOperation.RELEASE, quantities));
+            return inventories;
+        }
+        stockLedger.check(operation, quantities);
+        afterCommit(() -> {
+            try {
+                applyToLedgerNow(operation, quantities);
+            } catch (RuntimeException e) {
+                log.error("Failed to apply committed {} of {} to the stock ledger", operation, quantities, e);
+            }
+        });
+        return quantities.keySet().stream()
+                .flatMap(productId -> stockLedger.get(productId).stream())
+                .collect(Collectors.toList());
+    }
+    
+    private List<Inventory> applyToLedgerNow(StockOperation operation, Map<Long, Integer> quantities) {
+        List<Inventory> inventories = stockLedger.apply(operation, quantities);
+        changed(inventories);
+        return inventories;
+    }
+    
+    // Если товар тем временем вернули к одной строке, шардов уже нет — повторяем по строке
+    private boolean applyToShards(StockOperation operation, Inventory inventory, int quantity) {
+        Long productId = inventory.getProductId();
+        if (shardedStock.apply(operation, productId, quantity, inventory.getShardCount())) {
+            return true;
+        }
+        Inventory current = readStock(Set.of(productId)).get(productId);
+        return current != null && !current.isSharded()
+                && statement(operation, Map.of(productId, quantity))[0] > 0;
+    }
+    
+    private int[] statement(StockOperation operation, Map<Long, Integer> quantities) {
+        return switch (operation) {
+            case RESERVE -> inventoryRepository.reserve(quantities);
+            case CONFIRM -> inventoryRepository.confirm(quantities);
+            case RELEASE -> inventoryRepository.release(quantities);
+        };
+    }
+    
+    private Map<Long, Inventory> readStock(Collection<Long> productIds) {
+        return inventoryRepository.readStock(productIds).stream()
+                .collect(Collectors.toMap(Inventory::getProductId, Function.identity()));
+    }
+    
+    // Новые строки вставляются до изменений в памяти: если вставка упадёт, кусок можно повторить целиком
+    // Память StockLedger меняется только после коммита: откаченный кусок не оставит в ней строк,
+    // которых нет в БД, и повтор куска в StockImport не добавит приход второй раз
+    private Set<Long> importToLedger(Map<Long, Integer> quantities) {
+        List<Inventory> inserts = quantities.entrySet().stream()
+                .filter(entry -> stockLedger.get(entry.getKey()).isEmpty())
+                .map(entry -> newInventory(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+        inventoryRepository.saveAll(inserts);
+        inventoryRepository.flush();
+        stockJournal.record(StockJournalEntry.Type.CREATE, inserts.stream()
+                .collect(Collectors.toMap(Inventory::getProductId, Inventory::getQuantity, Integer::sum, TreeMap::new)));
+        
+        Set<Long> created = inserts.stream().map(Inventory::getProductId).collect(Collectors.toCollection(TreeSet::new));
+        afterCommit(() -> {
+            inserts.forEach(stockLedger::register);
+            List<Inventory> inventories = new ArrayList<>(inserts);
+            quantities.forEach((productId, quantity) -> {
+                if (!created.contains(productId)) {
+                    inventories.add(stockLedger.add(productId, quantity));
+                }
+            });
+            changed(inventories);
+        });
+        return created;
+    }
+    
+    // Без активной транзакции (вызов мимо прокси) действие выполняется сразу
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+    
+    private void afterRollback(Runnable action) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status == STATUS_ROLLED_BACK) {
+                    action.run();
+                }
+            }
+        });
+    }
+    
+    // Созданные строки — записью CREATE, остальные — приходом
+    private void journal(Map<Long, Integer> quantities, Set<Long> created) {
+        Map<Long, Integer> creates = new TreeMap<>();
+        Map<Long, Integer> adds = new TreeMap<>();
+        quantities.forEach((productId, quantity) -> (created.contains(productId) ? creates : adds).put(productId, quantity));
+        stockJournal.record(StockJournalEntry.Type.CREATE, creates);
+        stockJournal.record(StockJournalEntry.Type.ADD, adds);
+    }
+    
+    private Inventory newInventory(Long productId, Integer quantity) {
+        return Inventory.builder()
+                .productId(productId)
+                .quantity(quantity)
+                .reservedQuantity(0)
+                .build();
+    }
+    
+    private Map<Long, Integer> mergeQuantities(List<StockUpdateRequest> items) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (StockUpdateRequest item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+    
+    // Все строки загружаются одним запросом WHERE product_id IN (...)
+    private Map<Long, Inventory> loadInventories(Collection<Long> productIds) {
+        if (stockCache.isEnabled() && !stockLedger.isEnabled()) {
+            return stockCache.getAll(productIds, this::readStock);
+        }
+        List<Inventory> inventories = stockLedger.isEnabled()
+                ? productIds.stream().flatMap(productId -> stockLedger.get(productId).stream()).toList()
+                : inventoryRepository.findByProductIdIn(productIds);
+        return inventories.stream()
+                .collect(Collectors.toMap(Inventory::getProductId, Function.identity()));
+    }
+    
+    // С включённым StockLedger остатки читаются из памяти, иначе — через StockCache
+    private Optional<Inventory> findInventory(Long productId) {
+        if (stockLedger.isEnabled()) {
+            return stockLedger.get(productId);
+        }
+        return stockCache.isEnabled()
+                ? stockCache.get(productId, this::readStock)
+                : inventoryRepository.findByProductId(productId);
+    }
+    
+    // Новые остатки уходят в StockCache и подписчикам InventoryStream после коммита транзакции,
+    // которая их записала; изменения StockLedger — сразу
+    private void changed(Collection<Inventory> inventories) {
+        if (!stockLedger.isEnabled()) {
+            stockCache.updateAfterCommit(inventories);
+        }
+        eventPublisher.publishEvent(new InventoryChangedEvent(List.copyOf(inventories)));
+    }
+    
+    // Шарды и восстановление по журналу меняют строки в обход памяти StockLedger
+    private void requireDatabaseStock() {
+        if (stockLedger.isEnabled()) {
+            throw new RuntimeException("Stock sharding and rebuilds are not available while the in-memory stock ledger is enabled");
+        }
     }
     
     private InventoryDto toDto(Inventory inventory) {
         return InventoryDto.builder()
                 .id(inventory.getId())
                 .productId(inventory.getProductId())
-                .quantity(inventory.getQuantity())
-                .reservedQuantity(inventory.getReservedQuantity())
+                .quantity(inventory.getTotalQuantity())
+                .reservedQuantity(inventory.getTotalReservedQuantity())
                 .availableQuantity(inventory.getAvailableQuantity())
+                .shardCount(inventory.getShardCount())
+                .version(inventory.getVersion())
                 .build();
     }
 }
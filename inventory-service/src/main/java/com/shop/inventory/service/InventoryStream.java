@@ -0,0 +1,221 @@
+package com.shop.inventory.service;
+
+import com.shop.inventory.dto.InventoryDto;
+import com.shop.inventory.dto.StockChangeDto;
+import com.shop.inventory.model.Inventory;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Поток изменений остатков для GET /api/inventory/stream (Server-Sent Events).
+ *
+ * Подписчик сначала получает событие snapshot с текущими остатками, затем события delta только
+ * с изменившимися товарами. Изменения приходят из InventoryService после коммита, копятся по товару
+ * (остаётся последнее) и раз в coalesce-interval уходят подписчикам одним событием: частые резервы
+ * горячего товара дают не больше одной строки за интервал. Строки несут версию inventory, дельта
+ * старше уже отправленного снимка подписчику не отправляется. В простое раз в heartbeat уходит
+ * комментарий, чтобы прокси не закрывали соединение.
+ *
+ * Планировщик только раскладывает изменения по подписчикам; в сокет пишут потоки send-threads,
+ * не больше одной отправки на подписчика. Медленный клиент занимает один такой поток и не держит
+ * общий поток @Scheduled, на котором идут сброс StockLedger и снятие истёкших резервов.
+ *
+ * Подписки живут в памяти инстанса и видят изменения, прошедшие через него.
+ */
+@Component
+@Slf4j
+public class InventoryStream {
+    
+    private final InventoryService inventoryService;
+    private final Duration timeout;
+    private final Duration heartbeat;
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final Map<Long, StockChangeDto> pending = new ConcurrentHashMap<>();
+    private final ExecutorService sender;
+    
+    public InventoryStream(
+            InventoryService inventoryService,
+            MeterRegistry meterRegistry,
+            @Value("${inventory.stream.timeout:30m}") Duration timeout,
+            @Value("${inventory.stream.heartbeat:15s}") Duration heartbeat,
+            @Value("${inventory.stream.send-threads:4}") int sendThreads) {
+        this.inventoryService = inventoryService;
+        this.timeout = timeout;
+        this.heartbeat = heartbeat;
+        this.sender = Executors.newFixedThreadPool(sendThreads, Thread.ofPlatform()
+                .name("inventory-stream-", 0)
+                .daemon(true)
+                .factory());
+        Gauge.builder("inventory.stream.subscribers", subscribers, Set::size)
+                .description("Open inventory change streams")
+                .register(meterRegistry);
+    }
+    
+    // Пустой productIds — все товары
+    public SseEmitter subscribe(Collection<Long> productIds) {
+        Subscriber subscriber = new Subscriber(new SseEmitter(timeout.toMillis()),
+                productIds != null ? Set.copyOf(productIds) : Set.of());
+        SseEmitter emitter = subscriber.emitter;
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(emitter::complete);
+        emitter.onError(e -> subscribers.remove(subscriber));
+        
+        // Подписчик регистрируется до чтения снимка: изменения, закоммиченные во время чтения, придут дельтой
+        subscribers.add(subscriber);
+        try {
+            List<InventoryDto> snapshot = subscriber.productIds.isEmpty()
+                    ? inventoryService.getAllInventory()
+                    : inventoryService.getByProductIds(subscriber.productIds);
+            subscriber.start(snapshot);
+        } catch (RuntimeException e) {
+            subscribers.remove(subscriber);
+            throw e;
+        }
+        return emitter;
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInventoryChanged(InventoryChangedEvent event) {
+        if (subscribers.isEmpty()) {
+            return;
+        }
+        for (Inventory inventory : event.inventories()) {
+            pending.merge(inventory.getProductId(), toChange(inventory), InventoryStream::latest);
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${inventory.stream.coalesce-interval:PT0.2S}")
+    public void flush() {
+        Map<Long, StockChangeDto> batch = new TreeMap<>();
+        for (Long productId : pending.keySet()) {
+            StockChangeDto change = pending.remove(productId);
+            if (change != null) {
+                batch.put(productId, change);
+            }
+        }
+        long now = System.nanoTime();
+        for (Subscriber subscriber : subscribers) {
+            subscriber.offer(batch, now);
+        }
+    }
+    
+    @PreDestroy
+    void stop() {
+        sender.shutdownNow();
+        subscribers.forEach(subscriber -> subscriber.emitter.complete());
+        subscribers.clear();
+    }
+    
+    // У шардированного товара версия строки не меняется, поэтому при равных версиях побеждает пришедшее позже
+    private static StockChangeDto latest(StockChangeDto current, StockChangeDto candidate) {
+        return candidate.getVersion() >= current.getVersion() ? candidate : current;
+    }
+    
+    private static StockChangeDto toChange(Inventory inventory) {
+        return StockChangeDto.builder()
+                .productId(inventory.getProductId())
+                .quantity(inventory.getTotalQuantity())
+                .reservedQuantity(inventory.getTotalReservedQuantity())
+                .availableQuantity(inventory.getAvailableQuantity())
+                .version(inventory.getVersion() != null ? inventory.getVersion() : 0L)
+                .build();
+    }
+    
+    // Отправки одного подписчика идут под его монитором: дельта не обгонит снимок
+    private final class Subscriber {
+        
+        private final SseEmitter emitter;
+        private final Set<Long> productIds;
+        // Ещё не отправленные изменения; планировщик пополняет их под монитором backlog, не дожидаясь отправки
+        private final Map<Long, StockChangeDto> backlog = new TreeMap<>();
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private volatile boolean started;
+        private volatile long lastSent;
+        
+        private Subscriber(SseEmitter emitter, Set<Long> productIds) {
+            this.emitter = emitter;
+            this.productIds = productIds;
+        }
+        
+        private synchronized void start(List<InventoryDto> snapshot) {
+            send(SseEmitter.event().name("snapshot").data(snapshot), System.nanoTime());
+            started = true;
+            synchronized (backlog) {
+                for (InventoryDto inventory : snapshot) {
+                    StockChangeDto change = backlog.get(inventory.getProductId());
+                    if (change != null && inventory.getVersion() != null && change.getVersion() < inventory.getVersion()) {
+                        backlog.remove(inventory.getProductId());
+                    }
+                }
+            }
+        }
+        
+        // Поток планировщика: копит изменения и ставит отправку в пул, если её ещё нет
+        private void offer(Map<Long, StockChangeDto> batch, long now) {
+            boolean due;
+            synchronized (backlog) {
+                batch.forEach((productId, change) -> {
+                    if (productIds.isEmpty() || productIds.contains(productId)) {
+                        backlog.merge(productId, change, InventoryStream::latest);
+                    }
+                });
+                due = !backlog.isEmpty() || now - lastSent >= heartbeat.toNanos();
+            }
+            if (due && started && sending.compareAndSet(false, true)) {
+                try {
+                    sender.execute(this::deliver);
+                } catch (RejectedExecutionException e) {
+                    sending.set(false);
+                }
+            }
+        }
+        
+        // Флаг снимается до чтения backlog: изменения, пришедшие во время отправки, поставят следующую
+        private synchronized void deliver() {
+            sending.set(false);
+            List<StockChangeDto> changes;
+            synchronized (backlog) {
+                changes = List.copyOf(backlog.values());
+                backlog.clear();
+            }
+            long now = System.nanoTime();
+            if (!changes.isEmpty()) {
+                send(SseEmitter.event().name("delta").data(changes), now);
+            } else if (now - lastSent >= heartbeat.toNanos()) {
+                send(SseEmitter.event().comment("ping"), now);
+            }
+        }
+        
+        // Клиент ушёл: соединение закрывается, подписка снимается
+        private void send(SseEmitter.SseEventBuilder event, long now) {
+            try {
+                emitter.send(event);
+                lastSent = now;
+            } catch (IOException | IllegalStateException e) {
+                log.debug("Inventory stream subscriber disconnected: {}", e.getMessage());
+                subscribers.remove(this);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
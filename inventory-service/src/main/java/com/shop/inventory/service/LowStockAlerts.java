@@ -0,0 +1,142 @@
+package com.shop.inventory.service;
+
+import com.shop.inventory.dto.LowStockDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Уведомления о пересечении порога остатка в notification-service.
+ *
+ * Раз в interval забирает пересечения из LowStockIndex и отправляет их одним запросом
+ * на /api/notifications/send-batch получателю user-id. Служебного аккаунта склада в магазине нет,
+ * поэтому получатель задаётся явно: без него уведомления выключены, иначе их получил бы
+ * первый зарегистрированный покупатель. Пачка, которую не удалось
+ * отправить, уходит в следующий раз с теми же eventId, поэтому notification-service не создаст
+ * уведомление дважды, если первая попытка всё же дошла. Неотправленных уведомлений копится
+ * не больше max-pending, самые старые отбрасываются.
+ */
+@Component
+@Slf4j
+public class LowStockAlerts {
+    
+    private final LowStockIndex lowStockIndex;
+    private final RestClient notificationClient;
+    private final boolean enabled;
+    private final Long userId;
+    private final int maxPending;
+    private final Counter low;
+    private final Counter restored;
+    private List<NotificationRequest> pending = new ArrayList<>();
+    
+    public LowStockAlerts(
+            LowStockIndex lowStockIndex,
+            RestClient.Builder restClientBuilder,
+            MeterRegistry meterRegistry,
+            @Value("${services.notification-service.url:http://localhost:8085}") String notificationUrl,
+            @Value("${services.notification-service.timeout:3s}") Duration timeout,
+            @Value("${inventory.low-stock.alerts.enabled:false}") boolean enabled,
+            @Value("${inventory.low-stock.alerts.user-id:#{null}}") Long userId,
+            @Value("${inventory.low-stock.alerts.max-pending:1000}") int maxPending) {
+        this.lowStockIndex = lowStockIndex;
+        SimpleClientHttpRequestFactory requestFactory = new SimpleClientHttpRequestFactory();
+        requestFactory.setConnectTimeout(timeout);
+        requestFactory.setReadTimeout(timeout);
+        this.notificationClient = restClientBuilder
+                .baseUrl(notificationUrl)
+                .requestFactory(requestFactory)
+                .build();
+        if (enabled && userId == null) {
+            log.warn("Low-stock alerts are enabled but inventory.low-stock.alerts.user-id is not set, alerts are off");
+        }
+        this.enabled = enabled && userId != null;
+        this.userId = userId;
+        this.maxPending = maxPending;
+        this.low = Counter.builder("inventory.low-stock.alerts")
+                .tag("type", "LOW_STOCK")
+                .description("Low-stock threshold crossings sent to notification-service")
+                .register(meterRegistry);
+        this.restored = Counter.builder("inventory.low-stock.alerts")
+                .tag("type", "STOCK_RESTORED")
+                .description("Low-stock threshold crossings sent to notification-service")
+                .register(meterRegistry);
+    }
+    
+    // Запуски не перекрываются (fixedDelay), pending другие потоки не трогают
+    @Scheduled(fixedDelayString = "${inventory.low-stock.alerts.interval:PT5S}")
+    public void flush() {
+        List<LowStockIndex.Crossing> crossings = lowStockIndex.drainCrossings();
+        if (!enabled) {
+            return;
+        }
+        for (LowStockIndex.Crossing crossing : crossings) {
+            pending.add(toNotification(crossing));
+        }
+        if (pending.size() > maxPending) {
+            log.warn("Dropping {} undelivered low-stock alerts", pending.size() - maxPending);
+            pending = new ArrayList<>(pending.subList(pending.size() - maxPending, pending.size()));
+        }
+        if (pending.isEmpty()) {
+            return;
+        }
+        
+        try {
+            notificationClient.post()
+                    .uri("/api/notifications/send-batch")
+                    .body(new BatchNotificationRequest(pending))
+                    .retrieve()
+                    .toBodilessEntity();
+        } catch (RuntimeException e) {
+            log.warn("Failed to send {} low-stock alerts, will retry: {}", pending.size(), e.getMessage());
+            return;
+        }
+        for (NotificationRequest notification : pending) {
+            (notification.getType().equals("LOW_STOCK") ? low : restored).increment();
+        }
+        log.info("Sent {} low-stock alerts", pending.size());
+        pending = new ArrayList<>();
+    }
+    
+    private NotificationRequest toNotification(LowStockIndex.Crossing crossing) {
+        LowStockDto stock = crossing.stock();
+        if (crossing.low()) {
+            return new NotificationRequest(userId, "LOW_STOCK", "Low stock",
+                    "Product " + stock.getProductId() + " is low on stock: " + stock.getAvailableQuantity()
+                            + " available, threshold " + stock.getThreshold(),
+                    UUID.randomUUID().toString());
+        }
+        return new NotificationRequest(userId, "STOCK_RESTORED", "Stock restored",
+                "Product " + stock.getProductId() + " is back above its low-stock threshold: "
+                        + stock.getAvailableQuantity() + " available",
+                UUID.randomUUID().toString());
+    }
+    
+    @Data
+    @AllArgsConstructor
+    public static class NotificationRequest {
+        private Long userId;
+        private String type;
+        private String title;
+        private String message;
+        // Ключ для дедупликации повторной отправки
+        private String eventId;
+    }
+    
+    @Data
+    @AllArgsConstructor
+    public static class BatchNotificationRequest {
+        private List<NotificationRequest> notifications;
+    }
+}
@@ -0,0 +1,182 @@
+package com.shop.inventory.service;
+
+import com.shop.inventory.dto.LowStockDto;
+import com.shop.inventory.dto.LowStockPageDto;
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.repository.InventoryRepository;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.event.TransactionalEventListener;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Товары с остатком ниже порога (GET /api/inventory/low-stock) без чтения таблицы.
+ *
+ * Доступный остаток каждого товара хранится в памяти и обновляется тем же событием
+ * InventoryChangedEvent, что и поток InventoryStream: резерв, подтверждение, снятие, приход и импорт
+ * после коммита. Товары ниже порога лежат в отсортированном наборе (сначала меньший остаток),
+ * страница берётся прямо из него. Порог — low_stock_threshold товара или default-threshold.
+ * Пересечение порога в любую сторону запоминается до следующего LowStockAlerts.flush; если товар
+ * к этому времени вернулся, куда был, уведомлять не о чем.
+ *
+ * Все остатки читаются один раз при старте, дальше индекс видит изменения, прошедшие через этот инстанс.
+ */
+@Component
+@Slf4j
+public class LowStockIndex {
+    
+    private static final Comparator<Entry> BY_AVAILABLE = Comparator.comparingInt(Entry::available)
+            .thenComparing(Entry::productId);
+    
+    private final InventoryRepository inventoryRepository;
+    private final int defaultThreshold;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ConcurrentSkipListSet<Entry> low = new ConcurrentSkipListSet<>(BY_AVAILABLE);
+    private final AtomicInteger lowCount = new AtomicInteger();
+    // Товар -> был ли он ниже порога до первого пересечения с прошлого flush
+    private final Map<Long, Boolean> crossed = new ConcurrentHashMap<>();
+    
+    public LowStockIndex(
+            InventoryRepository inventoryRepository,
+            MeterRegistry meterRegistry,
+            @Value("${inventory.low-stock.default-threshold:10}") int defaultThreshold) {
+        this.inventoryRepository = inventoryRepository;
+        this.defaultThreshold = defaultThreshold;
+        Gauge.builder("inventory.low-stock.products", lowCount, AtomicInteger::get)
+                .description("Products with available stock below their low-stock threshold")
+                .register(meterRegistry);
+    }
+    
+    // Изменения, пришедшие во время чтения, не затираются: побеждает строка с версией не старше.
+    // Товары, которые уже ниже порога, при старте не считаются пересечением
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        for (Inventory inventory : inventoryRepository.findAll()) {
+            int threshold = threshold(inventory.getLowStockThreshold());
+            entries.compute(inventory.getProductId(), (productId, current) -> {
+                Entry next = current != null && current.version() >= version(inventory)
+                        ? new Entry(productId, current.available(), threshold, current.version())
+                        : new Entry(productId, inventory.getAvailableQuantity(), threshold, version(inventory));
+                replace(current, next, false);
+                return next;
+            });
+        }
+        log.info("Low-stock index loaded {} products, {} below threshold", entries.size(), lowCount.get());
+    }
+    
+    @TransactionalEventListener(fallbackExecution = true)
+    public void onInventoryChanged(InventoryChangedEvent event) {
+        for (Inventory inventory : event.inventories()) {
+            entries.compute(inventory.getProductId(), (productId, current) -> {
+                // У шардированного товара версия строки не меняется, поэтому равная версия тоже применяется
+                if (current != null && current.version() > version(inventory)) {
+                    return current;
+                }
+                int threshold = current != null ? current.threshold() : threshold(inventory.getLowStockThreshold());
+                Entry next = new Entry(productId, inventory.getAvailableQuantity(), threshold, version(inventory));
+                replace(current, next, true);
+                return next;
+            });
+        }
+    }
+    
+    // null — вернуть порог по умолчанию
+    public LowStockDto setThreshold(Inventory inventory, Integer threshold) {
+        Entry entry = entries.compute(inventory.getProductId(), (productId, current) -> {
+            Entry next = current != null
+                    ? new Entry(productId, current.available(), threshold(threshold), current.version())
+                    : new Entry(productId, inventory.getAvailableQuantity(), threshold(threshold), version(inventory));
+            replace(current, next, true);
+            return next;
+        });
+        return toDto(entry);
+    }
+    
+    public LowStockPageDto getPage(int page, int size) {
+        List<LowStockDto> items = new ArrayList<>(size);
+        Iterator<Entry> iterator = low.iterator();
+        for (long skip = (long) page * size; skip > 0 && iterator.hasNext(); skip--) {
+            iterator.next();
+        }
+        while (items.size() < size && iterator.hasNext()) {
+            items.add(toDto(iterator.next()));
+        }
+        long total = lowCount.get();
+        return LowStockPageDto.builder()
+                .items(items)
+                .page(page)
+                .size(size)
+                .totalElements(total)
+                .totalPages((int) ((total + size - 1) / size))
+                .build();
+    }
+    
+    // Пересечения с прошлого вызова, после которых товар остался по другую сторону порога
+    public List<Crossing> drainCrossings() {
+        List<Crossing> crossings = new ArrayList<>();
+        for (Long productId : crossed.keySet()) {
+            Boolean wasLow = crossed.remove(productId);
+            Entry entry = entries.get(productId);
+            if (wasLow != null && entry != null && entry.low() != wasLow) {
+                crossings.add(new Crossing(toDto(entry), entry.low()));
+            }
+        }
+        return crossings;
+    }
+    
+    // Вызывается внутри compute по товару, поэтому записи одного товара меняются по очереди
+    private void replace(Entry current, Entry next, boolean track) {
+        boolean wasLow = current != null && current.low();
+        if (wasLow) {
+            low.remove(current);
+        }
+        if (next.low()) {
+            low.add(next);
+        }
+        if (wasLow != next.low()) {
+            lowCount.addAndGet(next.low() ? 1 : -1);
+            if (track) {
+                crossed.putIfAbsent(next.productId(), wasLow);
+            }
+        }
+    }
+    
+    private int threshold(Integer threshold) {
+        return threshold != null ? threshold : defaultThreshold;
+    }
+    
+    private static long version(Inventory inventory) {
+        return inventory.getVersion() != null ? inventory.getVersion() : 0L;
+    }
+    
+    private static LowStockDto toDto(Entry entry) {
+        return LowStockDto.builder()
+                .productId(entry.productId())
+                .availableQuantity(entry.available())
+                .threshold(entry.threshold())
+                .build();
+    }
+    
+    public record Crossing(LowStockDto stock, boolean low) {
+    }
+    
+    private record Entry(Long productId, int available, int threshold, long version) {
+        
+        private boolean low() {
+            return available < threshold;
+        }
+    }
+}
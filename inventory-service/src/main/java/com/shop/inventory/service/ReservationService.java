@@ -0,0 +1,251 @@
+package com.shop.inventory.service;
+
+import com.shop.inventory.dto.ReservationDto;
+import com.shop.inventory.dto.StockUpdateRequest;
+import com.shop.inventory.model.StockReservation;
+import com.shop.inventory.repository.StockOperation;
+import com.shop.inventory.repository.StockReservationRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Collectors;
+
+/**
+ * Резервы склада по заказам (stock_reservation, ключ — заказ и товар).
+ *
+ * Резерв держит остаток до expires_at (inventory.reservations.hold-for), пока заказ не принят:
+ * pin снимает срок с резервов заказа, дошедшего до PENDING, и такие резервы держатся до
+ * подтверждения или снятия. Подтверждение и снятие
+ * работают с записанным резервом заказа, а не с переданными количествами, поэтому повтор любого
+ * запроса ничего не меняет: удерживаемый или подтверждённый товар не резервируется второй раз,
+ * подтверждённый не списывается второй раз, снятый не снимается второй раз. Незакреплённые резервы
+ * брошенных заказов снимает releaseExpired кусками по sweep-chunk строк. Подтверждение истёкшего резерва
+ * заново берёт остаток, если он ещё есть. С включённым StockLedger память меняется так, чтобы
+ * откат транзакции резервов её не рассинхронизировал (InventoryService.update).
+ *
+ * У заказов, зарезервированных до появления таблицы, записей нет: для них подтверждение и снятие
+ * применяют переданные количества к агрегатному резерву, как раньше.
+ */
+@Service
+@Slf4j
+public class ReservationService {
+    
+    private final StockReservationRepository reservationRepository;
+    private final InventoryService inventoryService;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration holdFor;
+    private final int sweepChunk;
+    private final Counter expired;
+    
+    public ReservationService(
+            StockReservationRepository reservationRepository,
+            InventoryService inventoryService,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${inventory.reservations.hold-for:30m}") Duration holdFor,
+            @Value("${inventory.reservations.sweep-chunk:500}") int sweepChunk) {
+        this.reservationRepository = reservationRepository;
+        this.inventoryService = inventoryService;
+        this.transactionTemplate = transactionTemplate;
+        this.holdFor = holdFor;
+        this.sweepChunk = sweepChunk;
+        this.expired = Counter.builder("inventory.reservations.expired")
+                .description("Stock reservations released because their hold expired")
+                .register(meterRegistry);
+    }
+    
+    public List<ReservationDto> reserve(List<StockUpdateRequest> items) {
+        Map<Long, Map<Long, Integer>> orders = byOrder(items);
+        LocalDateTime expiresAt = LocalDateTime.now().plus(holdFor);
+        return transactionTemplate.execute(status -> {
+            Map<Long, Map<Long, StockReservation>> existing = lock(orders.keySet());
+            Map<Long, Integer> quantities = new TreeMap<>();
+            List<StockReservation> held = new ArrayList<>();
+            orders.forEach((orderId, products) -> products.forEach((productId, quantity) -> {
+                StockReservation reservation = existing.getOrDefault(orderId, Map.of()).get(productId);
+                if (reservation == null) {
+                    reservation = StockReservation.builder().orderId(orderId).productId(productId).build();
+                } else if (reservation.getStatus() == StockReservation.Status.HELD
+                        || reservation.getStatus() == StockReservation.Status.CONFIRMED) {
+                    return;
+                }
+                reservation.setQuantity(quantity);
+                reservation.setStatus(StockReservation.Status.HELD);
+                reservation.setExpiresAt(expiresAt);
+                held.add(reservation);
+                quantities.merge(productId, quantity, Integer::sum);
+            }));
+            
+            // Записи пишутся раньше остатка: два одновременных первых резерва заказа упрутся
+            // в уникальный ключ до того, как StockLedger изменит остаток в памяти
+            reservationRepository.saveAllAndFlush(held);
+            if (!quantities.isEmpty()) {
+                inventoryService.update(quantities, StockOperation.RESERVE);
+            }
+            return toDtos(orders.keySet());
+        });
+    }
+    
+    // Заказ принят: резерв больше не истекает. Истёкший к этому моменту резерв заберёт подтверждение
+    public List<ReservationDto> pin(List<StockUpdateRequest> items) {
+        Map<Long, Map<Long, Integer>> orders = byOrder(items);
+        return transactionTemplate.execute(status -> {
+            lock(orders.keySet()).values().forEach(reservations -> reservations.values().forEach(reservation -> {
+                if (reservation.getStatus() == StockReservation.Status.HELD) {
+                    reservation.setExpiresAt(null);
+                }
+            }));
+            reservationRepository.flush();
+            return toDtos(orders.keySet());
+        });
+    }
+    
+    public List<ReservationDto> confirm(List<StockUpdateRequest> items) {
+        Map<Long, Map<Long, Integer>> orders = byOrder(items);
+        return transactionTemplate.execute(status -> {
+            Map<Long, Map<Long, StockReservation>> existing = lock(orders.keySet());
+            Map<Long, Integer> reserve = new TreeMap<>();
+            Map<Long, Integer> confirm = new TreeMap<>();
+            orders.forEach((orderId, products) -> {
+                Map<Long, StockReservation> reservations = existing.get(orderId);
+                if (reservations == null) {
+                    products.forEach((productId, quantity) -> confirm.merge(productId, quantity, Integer::sum));
+                    return;
+                }
+                for (StockReservation reservation : reservations.values()) {
+                    switch (reservation.getStatus()) {
+                        case CONFIRMED -> {
+                            continue;
+                        }
+                        case RELEASED -> throw new RuntimeException(
+                                "Stock reservation for order " + orderId + " was released");
+                        case EXPIRED -> reserve.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+                        case HELD -> {
+                        }
+                    }
+                    confirm.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+                    reservation.setStatus(StockReservation.Status.CONFIRMED);
+                }
+            });
+            
+            reservationRepository.flush();
+            if (!reserve.isEmpty()) {
+                inventoryService.update(reserve, StockOperation.RESERVE);
+            }
+            if (!confirm.isEmpty()) {
+                inventoryService.update(confirm, StockOperation.CONFIRM);
+            }
+            return toDtos(orders.keySet());
+        });
+    }
+    
+    public List<ReservationDto> release(List<StockUpdateRequest> items) {
+        Map<Long, Map<Long, Integer>> orders = byOrder(items);
+        return transactionTemplate.execute(status -> {
+            Map<Long, Map<Long, StockReservation>> existing = lock(orders.keySet());
+            Map<Long, Integer> release = new TreeMap<>();
+            orders.forEach((orderId, products) -> {
+                Map<Long, StockReservation> reservations = existing.get(orderId);
+                if (reservations == null) {
+                    products.forEach((productId, quantity) -> release.merge(productId, quantity, Integer::sum));
+                    return;
+                }
+                for (StockReservation reservation : reservations.values()) {
+                    if (reservation.getStatus() == StockReservation.Status.HELD) {
+                        release.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+                        reservation.setStatus(StockReservation.Status.RELEASED);
+                    }
+                }
+            });
+            
+            reservationRepository.flush();
+            if (!release.isEmpty()) {
+                inventoryService.update(release, StockOperation.RELEASE);
+            }
+            return toDtos(orders.keySet());
+        });
+    }
+    
+    // Кусок за куском, каждый в своей транзакции, пока сборщик находит полные куски
+    @Scheduled(fixedDelayString = "${inventory.reservations.sweep-interval:PT30S}")
+    public void releaseExpired() {
+        int found;
+        do {
+            LocalDateTime now = LocalDateTime.now();
+            found = transactionTemplate.execute(status -> releaseExpired(now));
+        } while (found == sweepChunk);
+    }
+    
+    // Резерв мог быть подтверждён, снят или закреплён после выборки: под блокировкой условие проверяется заново
+    private int releaseExpired(LocalDateTime now) {
+        List<Long> ids = reservationRepository.findIdsByStatusExpiredBefore(
+                StockReservation.Status.HELD, now, PageRequest.of(0, sweepChunk));
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        Map<Long, Integer> release = new TreeMap<>();
+        int count = 0;
+        for (StockReservation reservation : reservationRepository.lockByIdInAndStatus(ids, StockReservation.Status.HELD)) {
+            if (reservation.getExpiresAt() != null && reservation.getExpiresAt().isBefore(now)) {
+                release.merge(reservation.getProductId(), reservation.getQuantity(), Integer::sum);
+                reservation.setStatus(StockReservation.Status.EXPIRED);
+                count++;
+            }
+        }
+        
+        reservationRepository.flush();
+        if (!release.isEmpty()) {
+            inventoryService.update(release, StockOperation.RELEASE);
+            expired.increment(count);
+            log.info("Released {} expired stock reservations", count);
+        }
+        return ids.size();
+    }
+    
+    private Map<Long, Map<Long, Integer>> byOrder(List<StockUpdateRequest> items) {
+        Map<Long, Map<Long, Integer>> orders = new TreeMap<>();
+        for (StockUpdateRequest item : items) {
+            if (item.getOrderId() == null) {
+                throw new RuntimeException("Order ID is required for product: " + item.getProductId());
+            }
+            orders.computeIfAbsent(item.getOrderId(), orderId -> new TreeMap<>())
+                    .merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return orders;
+    }
+    
+    private Map<Long, Map<Long, StockReservation>> lock(Collection<Long> orderIds) {
+        Map<Long, Map<Long, StockReservation>> reservations = new HashMap<>();
+        for (StockReservation reservation : reservationRepository.lockByOrderIdIn(orderIds)) {
+            reservations.computeIfAbsent(reservation.getOrderId(), orderId -> new TreeMap<>())
+                    .put(reservation.getProductId(), reservation);
+        }
+        return reservations;
+    }
+    
+    private List<ReservationDto> toDtos(Collection<Long> orderIds) {
+        return reservationRepository.findByOrderIdInOrderById(orderIds).stream()
+                .map(reservation -> ReservationDto.builder()
+                        .orderId(reservation.getOrderId())
+                        .productId(reservation.getProductId())
+                        .quantity(reservation.getQuantity())
+                        .status(reservation.getStatus())
+                        .expiresAt(reservation.getExpiresAt())
+                        .build())
+                .collect(Collectors.toList());
+    }
+}
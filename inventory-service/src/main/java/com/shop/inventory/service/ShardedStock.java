@@ -0,0 +1,125 @@
+package com.shop.inventory.service;
+
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.model.InventoryShard;
+import com.shop.inventory.repository.InventoryRepository;
+import com.shop.inventory.repository.InventoryShardRepository;
+import com.shop.inventory.repository.StockOperation;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Шардированный режим остатка для горячих товаров.
+ *
+ * Остаток такого товара разложен по shardCount строкам inventory_shard, поэтому параллельные
+ * резервы блокируют разные строки, а не одну строку inventory. Операция начинает со случайного
+ * шарда и переходит к следующим, если в нём не хватает; если целиком количество не помещается
+ * ни в один шард, оно собирается по частям. Режим включается и выключается на ходу под
+ * блокировкой строки товара. Все методы вызываются внутри транзакции InventoryService.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ShardedStock {
+    
+    private final InventoryRepository inventoryRepository;
+    private final InventoryShardRepository shardRepository;
+    
+    // false — все шарды вместе не могут отдать количество (или товар только что вышел из режима)
+    public boolean apply(StockOperation operation, Long productId, int quantity, int shardCount) {
+        int start = ThreadLocalRandom.current().nextInt(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            if (inventoryRepository.updateShard(operation, productId, (start + i) % shardCount, quantity) > 0) {
+                return true;
+            }
+        }
+        
+        // По частям в порядке shard_no: параллельные сборки блокируют шарды в одном порядке
+        List<InventoryShard> shards = inventoryRepository.readShards(productId);
+        int remaining = quantity;
+        for (InventoryShard shard : shards) {
+            int part = Math.min(remaining, operation.capacity(shard));
+            if (part > 0 && inventoryRepository.updateShard(operation, productId, shard.getShardNo(), part) > 0) {
+                remaining -= part;
+            }
+            if (remaining == 0) {
+                return true;
+            }
+        }
+        // Снятие резерва, как и у обычной строки, не опускает резерв ниже нуля и не падает
+        return operation == StockOperation.RELEASE && !shards.isEmpty();
+    }
+    
+    public boolean add(Long productId, int quantity, int shardCount) {
+        int shardNo = ThreadLocalRandom.current().nextInt(shardCount);
+        return inventoryRepository.addToShard(productId, shardNo, quantity) > 0;
+    }
+    
+    // Остаток и резерв строки делятся поровну, остаток от деления достаётся первым шардам
+    public void enable(Long productId, int shardCount) {
+        Inventory inventory = lock(productId);
+        if (inventory.isSharded()) {
+            if (inventory.getShardCount() == shardCount) {
+                return;
+            }
+            merge(inventory);
+        }
+        
+        int quantity = inventory.getQuantity();
+        int reserved = inventory.getReservedQuantity() != null ? inventory.getReservedQuantity() : 0;
+        List<InventoryShard> shards = new ArrayList<>();
+        for (int shardNo = 0; shardNo < shardCount; shardNo++) {
+            shards.add(InventoryShard.builder()
+                    .productId(productId)
+                    .shardNo(shardNo)
+                    .quantity(part(quantity, shardCount, shardNo))
+                    .reservedQuantity(part(reserved, shardCount, shardNo))
+                    .build());
+        }
+        shardRepository.saveAll(shards);
+        
+        inventory.setQuantity(0);
+        inventory.setReservedQuantity(0);
+        inventory.setShardCount(shardCount);
+        inventory.setVersion(nextVersion(inventory));
+        log.info("Product {} switched to {} stock shards", productId, shardCount);
+    }
+    
+    public void disable(Long productId) {
+        Inventory inventory = lock(productId);
+        if (inventory.isSharded()) {
+            merge(inventory);
+            log.info("Product {} switched back to a single stock row", productId);
+        }
+    }
+    
+    // Шарды складываются обратно в строку товара и удаляются сразу, до вставки новых шардов
+    private void merge(Inventory inventory) {
+        List<InventoryShard> shards = shardRepository.lockByProductId(inventory.getProductId());
+        inventory.setQuantity(inventory.getQuantity()
+                + shards.stream().mapToInt(InventoryShard::getQuantity).sum());
+        inventory.setReservedQuantity((inventory.getReservedQuantity() != null ? inventory.getReservedQuantity() : 0)
+                + shards.stream().mapToInt(InventoryShard::getReservedQuantity).sum());
+        inventory.setShardCount(null);
+        inventory.setVersion(nextVersion(inventory));
+        shardRepository.deleteAllInBatch(shards);
+    }
+    
+    private Inventory lock(Long productId) {
+        return inventoryRepository.lockByProductId(productId)
+                .orElseThrow(() -> new RuntimeException("Inventory not found for product: " + productId));
+    }
+    
+    private long nextVersion(Inventory inventory) {
+        return (inventory.getVersion() != null ? inventory.getVersion() : 0) + 1;
+    }
+    
+    private int part(int total, int shardCount, int shardNo) {
+        return total / shardCount + (shardNo < total % shardCount ? 1 : 0);
+    }
+}
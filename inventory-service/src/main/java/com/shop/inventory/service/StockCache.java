@@ -0,0 +1,120 @@
+package com.shop.inventory.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shop.inventory.model.Inventory;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Ближний кэш остатков для проверок наличия (inventory.cache.enabled).
+ *
+ * Промах читает строку из БД. Резерв, подтверждение, снятие и приход кладут в кэш новое значение
+ * после коммита своей транзакции. Каждое значение несёт версию строки inventory, и запись
+ * в кэше заменяется только более новой версией: опоздавшая загрузка или запись не вытеснит
+ * то, что уже закоммичено этим инстансом. Изменения с других инстансов видны через ttl.
+ *
+ * Шардированные товары не кэшируются: их остаток меняется в шардах без смены версии строки.
+ * В кэше для них лежит только отметка с версией, и чтение всегда идёт в БД.
+ */
+@Component
+public class StockCache {
+    
+    private final boolean enabled;
+    private final Cache<Long, Inventory> cache;
+    
+    public StockCache(
+            MeterRegistry meterRegistry,
+            @Value("${inventory.cache.enabled:true}") boolean enabled,
+            @Value("${inventory.cache.max-size:10000}") long maxSize,
+            @Value("${inventory.cache.ttl:5s}") Duration ttl) {
+        this.enabled = enabled;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(ttl)
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "inventory.stock");
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public Optional<Inventory> get(Long productId, Function<Collection<Long>, Map<Long, Inventory>> loader) {
+        return Optional.ofNullable(getAll(List.of(productId), loader).get(productId));
+    }
+    
+    // Промахи всей пачки загружаются одним запросом
+    public Map<Long, Inventory> getAll(Collection<Long> productIds,
+                                       Function<Collection<Long>, Map<Long, Inventory>> loader) {
+        if (!enabled) {
+            return loader.apply(productIds);
+        }
+        Map<Long, Inventory> result = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long productId : productIds) {
+            // Отметка шардированного товара не считается ни попаданием, ни промахом: cache.gets{result=hit}
+            // остаётся числом сэкономленных чтений БД
+            Inventory marker = cache.policy().getIfPresentQuietly(productId);
+            Inventory cached = marker != null && marker.isSharded() ? null : cache.getIfPresent(productId);
+            if (cached != null) {
+                result.put(productId, cached);
+            } else {
+                missing.add(productId);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<Long, Inventory> loaded = loader.apply(missing);
+            loaded.values().forEach(this::putIfNewer);
+            result.putAll(loaded);
+        }
+        return result;
+    }
+    
+    // Значения — из транзакции, которая их записала: в кэш они попадают только после её коммита
+    public void updateAfterCommit(Collection<Inventory> inventories) {
+        if (!enabled) {
+            return;
+        }
+        List<Inventory> committed = new ArrayList<>(inventories);
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            committed.forEach(this::putIfNewer);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                committed.forEach(StockCache.this::putIfNewer);
+            }
+        });
+    }
+    
+    private void putIfNewer(Inventory inventory) {
+        Inventory snapshot = Inventory.builder()
+                .id(inventory.getId())
+                .productId(inventory.getProductId())
+                .quantity(inventory.getTotalQuantity())
+                .reservedQuantity(inventory.getTotalReservedQuantity())
+                .shardCount(inventory.getShardCount())
+                .version(inventory.getVersion() != null ? inventory.getVersion() : 0L)
+                .build();
+        cache.asMap().merge(snapshot.getProductId(), snapshot,
+                (current, candidate) -> candidate.getVersion() > current.getVersion() ? candidate : current);
+    }
+}
@@ -0,0 +1,212 @@
+package com.shop.inventory.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.inventory.dto.StockImportResponse;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Массовый приход остатков из фида поставщика (POST /api/inventory/import).
+ *
+ * Тело читается построчно, в памяти держится только текущий кусок из chunk-size товаров.
+ * Строки одного товара внутри куска складываются, кусок применяется InventoryService.importStock
+ * в своей транзакции: уже закоммиченные куски не откатываются, если позже в фиде попадётся ошибка.
+ * Кусок, который не удалось применить (например, тот же новый товар одновременно создал другой
+ * запрос), повторяется один раз, затем его строки считаются отклонёнными.
+ *
+ * Форматы:
+ * - text/csv: productId,quantity (или через ';'), строка заголовка необязательна
+ * - application/x-ndjson: {"productId":1,"quantity":5} в каждой строке
+ */
+@Component
+@Slf4j
+public class StockImport {
+    
+    private static final MediaType TEXT_CSV = MediaType.valueOf("text/csv");
+    
+    private final InventoryService inventoryService;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final int maxErrors;
+    
+    public StockImport(
+            InventoryService inventoryService,
+            ObjectMapper objectMapper,
+            @Value("${inventory.import.chunk-size:1000}") int chunkSize,
+            @Value("${inventory.import.max-errors:100}") int maxErrors) {
+        this.inventoryService = inventoryService;
+        this.objectMapper = objectMapper;
+        this.chunkSize = chunkSize;
+        this.maxErrors = maxErrors;
+    }
+    
+    public StockImportResponse importStock(InputStream body, String contentType) throws IOException {
+        boolean csv = contentType != null && MediaType.parseMediaType(contentType).isCompatibleWith(TEXT_CSV);
+        long started = System.nanoTime();
+        Summary summary = new Summary();
+        Chunk chunk = new Chunk();
+        
+        BufferedReader reader = new BufferedReader(new InputStreamReader(body, StandardCharsets.UTF_8));
+        String line;
+        long lineNo = 0;
+        while ((line = reader.readLine()) != null) {
+            lineNo++;
+            if (line.isBlank() || (csv && lineNo == 1 && isHeader(line))) {
+                continue;
+            }
+            summary.rows++;
+            try {
+                long[] row = csv ? parseCsv(line) : parseJson(line);
+                chunk.add(row[0], (int) row[1], lineNo);
+            } catch (IllegalArgumentException | ArithmeticException e) {
+                summary.reject(lineNo, 1, e.getMessage());
+            }
+            if (chunk.quantities.size() >= chunkSize) {
+                apply(chunk, summary);
+                chunk = new Chunk();
+            }
+        }
+        apply(chunk, summary);
+        
+        log.info("Imported stock: {} rows, {} applied, {} created, {} rejected in {} ms",
+                summary.rows, summary.applied, summary.created, summary.rejected,
+                (System.nanoTime() - started) / 1_000_000);
+        return StockImportResponse.builder()
+                .rows(summary.rows)
+                .applied(summary.applied)
+                .created(summary.created)
+                .rejected(summary.rejected)
+                .errors(summary.errors)
+                .build();
+    }
+    
+    private void apply(Chunk chunk, Summary summary) {
+        if (chunk.quantities.isEmpty()) {
+            return;
+        }
+        Set<Long> created;
+        try {
+            created = importWithRetry(chunk.quantities);
+        } catch (RuntimeException e) {
+            log.warn("Failed to import stock rows on lines {}-{}", chunk.firstLine, chunk.lastLine, e);
+            summary.reject(chunk.firstLine, chunk.rows(), "Rows on lines " + chunk.firstLine + "-" + chunk.lastLine
+                    + " were not imported: " + e.getMessage());
+            return;
+        }
+        for (Map.Entry<Long, Integer> rows : chunk.rowCounts.entrySet()) {
+            if (created.contains(rows.getKey())) {
+                summary.created += rows.getValue();
+            } else {
+                summary.applied += rows.getValue();
+            }
+        }
+    }
+    
+    // Транзакция куска откатилась целиком, а память StockLedger меняется только после коммита,
+    // поэтому повтор безопасен: он увидит уже созданные другими строки
+    private Set<Long> importWithRetry(Map<Long, Integer> quantities) {
+        try {
+            return inventoryService.importStock(quantities);
+        } catch (RuntimeException e) {
+            log.debug("Retrying stock import chunk: {}", e.getMessage());
+            return inventoryService.importStock(quantities);
+        }
+    }
+    
+    private boolean isHeader(String line) {
+        String first = line.split("[,;]", -1)[0].trim();
+        return !first.isEmpty() && !Character.isDigit(first.charAt(0)) && first.charAt(0) != '-';
+    }
+    
+    private long[] parseCsv(String line) {
+        String[] fields = line.split("[,;]", -1);
+        if (fields.length != 2) {
+            throw new IllegalArgumentException("Expected productId,quantity");
+        }
+        try {
+            return row(Long.parseLong(fields[0].trim()), Integer.parseInt(fields[1].trim()));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Product ID and quantity must be integers");
+        }
+    }
+    
+    private long[] parseJson(String line) {
+        JsonNode node;
+        try {
+            node = objectMapper.readTree(line);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Malformed JSON");
+        }
+        JsonNode productId = node.path("productId");
+        JsonNode quantity = node.path("quantity");
+        if (!productId.canConvertToLong() || !productId.isIntegralNumber()
+                || !quantity.canConvertToInt() || !quantity.isIntegralNumber()) {
+            throw new IllegalArgumentException("Product ID and quantity must be integers");
+        }
+        return row(productId.longValue(), quantity.intValue());
+    }
+    
+    // Количество — как в StockUpdateRequest
+    private long[] row(long productId, int quantity) {
+        if (productId <= 0) {
+            throw new IllegalArgumentException("Product ID must be positive");
+        }
+        if (quantity <= 0) {
+            throw new IllegalArgumentException("Quantity must be positive");
+        }
+        return new long[]{productId, quantity};
+    }
+    
+    private static final class Chunk {
+        
+        private final Map<Long, Integer> quantities = new LinkedHashMap<>();
+        private final Map<Long, Integer> rowCounts = new LinkedHashMap<>();
+        private long firstLine;
+        private long lastLine;
+        
+        private void add(Long productId, int quantity, long line) {
+            quantities.merge(productId, quantity, Math::addExact);
+            rowCounts.merge(productId, 1, Integer::sum);
+            if (firstLine == 0) {
+                firstLine = line;
+            }
+            lastLine = line;
+        }
+        
+        private int rows() {
+            return rowCounts.values().stream().mapToInt(Integer::intValue).sum();
+        }
+    }
+    
+    // В ответ попадают первые max-errors причин отказа, счётчик rejected — полный
+    private final class Summary {
+        
+        private long rows;
+        private long applied;
+        private long created;
+        private long rejected;
+        private final List<StockImportResponse.RowError> errors = new ArrayList<>();
+        
+        private void reject(long line, int count, String reason) {
+            rejected += count;
+            if (errors.size() < maxErrors) {
+                errors.add(new StockImportResponse.RowError(line, reason));
+            }
+        }
+    }
+}
@@ -0,0 +1,326 @@
+package com.shop.inventory.service;
+
+import com.shop.inventory.dto.StockJournalEntryDto;
+import com.shop.inventory.dto.StockReplayDto;
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.model.StockJournalEntry;
+import com.shop.inventory.model.StockSnapshot;
+import com.shop.inventory.repository.InventoryRepository;
+import com.shop.inventory.repository.InventoryShardRepository;
+import com.shop.inventory.repository.StockJournalRepository;
+import com.shop.inventory.repository.StockOperation;
+import com.shop.inventory.repository.StockSnapshotRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Журнал операций с остатками (stock_journal) и снимки остатков (stock_snapshot).
+ *
+ * Каждое применённое создание строки, приход, резерв, подтверждение и снятие резерва дописывается
+ * в журнал одним JDBC-пакетом в той же транзакции, что меняет остаток, после самого изменения:
+ * запись и строка коммитятся вместе, а записи одного товара идут по id в порядке применения.
+ * С включённым StockLedger записи копятся в памяти вместе с приращениями и пишутся в его сбросе.
+ *
+ * Снимок товара берётся после snapshot-every записей с прошлого снимка (счёт ведёт этот инстанс)
+ * и один раз для строк без снимка. Строки куска блокируются одним запросом на время короткой
+ * транзакции: пока блокировка держится, новых записей по товару нет, и снимок сходится с журналом
+ * ровно до своей последней записи. Восстановление товара — последний снимок плюс записи после него.
+ *
+ * У шардированного товара параллельные операции на разных шардах могут лечь в журнал не в порядке
+ * применения; на восстановленный остаток это влияет, только если снимается больше, чем зарезервировано.
+ */
+@Component
+@Slf4j
+public class StockJournal {
+    
+    private static final int MAX_LIMIT = 1000;
+    
+    private final StockJournalRepository journalRepository;
+    private final StockSnapshotRepository snapshotRepository;
+    private final InventoryRepository inventoryRepository;
+    private final InventoryShardRepository shardRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int snapshotEvery;
+    private final int snapshotChunk;
+    // Товар -> записей с его последнего снимка, дописанных этим инстансом
+    private final Map<Long, AtomicInteger> sinceSnapshot = new ConcurrentHashMap<>();
+    private final Counter appended;
+    private final Counter snapshots;
+    private volatile boolean baselined;
+    
+    public StockJournal(
+            StockJournalRepository journalRepository,
+            StockSnapshotRepository snapshotRepository,
+            InventoryRepository inventoryRepository,
+            InventoryShardRepository shardRepository,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${inventory.journal.enabled:true}") boolean enabled,
+            @Value("${inventory.journal.snapshot-every:1000}") int snapshotEvery,
+            @Value("${inventory.journal.snapshot-chunk:200}") int snapshotChunk) {
+        this.journalRepository = journalRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.inventoryRepository = inventoryRepository;
+        this.shardRepository = shardRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.snapshotEvery = snapshotEvery;
+        this.snapshotChunk = snapshotChunk;
+        this.appended = Counter.builder("inventory.journal.entries")
+                .description("Stock journal entries appended")
+                .register(meterRegistry);
+        this.snapshots = Counter.builder("inventory.journal.snapshots")
+                .description("Stock snapshots taken")
+                .register(meterRegistry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public static StockJournalEntry entry(StockJournalEntry.Type type, Long productId, int quantity) {
+        return StockJournalEntry.builder()
+                .productId(productId)
+                .type(type)
+                .quantity(quantity)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+    
+    public static StockJournalEntry.Type type(StockOperation operation) {
+        return StockJournalEntry.Type.valueOf(operation.name());
+    }
+    
+    // Вызывается в транзакции, изменившей остатки, после изменений
+    public void record(StockOperation operation, Map<Long, Integer> quantities) {
+        record(type(operation), quantities);
+    }
+    
+    public void record(StockJournalEntry.Type type, Map<Long, Integer> quantities) {
+        if (!enabled || quantities.isEmpty()) {
+            return;
+        }
+        List<StockJournalEntry> entries = new ArrayList<>();
+        quantities.forEach((productId, quantity) -> entries.add(entry(type, productId, quantity)));
+        append(entries);
+    }
+    
+    public void append(List<StockJournalEntry> entries) {
+        if (!enabled || entries.isEmpty()) {
+            return;
+        }
+        journalRepository.append(entries);
+        for (StockJournalEntry entry : entries) {
+            sinceSnapshot.computeIfAbsent(entry.getProductId(), productId -> new AtomicInteger()).incrementAndGet();
+        }
+        appended.increment(entries.size());
+    }
+    
+    // После DataInitializer: его строки, как и созданные до журнала, иначе не восстановить
+    @EventListener(ApplicationReadyEvent.class)
+    public void snapshotUnseen() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int taken = 0;
+            List<Long> productIds;
+            do {
+                productIds = snapshotRepository.findProductIdsWithoutSnapshot(PageRequest.of(0, snapshotChunk));
+                taken += snapshot(productIds);
+            } while (productIds.size() == snapshotChunk);
+            baselined = true;
+            if (taken > 0) {
+                log.info("Took initial stock snapshots of {} products", taken);
+            }
+        } catch (RuntimeException e) {
+            log.warn("Failed to take initial stock snapshots, will retry", e);
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${inventory.journal.snapshot-interval:PT1M}")
+    public void snapshotBusy() {
+        if (!enabled) {
+            return;
+        }
+        if (!baselined) {
+            snapshotUnseen();
+        }
+        List<Long> due = sinceSnapshot.entrySet().stream()
+                .filter(entry -> entry.getValue().get() >= snapshotEvery)
+                .map(Map.Entry::getKey)
+                .sorted()
+                .toList();
+        for (int from = 0; from < due.size(); from += snapshotChunk) {
+            List<Long> chunk = due.subList(from, Math.min(from + snapshotChunk, due.size()));
+            chunk.forEach(sinceSnapshot::remove);
+            snapshot(chunk);
+        }
+    }
+    
+    public List<StockJournalEntryDto> getEntries(Long productId, long afterId, int limit) {
+        requireEnabled();
+        if (limit < 1 || limit > MAX_LIMIT) {
+            throw new RuntimeException("Limit must be between 1 and " + MAX_LIMIT);
+        }
+        return journalRepository.findByProductIdAndIdGreaterThanOrderById(productId, afterId, PageRequest.of(0, limit))
+                .stream()
+                .map(entry -> StockJournalEntryDto.builder()
+                        .id(entry.getId())
+                        .productId(entry.getProductId())
+                        .type(entry.getType())
+                        .quantity(entry.getQuantity())
+                        .createdAt(entry.getCreatedAt())
+                        .build())
+                .collect(Collectors.toList());
+    }
+    
+    // Остаток по журналу против строки; строка и шарды блокируются на время чтения
+    public StockReplayDto replay(Long productId) {
+        requireEnabled();
+        return transactionTemplate.execute(status -> replay(lock(productId)));
+    }
+    
+    // Перезаписывает строку остатком из журнала, если они разошлись. Шардированный товар сначала
+    // возвращается к одной строке. Вызывается из InventoryService, который разошлёт новый остаток
+    public StockReplayDto rebuild(Long productId) {
+        requireEnabled();
+        return transactionTemplate.execute(status -> {
+            Inventory inventory = inventoryRepository.lockByProductId(productId)
+                    .orElseThrow(() -> new RuntimeException("Inventory not found for product: " + productId));
+            if (inventory.isSharded()) {
+                throw new RuntimeException("Product " + productId + " is sharded, disable sharding before rebuilding its stock");
+            }
+            StockReplayDto replay = replay(inventory);
+            if (!replay.isConsistent()) {
+                log.warn("Rebuilding stock of product {} from journal: quantity {} -> {}, reserved {} -> {}",
+                        productId, replay.getCurrentQuantity(), replay.getQuantity(),
+                        replay.getCurrentReservedQuantity(), replay.getReservedQuantity());
+                inventory.setQuantity(replay.getQuantity());
+                inventory.setReservedQuantity(replay.getReservedQuantity());
+                inventory.setVersion(inventory.getVersion() + 1);
+                inventoryRepository.flush();
+                replay.setRebuilt(true);
+            }
+            return replay;
+        });
+    }
+    
+    // Снимок — по заблокированной строке: её остаток и последняя запись журнала товара сходятся
+    private int snapshot(List<Long> productIds) {
+        if (productIds.isEmpty()) {
+            return 0;
+        }
+        Set<Long> taken = transactionTemplate.execute(status ->
+                save(inventoryRepository.lockUnshardedByProductIdIn(productIds)));
+        
+        // Шардированные и переключённые за это время — по одной, вместе с шардами
+        int count = taken.size();
+        for (Long productId : productIds) {
+            if (!taken.contains(productId)) {
+                count += transactionTemplate.execute(status -> inventoryRepository.lockByProductId(productId)
+                        .map(inventory -> save(List.of(lock(inventory))).size())
+                        .orElse(0));
+            }
+        }
+        return count;
+    }
+    
+    private Set<Long> save(List<Inventory> inventories) {
+        if (inventories.isEmpty()) {
+            return Set.of();
+        }
+        Map<Long, Long> lastIds = journalRepository.lastEntryIds(
+                inventories.stream().map(Inventory::getProductId).toList());
+        LocalDateTime now = LocalDateTime.now();
+        List<StockSnapshot> taken = inventories.stream()
+                .map(inventory -> StockSnapshot.builder()
+                        .productId(inventory.getProductId())
+                        .journalId(lastIds.getOrDefault(inventory.getProductId(), 0L))
+                        .quantity(inventory.getTotalQuantity())
+                        .reservedQuantity(inventory.getTotalReservedQuantity())
+                        .createdAt(now)
+                        .build())
+                .toList();
+        snapshotRepository.saveAll(taken);
+        snapshots.increment(taken.size());
+        return taken.stream().map(StockSnapshot::getProductId).collect(Collectors.toSet());
+    }
+    
+    private Inventory lock(Long productId) {
+        return lock(inventoryRepository.lockByProductId(productId)
+                .orElseThrow(() -> new RuntimeException("Inventory not found for product: " + productId)));
+    }
+    
+    // Строка уже заблокирована; шарды блокируются следом, остаток перечитывается после блокировок
+    private Inventory lock(Inventory inventory) {
+        if (!inventory.isSharded()) {
+            return inventory;
+        }
+        shardRepository.lockByProductId(inventory.getProductId());
+        return inventoryRepository.readStock(Set.of(inventory.getProductId())).get(0);
+    }
+    
+    private StockReplayDto replay(Inventory current) {
+        Long productId = current.getProductId();
+        Optional<StockSnapshot> snapshot = snapshotRepository.findFirstByProductIdOrderByJournalIdDescIdDesc(productId);
+        List<StockJournalEntry> tail = journalRepository.findByProductIdAndIdGreaterThanOrderById(
+                productId, snapshot.map(StockSnapshot::getJournalId).orElse(0L));
+        if (snapshot.isEmpty() && (tail.isEmpty() || tail.get(0).getType() != StockJournalEntry.Type.CREATE)) {
+            throw new RuntimeException("Stock history of product " + productId
+                    + " starts before the journal and has no snapshot yet");
+        }
+        
+        int quantity = snapshot.map(StockSnapshot::getQuantity).orElse(0);
+        int reserved = snapshot.map(StockSnapshot::getReservedQuantity).orElse(0);
+        for (StockJournalEntry entry : tail) {
+            int amount = entry.getQuantity();
+            switch (entry.getType()) {
+                case CREATE, ADD -> quantity += amount;
+                case RESERVE -> reserved += amount;
+                case CONFIRM -> {
+                    quantity -= amount;
+                    reserved -= amount;
+                }
+                case RELEASE -> reserved = Math.max(reserved - amount, 0);
+            }
+        }
+        return StockReplayDto.builder()
+                .productId(productId)
+                .snapshotJournalId(snapshot.map(StockSnapshot::getJournalId).orElse(null))
+                .snapshotAt(snapshot.map(StockSnapshot::getCreatedAt).orElse(null))
+                .entriesReplayed(tail.size())
+                .quantity(quantity)
+                .reservedQuantity(reserved)
+                .availableQuantity(quantity - reserved)
+                .currentQuantity(current.getTotalQuantity())
+                .currentReservedQuantity(current.getTotalReservedQuantity())
+                .consistent(quantity == current.getTotalQuantity() && reserved == current.getTotalReservedQuantity())
+                .build();
+    }
+    
+    private void requireEnabled() {
+        if (!enabled) {
+            throw new RuntimeException("Stock journal is disabled");
+        }
+    }
+}
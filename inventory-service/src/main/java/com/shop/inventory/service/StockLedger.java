@@ -0,0 +1,422 @@
+package com.shop.inventory.service;
+
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.model.StockJournalEntry;
+import com.shop.inventory.repository.InventoryRepository;
+import com.shop.inventory.repository.StockDelta;
+import com.shop.inventory.repository.StockOperation;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Остатки в памяти с отложенной записью в БД (inventory.ledger.enabled).
+ *
+ * После старта все остатки загружаются из InventoryRepository, и проверки, резервы, подтверждения
+ * и снятия резерва выполняются в памяти под блокировкой полосы (stripe) товара, без обращения к БД.
+ * Изменения копятся как приращения и раз в flush-interval одним JDBC-пакетом пишутся в inventory,
+ * которая остаётся источником истины. Отставание ограничено: если незаписанных товаров больше
+ * max-pending, запись в память сначала сбрасывает накопленное в БД. При падении теряется не больше
+ * одного интервала изменений, после рестарта остатки заново читаются из БД. Записи StockJournal
+ * копятся вместе с приращениями и пишутся в той же транзакции сброса.
+ *
+ * Режим рассчитан на один инстанс inventory-service: у каждого инстанса была бы своя копия остатков.
+ */
+@Component
+@Slf4j
+public class StockLedger {
+    
+    private final InventoryRepository inventoryRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final StockJournal stockJournal;
+    private final boolean enabled;
+    private final int maxPending;
+    private final Duration loadTimeout;
+    private final ReentrantLock[] stripes;
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    private final CountDownLatch loaded = new CountDownLatch(1);
+    private final Timer flushTimer;
+    
+    public StockLedger(
+            InventoryRepository inventoryRepository,
+            TransactionTemplate transactionTemplate,
+            StockJournal stockJournal,
+            MeterRegistry meterRegistry,
+            @Value("${inventory.ledger.enabled:false}") boolean enabled,
+            @Value("${inventory.ledger.stripes:64}") int stripes,
+            @Value("${inventory.ledger.max-pending:10000}") int maxPending,
+            @Value("${inventory.ledger.load-timeout:30s}") Duration loadTimeout) {
+        this.inventoryRepository = inventoryRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.stockJournal = stockJournal;
+        this.enabled = enabled;
+        this.maxPending = maxPending;
+        this.loadTimeout = loadTimeout;
+        this.stripes = new ReentrantLock[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new ReentrantLock();
+        }
+        this.flushTimer = Timer.builder("inventory.ledger.flush")
+                .description("Write-behind flushes of in-memory stock changes")
+                .register(meterRegistry);
+        Gauge.builder("inventory.ledger.pending", dirty, Set::size)
+                .description("Products with stock changes not yet written to the database")
+                .register(meterRegistry);
+        Gauge.builder("inventory.ledger.lag", this, StockLedger::lagSeconds)
+                .description("Age in seconds of the oldest stock change not yet written to the database")
+                .baseUnit("seconds")
+                .register(meterRegistry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    // После CommandLineRunner'ов, чтобы в память попали и начальные данные
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        for (Inventory inventory : inventoryRepository.findAll()) {
+            entries.put(inventory.getProductId(), new Entry(inventory));
+        }
+        loaded.countDown();
+        log.info("Stock ledger loaded {} products", entries.size());
+    }
+    
+    public Optional<Inventory> get(Long productId) {
+        awaitLoaded();
+        Entry entry = entries.get(productId);
+        if (entry == null) {
+            return Optional.empty();
+        }
+        ReentrantLock stripe = stripe(productId);
+        stripe.lock();
+        try {
+            return Optional.of(entry.snapshot());
+        } finally {
+            stripe.unlock();
+        }
+    }
+    
+    public List<Inventory> getAll() {
+        awaitLoaded();
+        List<Inventory> inventories = new ArrayList<>();
+        for (Long productId : new TreeSet<>(entries.keySet())) {
+            get(productId).ifPresent(inventories::add);
+        }
+        return inventories;
+    }
+    
+    // Всё или ничего: полосы всех товаров берутся по возрастанию номера, условия проверяются до изменений
+    public List<Inventory> apply(StockOperation operation, Map<Long, Integer> quantities) {
+        awaitLoaded();
+        awaitCapacity();
+        List<ReentrantLock> locked = lockStripes(quantities.keySet());
+        try {
+            List<Entry> targets = targets(operation, quantities);
+            
+            List<Inventory> result = new ArrayList<>();
+            int i = 0;
+            for (Integer quantity : quantities.values()) {
+                Entry entry = targets.get(i++);
+                switch (operation) {
+                    case RESERVE -> entry.change(0, quantity);
+                    case CONFIRM -> entry.change(-quantity, -quantity);
+                    case RELEASE -> entry.change(0, -Math.min(quantity, entry.reservedQuantity));
+                }
+                journal(entry, StockJournal.type(operation), quantity);
+                dirty.add(entry.productId);
+                result.add(entry.snapshot());
+            }
+            return result;
+        } finally {
+            locked.forEach(ReentrantLock::unlock);
+        }
+    }
+    
+    // Те же условия, что у apply, без изменений: для операций, которые применяются после коммита
+    public void check(StockOperation operation, Map<Long, Integer> quantities) {
+        awaitLoaded();
+        List<ReentrantLock> locked = lockStripes(quantities.keySet());
+        try {
+            targets(operation, quantities);
+        } finally {
+            locked.forEach(ReentrantLock::unlock);
+        }
+    }
+    
+    private List<Entry> targets(StockOperation operation, Map<Long, Integer> quantities) {
+        List<Entry> targets = new ArrayList<>();
+        for (Map.Entry<Long, Integer> item : quantities.entrySet()) {
+            Entry entry = entries.get(item.getKey());
+            if (entry == null) {
+                throw new RuntimeException("Inventory not found for product: " + item.getKey());
+            }
+            if (operation != StockOperation.RELEASE
+                    && operation.capacity(entry.quantity, entry.reservedQuantity) < item.getValue()) {
+                throw new RuntimeException(operation.failure(item.getKey()));
+            }
+            targets.add(entry);
+        }
+        return targets;
+    }
+    
+    // Приход по известному товару; null — товара в памяти нет, его строку создаёт InventoryService
+    public Inventory add(Long productId, int quantity) {
+        awaitLoaded();
+        Entry entry = entries.get(productId);
+        if (entry == null) {
+            return null;
+        }
+        awaitCapacity();
+        ReentrantLock stripe = stripe(productId);
+        stripe.lock();
+        try {
+            entry.change(quantity, 0);
+            journal(entry, StockJournalEntry.Type.ADD, quantity);
+            dirty.add(productId);
+            return entry.snapshot();
+        } finally {
+            stripe.unlock();
+        }
+    }
+    
+    // Новый товар, уже сохранённый в БД
+    public void register(Inventory inventory) {
+        entries.putIfAbsent(inventory.getProductId(), new Entry(inventory));
+    }
+    
+    @Scheduled(fixedDelayString = "${inventory.ledger.flush-interval:PT0.05S}")
+    public void flush() {
+        if (!enabled || loaded.getCount() > 0) {
+            return;
+        }
+        flushLock.lock();
+        try {
+            if (dirty.isEmpty()) {
+                return;
+            }
+            Map<Long, StockDelta> deltas = new TreeMap<>();
+            Map<Long, List<StockJournalEntry>> entries = new HashMap<>();
+            takePending(deltas, entries);
+            int[] updated;
+            try {
+                updated = flushTimer.record(() -> transactionTemplate.execute(status -> {
+                    int[] rows = inventoryRepository.applyDeltas(deltas);
+                    
+                    // Записи журнала — после UPDATE, под блокировками строк, и только по записанным строкам
+                    List<StockJournalEntry> written = new ArrayList<>();
+                    int i = 0;
+                    for (Long productId : deltas.keySet()) {
+                        if (rows[i++] > 0) {
+                            written.addAll(entries.getOrDefault(productId, List.of()));
+                        }
+                    }
+                    stockJournal.append(written);
+                    return rows;
+                }));
+            } catch (RuntimeException e) {
+                // Приращения возвращаются в память и уйдут со следующим сбросом
+                deltas.forEach((productId, delta) -> restorePending(productId, delta, entries.get(productId)));
+                log.warn("Failed to flush stock changes for {} products", deltas.size(), e);
+                throw e;
+            }
+            
+            // Строки нового товара ещё не видно (его транзакция не закоммичена) — пишем в следующий раз
+            int i = 0;
+            for (Map.Entry<Long, StockDelta> delta : deltas.entrySet()) {
+                if (updated[i++] == 0) {
+                    restorePending(delta.getKey(), delta.getValue(), entries.get(delta.getKey()));
+                }
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+    
+    @PreDestroy
+    void stop() {
+        flush();
+    }
+    
+    // Снимает накопленные приращения и записи журнала; товары в порядке product_id, как и в остальных
+    // пакетных UPDATE. Товар с нулевым приращением, но с записями тоже обновляется: его строка блокируется
+    private void takePending(Map<Long, StockDelta> deltas, Map<Long, List<StockJournalEntry>> journal) {
+        for (Long productId : List.copyOf(dirty)) {
+            ReentrantLock stripe = stripe(productId);
+            stripe.lock();
+            try {
+                dirty.remove(productId);
+                Entry entry = entries.get(productId);
+                StockDelta delta = entry.takePending();
+                List<StockJournalEntry> journalEntries = entry.takeJournal();
+                if (delta.quantity() != 0 || delta.reservedQuantity() != 0 || !journalEntries.isEmpty()) {
+                    deltas.put(productId, delta);
+                    journal.put(productId, journalEntries);
+                }
+            } finally {
+                stripe.unlock();
+            }
+        }
+    }
+    
+    private void restorePending(Long productId, StockDelta delta, List<StockJournalEntry> journalEntries) {
+        ReentrantLock stripe = stripe(productId);
+        stripe.lock();
+        try {
+            Entry entry = entries.get(productId);
+            entry.addPending(delta);
+            if (journalEntries != null) {
+                entry.journal.addAll(0, journalEntries);
+            }
+            dirty.add(productId);
+        } finally {
+            stripe.unlock();
+        }
+    }
+    
+    // Под блокировкой полосы: записи товара идут в порядке его изменений
+    private void journal(Entry entry, StockJournalEntry.Type type, int quantity) {
+        if (stockJournal.isEnabled()) {
+            entry.journal.add(StockJournal.entry(type, entry.productId, quantity));
+        }
+    }
+    
+    // БД отстала больше чем на max-pending товаров: пишущий поток сам сбрасывает накопленное
+    private void awaitCapacity() {
+        if (dirty.size() >= maxPending) {
+            flush();
+        }
+    }
+    
+    private void awaitLoaded() {
+        try {
+            if (!loaded.await(loadTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                throw new RuntimeException("Stock ledger is not loaded yet");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the stock ledger", e);
+        }
+    }
+    
+    private List<ReentrantLock> lockStripes(Collection<Long> productIds) {
+        Set<Integer> indexes = new TreeSet<>();
+        productIds.forEach(productId -> indexes.add(stripeIndex(productId)));
+        List<ReentrantLock> locked = new ArrayList<>();
+        for (Integer index : indexes) {
+            stripes[index].lock();
+            locked.add(stripes[index]);
+        }
+        return locked;
+    }
+    
+    private ReentrantLock stripe(Long productId) {
+        return stripes[stripeIndex(productId)];
+    }
+    
+    private int stripeIndex(Long productId) {
+        return Math.floorMod(Long.hashCode(productId), stripes.length);
+    }
+    
+    private double lagSeconds() {
+        long now = System.nanoTime();
+        long oldest = now;
+        for (Long productId : dirty) {
+            Entry entry = entries.get(productId);
+            if (entry != null && entry.dirtySince != 0) {
+                oldest = Math.min(oldest, entry.dirtySince);
+            }
+        }
+        return (now - oldest) / 1_000_000_000.0;
+    }
+    
+    // Поля меняются только под блокировкой полосы товара
+    private static final class Entry {
+        
+        private final Long id;
+        private final Long productId;
+        private int quantity;
+        private int reservedQuantity;
+        private int pendingQuantity;
+        private int pendingReservedQuantity;
+        // Записи StockJournal, ещё не записанные в БД
+        private List<StockJournalEntry> journal = new ArrayList<>();
+        private long version;
+        private volatile long dirtySince;
+        
+        private Entry(Inventory inventory) {
+            this.id = inventory.getId();
+            this.productId = inventory.getProductId();
+            this.quantity = inventory.getTotalQuantity();
+            this.reservedQuantity = inventory.getTotalReservedQuantity();
+            this.version = inventory.getVersion() != null ? inventory.getVersion() : 0L;
+        }
+        
+        private void change(int quantityDelta, int reservedDelta) {
+            addPending(new StockDelta(quantityDelta, reservedDelta));
+            quantity += quantityDelta;
+            reservedQuantity += reservedDelta;
+            version++;
+        }
+        
+        private void addPending(StockDelta delta) {
+            if (dirtySince == 0) {
+                dirtySince = System.nanoTime();
+            }
+            pendingQuantity += delta.quantity();
+            pendingReservedQuantity += delta.reservedQuantity();
+        }
+        
+        private List<StockJournalEntry> takeJournal() {
+            List<StockJournalEntry> taken = journal;
+            journal = new ArrayList<>();
+            return taken;
+        }
+        
+        private StockDelta takePending() {
+            StockDelta delta = new StockDelta(pendingQuantity, pendingReservedQuantity);
+            pendingQuantity = 0;
+            pendingReservedQuantity = 0;
+            dirtySince = 0;
+            return delta;
+        }
+        
+        private Inventory snapshot() {
+            return Inventory.builder()
+                    .id(id)
+                    .productId(productId)
+                    .quantity(quantity)
+                    .reservedQuantity(reservedQuantity)
+                    .version(version)
+                    .build();
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package repository;
+
+import com.shop.inventory.InventoryServiceApplication;
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.model.InventoryShard;
+import com.shop.inventory.repository.InventoryRepository;
+import com.shop.inventory.repository.InventoryShardRepository;
+import com.shop.inventory.repository.StockOperation;
+import com.shop.inventory.service.InventoryService;
+import com.shop.inventory.service.LowStockIndex;
+import com.shop.inventory.service.ShardedStock;
+import com.shop.inventory.service.StockCache;
+import com.shop.inventory.service.StockJournal;
+import com.shop.inventory.service.StockLedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.LockModeType;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestReporter;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Параллельное резервирование одного товара на H2
+ *
+ * Тестирует:
+ * - Условный UPDATE не продаёт больше остатка при конкурирующих резервах
+ * - Резерв с блокировкой строки (PESSIMISTIC_WRITE) тоже не продаёт лишнего; пропускная способность обоих выводится
+ * - Шардированный остаток тоже не продаётся сверх наличия, суммы шардов сходятся с операциями
+ * - Количество, которое не помещается ни в один шард, собирается по частям
+ * - Резервы в памяти StockLedger тоже не продают сверх остатка, сброс пишет их в строку
+ */
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect")
+@ContextConfiguration(classes = InventoryServiceApplication.class)
+@Import({InventoryService.class, ShardedStock.class, StockLedger.class, StockCache.class,
+        LowStockIndex.class, StockJournal.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryConcurrencyTest {
+
+    private static final long PRODUCT_ID = 100L;
+    private static final int STOCK = 500;
+    private static final int THREADS = 16;
+    private static final int ATTEMPTS = 800;
+    private static final int SHARDS = 8;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private InventoryShardRepository shardRepository;
+
+    @Autowired
+    private StockJournal stockJournal;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        resetStock();
+    }
+
+    @Test
+    void reserveStock_ConcurrentReservations_NeverOversells() throws Exception {
+        // Act: 800 попыток зарезервировать по 1 шт. при остатке 500
+        int succeeded = runConcurrently(() -> inventoryService.reserveStock(PRODUCT_ID, 1));
+
+        // Assert
+        Inventory inventory = inventoryRepository.findByProductId(PRODUCT_ID).orElseThrow();
+        assertEquals(STOCK, succeeded);
+        assertEquals(STOCK, inventory.getReservedQuantity());
+        assertEquals(0, inventory.getAvailableQuantity());
+    }
+
+    @Test
+    void reserveStock_ConditionalUpdateAndRowLocking_NeverOversell(TestReporter reporter) throws Exception {
+        // Act: пропускная способность только выводится — сравнение по времени на загруженной машине нестабильно
+        long locking = throughput(this::reserveWithRowLock);
+        long conditional = throughput(() -> inventoryService.reserveStock(PRODUCT_ID, 1));
+
+        // Assert: throughput сам проверяет, что продано ровно столько, сколько было на складе
+        reporter.publishEntry("row-locking reservations/s", String.valueOf(locking));
+        reporter.publishEntry("conditional-update reservations/s", String.valueOf(conditional));
+    }
+
+    @Test
+    void reserveStock_ShardedProduct_NeverOversells() throws Exception {
+        // Arrange
+        inventoryService.enableSharding(PRODUCT_ID, SHARDS);
+
+        // Act
+        int succeeded = runConcurrently(() -> inventoryService.reserveStock(PRODUCT_ID, 1));
+
+        // Assert: резервы разошлись по шардам, в сумме ровно остаток
+        assertEquals(STOCK, succeeded);
+        assertEquals(STOCK, inventoryService.getByProductId(PRODUCT_ID).getReservedQuantity());
+        assertEquals(0, inventoryService.getByProductId(PRODUCT_ID).getAvailableQuantity());
+
+        // После выхода из режима остаток и резерв снова в одной строке
+        inventoryService.disableSharding(PRODUCT_ID);
+        Inventory inventory = inventoryRepository.findByProductId(PRODUCT_ID).orElseThrow();
+        assertEquals(STOCK, inventory.getQuantity());
+        assertEquals(STOCK, inventory.getReservedQuantity());
+        assertEquals(0, inventory.getShardQuantity());
+    }
+
+    @Test
+    void reserveStock_ShardedProduct_CollectsAcrossShards() {
+        // Arrange: 500 шт. на 8 шардов — ни в одном нет больше 63
+        inventoryService.enableSharding(PRODUCT_ID, SHARDS);
+
+        // Act: каждое количество больше любого шарда и собирается по частям
+        inventoryService.reserveStock(PRODUCT_ID, 200);
+        inventoryService.confirmReservation(PRODUCT_ID, 150);
+        inventoryService.releaseReservation(PRODUCT_ID, 50);
+        inventoryService.addStock(PRODUCT_ID, 30);
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> inventoryService.reserveStock(PRODUCT_ID, 381));
+        inventoryService.reserveStock(PRODUCT_ID, 380);
+
+        // Assert: суммы шардов сходятся с операциями, ни один шард не отдал больше своего остатка
+        List<InventoryShard> shards = shardRepository.findAll();
+        assertEquals("Insufficient stock for product: " + PRODUCT_ID, exception.getMessage());
+        assertEquals(SHARDS, shards.size());
+        assertEquals(380, shards.stream().mapToInt(InventoryShard::getQuantity).sum());
+        assertEquals(380, shards.stream().mapToInt(InventoryShard::getReservedQuantity).sum());
+        assertTrue(shards.stream().allMatch(shard -> shard.getReservedQuantity() <= shard.getQuantity()));
+        assertEquals(0, inventoryService.getByProductId(PRODUCT_ID).getAvailableQuantity());
+    }
+
+    @Test
+    void ledger_ConcurrentReservations_NeverOversellsAndFlushes() throws Exception {
+        // Arrange: остатки в памяти поверх той же строки
+        StockLedger ledger = new StockLedger(inventoryRepository, transactionTemplate, stockJournal,
+                new SimpleMeterRegistry(), true, 64, 10_000, Duration.ofSeconds(1));
+        ledger.load();
+
+        // Act
+        int succeeded = runConcurrently(() -> ledger.apply(StockOperation.RESERVE, Map.of(PRODUCT_ID, 1)));
+        ledger.flush();
+
+        // Assert: в памяти продано ровно по остатку, и сброс записал весь резерв в строку
+        Inventory inventory = inventoryRepository.findByProductId(PRODUCT_ID).orElseThrow();
+        assertEquals(STOCK, succeeded);
+        assertEquals(0, ledger.get(PRODUCT_ID).orElseThrow().getAvailableQuantity());
+        assertEquals(STOCK, inventory.getReservedQuantity());
+    }
+
+    // Резерв с блокировкой строки: SELECT ... FOR UPDATE, проверка в Java, запись при коммите
+    private void reserveWithRowLock() {
+        transactionTemplate.executeWithoutResult(status -> {
+            Inventory inventory = entityManager
+                    .createQuery("SELECT i FROM Inventory i WHERE i.productId = :productId", Inventory.class)
+                    .setParameter("productId", PRODUCT_ID)
+                    .setLockMode(LockModeType.PESSIMISTIC_WRITE)
+                    .getSingleResult();
+            if (inventory.getAvailableQuantity() < 1) {
+                throw new RuntimeException("Insufficient stock for product: " + PRODUCT_ID);
+            }
+            inventory.setReservedQuantity(inventory.getReservedQuantity() + 1);
+        });
+    }
+
+    // Резервов в секунду; заодно проверяет, что продано ровно столько, сколько было на складе
+    private long throughput(Runnable reservation) throws Exception {
+        resetStock();
+        long start = System.nanoTime();
+        int succeeded = runConcurrently(reservation);
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals(STOCK, succeeded);
+        assertEquals(STOCK, inventoryService.getByProductId(PRODUCT_ID).getReservedQuantity());
+        return ATTEMPTS * 1_000_000_000L / elapsed;
+    }
+
+    // Все потоки стартуют одновременно; возвращает число успешных резервов
+    private int runConcurrently(Runnable reservation) throws Exception {
+        AtomicInteger remaining = new AtomicInteger(ATTEMPTS);
+        AtomicInteger succeeded = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            List<Future<?>> workers = new ArrayList<>();
+            for (int i = 0; i < THREADS; i++) {
+                workers.add(executor.submit(() -> {
+                    start.await();
+                    while (remaining.getAndDecrement() > 0) {
+                        try {
+                            reservation.run();
+                            succeeded.incrementAndGet();
+                        } catch (RuntimeException e) {
+                            if (!e.getMessage().startsWith("Insufficient stock")) {
+                                throw e;
+                            }
+                        }
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> worker : workers) {
+                worker.get();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return succeeded.get();
+    }
+
+    private void resetStock() {
+        shardRepository.deleteAll();
+        inventoryRepository.deleteAll();
+        inventoryRepository.save(Inventory.builder()
+                .productId(PRODUCT_ID)
+                .quantity(STOCK)
+                .reservedQuantity(0)
+                .build());
+    }
+}
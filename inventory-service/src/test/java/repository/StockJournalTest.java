@@ -0,0 +1,184 @@
+package repository;
+
+import com.shop.inventory.InventoryServiceApplication;
+import com.shop.inventory.dto.InventoryDto;
+import com.shop.inventory.dto.StockJournalEntryDto;
+import com.shop.inventory.dto.StockReplayDto;
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.model.StockJournalEntry;
+import com.shop.inventory.repository.InventoryRepository;
+import com.shop.inventory.repository.InventoryShardRepository;
+import com.shop.inventory.repository.StockDelta;
+import com.shop.inventory.repository.StockJournalRepository;
+import com.shop.inventory.repository.StockSnapshotRepository;
+import com.shop.inventory.service.InventoryService;
+import com.shop.inventory.service.LowStockIndex;
+import com.shop.inventory.service.ShardedStock;
+import com.shop.inventory.service.StockCache;
+import com.shop.inventory.service.StockJournal;
+import com.shop.inventory.service.StockLedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Журнал остатков и снимки на H2
+ *
+ * Тестирует:
+ * - Каждая операция пишет запись, остаток по журналу сходится со строкой
+ * - После снимка восстановление читает только записи после него, в том числе у шардированного товара
+ * - Строка, разошедшаяся с журналом, перестраивается по нему
+ * - Строка, созданная до журнала, восстанавливается с начального снимка
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "inventory.cache.enabled=false",
+        "inventory.journal.snapshot-every=3"})
+@ContextConfiguration(classes = InventoryServiceApplication.class)
+@Import({InventoryService.class, ShardedStock.class, StockLedger.class, StockCache.class,
+        LowStockIndex.class, StockJournal.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StockJournalTest {
+
+    private static final long PRODUCT_ID = 300L;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private StockJournal stockJournal;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private InventoryShardRepository shardRepository;
+
+    @Autowired
+    private StockJournalRepository journalRepository;
+
+    @Autowired
+    private StockSnapshotRepository snapshotRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        journalRepository.deleteAllInBatch();
+        snapshotRepository.deleteAllInBatch();
+        shardRepository.deleteAllInBatch();
+        inventoryRepository.deleteAllInBatch();
+    }
+
+    @Test
+    void replay_AfterOperations_MatchesStock() {
+        // Arrange
+        inventoryService.addStock(PRODUCT_ID, 10);
+        inventoryService.reserveStock(PRODUCT_ID, 5);
+        inventoryService.confirmReservation(PRODUCT_ID, 3);
+        inventoryService.releaseReservation(PRODUCT_ID, 5);
+        inventoryService.addStock(PRODUCT_ID, 4);
+
+        // Act
+        List<StockJournalEntryDto> entries = inventoryService.getJournal(PRODUCT_ID, 0, 100);
+        StockReplayDto replay = inventoryService.replayJournal(PRODUCT_ID);
+
+        // Assert: снятие 5 при резерве 2 опускает резерв до нуля, как и сама операция
+        assertEquals(List.of(StockJournalEntry.Type.CREATE, StockJournalEntry.Type.RESERVE,
+                        StockJournalEntry.Type.CONFIRM, StockJournalEntry.Type.RELEASE, StockJournalEntry.Type.ADD),
+                entries.stream().map(StockJournalEntryDto::getType).toList());
+        assertNull(replay.getSnapshotJournalId());
+        assertEquals(5, replay.getEntriesReplayed());
+        assertEquals(11, replay.getQuantity());
+        assertEquals(0, replay.getReservedQuantity());
+        assertTrue(replay.isConsistent());
+    }
+
+    @Test
+    void snapshot_ReplayReadsOnlyTail() {
+        // Arrange: обычный и шардированный товар, по три записи — пора снимать
+        inventoryService.addStock(PRODUCT_ID, 20);
+        inventoryService.addStock(PRODUCT_ID + 1, 40);
+        inventoryService.enableSharding(PRODUCT_ID + 1, 4);
+        for (long productId = PRODUCT_ID; productId <= PRODUCT_ID + 1; productId++) {
+            inventoryService.reserveStock(productId, 6);
+            inventoryService.confirmReservation(productId, 2);
+        }
+
+        // Act
+        stockJournal.snapshotBusy();
+        inventoryService.releaseReservation(PRODUCT_ID, 1);
+        inventoryService.reserveStock(PRODUCT_ID + 1, 30);
+        StockReplayDto plain = inventoryService.replayJournal(PRODUCT_ID);
+        StockReplayDto sharded = inventoryService.replayJournal(PRODUCT_ID + 1);
+
+        // Assert
+        assertNotNull(plain.getSnapshotJournalId());
+        assertEquals(1, plain.getEntriesReplayed());
+        assertEquals(18, plain.getQuantity());
+        assertEquals(3, plain.getReservedQuantity());
+        assertTrue(plain.isConsistent());
+        assertEquals(1, sharded.getEntriesReplayed());
+        assertEquals(34, sharded.getReservedQuantity());
+        assertTrue(sharded.isConsistent());
+    }
+
+    @Test
+    void rebuild_DriftedRow_RestoresFromJournal() {
+        // Arrange: строку изменили в обход журнала
+        inventoryService.addStock(PRODUCT_ID, 10);
+        inventoryService.reserveStock(PRODUCT_ID, 4);
+        transactionTemplate.executeWithoutResult(status ->
+                inventoryRepository.applyDeltas(Map.of(PRODUCT_ID, new StockDelta(100, -4))));
+
+        // Act
+        boolean consistentBefore = inventoryService.replayJournal(PRODUCT_ID).isConsistent();
+        StockReplayDto rebuilt = inventoryService.rebuildFromJournal(PRODUCT_ID);
+
+        // Assert
+        assertFalse(consistentBefore);
+        assertTrue(rebuilt.isRebuilt());
+        assertEquals(110, rebuilt.getCurrentQuantity());
+        InventoryDto stock = inventoryService.getByProductId(PRODUCT_ID);
+        assertEquals(10, stock.getQuantity());
+        assertEquals(4, stock.getReservedQuantity());
+        assertTrue(inventoryService.replayJournal(PRODUCT_ID).isConsistent());
+    }
+
+    @Test
+    void replay_RowBeforeJournal_StartsFromInitialSnapshot() {
+        // Arrange: строка записана мимо InventoryService, как у DataInitializer
+        inventoryRepository.save(Inventory.builder()
+                .productId(PRODUCT_ID)
+                .quantity(50)
+                .reservedQuantity(0)
+                .build());
+        RuntimeException beforeSnapshot = assertThrows(RuntimeException.class,
+                () -> inventoryService.replayJournal(PRODUCT_ID));
+
+        // Act
+        stockJournal.snapshotUnseen();
+        inventoryService.reserveStock(PRODUCT_ID, 7);
+        StockReplayDto replay = inventoryService.replayJournal(PRODUCT_ID);
+
+        // Assert
+        assertTrue(beforeSnapshot.getMessage().contains("no snapshot yet"));
+        assertEquals(0L, replay.getSnapshotJournalId());
+        assertEquals(1, replay.getEntriesReplayed());
+        assertEquals(7, replay.getReservedQuantity());
+        assertTrue(replay.isConsistent());
+    }
+}
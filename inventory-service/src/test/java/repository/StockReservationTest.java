@@ -0,0 +1,190 @@
+package repository;
+
+import com.shop.inventory.InventoryServiceApplication;
+import com.shop.inventory.dto.InventoryDto;
+import com.shop.inventory.dto.ReservationDto;
+import com.shop.inventory.dto.StockUpdateRequest;
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.model.StockReservation;
+import com.shop.inventory.repository.InventoryRepository;
+import com.shop.inventory.repository.InventoryShardRepository;
+import com.shop.inventory.repository.StockReservationRepository;
+import com.shop.inventory.service.InventoryService;
+import com.shop.inventory.service.LowStockIndex;
+import com.shop.inventory.service.ReservationService;
+import com.shop.inventory.service.ShardedStock;
+import com.shop.inventory.service.StockCache;
+import com.shop.inventory.service.StockJournal;
+import com.shop.inventory.service.StockLedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Резервы по заказам на H2
+ *
+ * Тестирует:
+ * - Повтор резерва, подтверждения и снятия заказа не меняет остаток второй раз
+ * - Сборщик снимает истёкшие резервы кусками и не трогает действующие
+ * - Закреплённый резерв принятого заказа сборщик не снимает
+ * - Подтверждение истёкшего резерва заново берёт остаток, снятый резерв подтвердить нельзя
+ * - Заказ без записей резерва подтверждается переданными количествами, как раньше
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "inventory.cache.enabled=false",
+        "inventory.reservations.sweep-chunk=2"})
+@ContextConfiguration(classes = InventoryServiceApplication.class)
+@Import({InventoryService.class, ShardedStock.class, StockLedger.class, StockCache.class,
+        LowStockIndex.class, StockJournal.class, ReservationService.class, SimpleMeterRegistry.class})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class StockReservationTest {
+
+    private static final long PRODUCT_ID = 200L;
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private InventoryShardRepository shardRepository;
+
+    @Autowired
+    private StockReservationRepository reservationRepository;
+
+    @BeforeEach
+    void setUp() {
+        reservationRepository.deleteAll();
+        shardRepository.deleteAll();
+        inventoryRepository.deleteAll();
+        inventoryRepository.save(Inventory.builder()
+                .productId(PRODUCT_ID)
+                .quantity(10)
+                .reservedQuantity(0)
+                .build());
+    }
+
+    @Test
+    void retries_AreNoOps() {
+        // Act: каждый запрос приходит дважды
+        reservationService.reserve(items(1L, 3));
+        reservationService.reserve(items(1L, 3));
+        InventoryDto reserved = stock();
+        reservationService.confirm(items(1L, 3));
+        List<ReservationDto> confirmed = reservationService.confirm(items(1L, 3));
+        reservationService.release(items(1L, 3));
+
+        // Assert
+        assertEquals(3, reserved.getReservedQuantity());
+        assertEquals(StockReservation.Status.CONFIRMED, confirmed.get(0).getStatus());
+        assertEquals(7, stock().getQuantity());
+        assertEquals(0, stock().getReservedQuantity());
+    }
+
+    @Test
+    void releaseExpired_ReleasesExpiredHoldsInChunks() {
+        // Arrange: три истёкших резерва (больше одного куска) и один действующий
+        for (long orderId = 1; orderId <= 4; orderId++) {
+            reservationService.reserve(items(orderId, 1));
+        }
+        expire(1L, 2L, 3L);
+
+        // Act
+        reservationService.releaseExpired();
+
+        // Assert
+        assertEquals(1, stock().getReservedQuantity());
+        assertEquals(StockReservation.Status.EXPIRED, status(3L));
+        assertEquals(StockReservation.Status.HELD, status(4L));
+    }
+
+    @Test
+    void releaseExpired_PinnedHold_IsKept() {
+        // Arrange: оба резерва просрочены, но заказ 1 принят и его резерв закреплён
+        reservationService.reserve(items(1L, 2));
+        reservationService.reserve(items(2L, 3));
+        expire(1L, 2L);
+        List<ReservationDto> pinned = reservationService.pin(items(1L, 2));
+
+        // Act
+        reservationService.releaseExpired();
+
+        // Assert
+        assertNull(pinned.get(0).getExpiresAt());
+        assertEquals(StockReservation.Status.HELD, status(1L));
+        assertEquals(StockReservation.Status.EXPIRED, status(2L));
+        assertEquals(2, stock().getReservedQuantity());
+    }
+
+    @Test
+    void confirm_ExpiredHold_ReservesAgain() {
+        // Arrange
+        reservationService.reserve(items(1L, 4));
+        reservationService.reserve(items(2L, 2));
+        expire(1L);
+        reservationService.releaseExpired();
+        reservationService.release(items(2L, 2));
+
+        // Act
+        reservationService.confirm(items(1L, 4));
+
+        // Assert
+        assertEquals(StockReservation.Status.CONFIRMED, status(1L));
+        assertEquals(6, stock().getQuantity());
+        assertEquals(0, stock().getReservedQuantity());
+        RuntimeException e = assertThrows(RuntimeException.class, () -> reservationService.confirm(items(2L, 2)));
+        assertEquals("Stock reservation for order 2 was released", e.getMessage());
+    }
+
+    @Test
+    void confirm_OrderWithoutReservation_UsesGivenQuantities() {
+        // Arrange: резерв сделан старым агрегатным запросом
+        inventoryService.reserveStock(PRODUCT_ID, 2);
+
+        // Act
+        List<ReservationDto> result = reservationService.confirm(items(9L, 2));
+
+        // Assert
+        assertTrue(result.isEmpty());
+        assertEquals(8, stock().getQuantity());
+        assertEquals(0, stock().getReservedQuantity());
+    }
+
+    private List<StockUpdateRequest> items(Long orderId, int quantity) {
+        StockUpdateRequest item = new StockUpdateRequest();
+        item.setOrderId(orderId);
+        item.setProductId(PRODUCT_ID);
+        item.setQuantity(quantity);
+        return List.of(item);
+    }
+
+    private void expire(Long... orderIds) {
+        List<StockReservation> reservations = reservationRepository.findByOrderIdInOrderById(List.of(orderIds));
+        reservations.forEach(reservation -> reservation.setExpiresAt(LocalDateTime.now().minusMinutes(1)));
+        reservationRepository.saveAll(reservations);
+    }
+
+    private StockReservation.Status status(Long orderId) {
+        return reservationRepository.findByOrderIdInOrderById(List.of(orderId)).get(0).getStatus();
+    }
+
+    private InventoryDto stock() {
+        return inventoryService.getByProductId(PRODUCT_ID);
+    }
+}
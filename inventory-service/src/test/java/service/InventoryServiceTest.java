@@ -2,20 +2,43 @@ package service;
 
 import com.shop.inventory.dto.InventoryDto;
 import com.shop.inventory.dto.StockCheckResponse;
+import com.shop.inventory.dto.StockUpdateRequest;
 import com.shop.inventory.model.Inventory;
 import com.shop.inventory.repository.InventoryRepository;
+import com.shop.inventory.repository.StockOperation;
+import com.shop.inventory.service.InventoryChangedEvent;
 import com.shop.inventory.service.InventoryService;
+import com.shop.inventory.service.ShardedStock;
+import com.shop.inventory.service.StockCache;
+import com.shop.inventory.service.StockJournal;
+import com.shop.inventory.service.StockLedger;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -25,6 +48,13 @@ import static org.mockito.Mockito.*;
  * - Резервирование товара на складе
  * - Проверка наличия достаточного количества
  * - Обработка недостаточного количества
+ * - Резерв одним условным UPDATE без чтения строки
+ * - Публикация нового остатка для потока изменений
+ * - Пакетное резервирование (всё или ничего) в порядке product_id
+ * - Резерв шардированного товара уходит в шарды, остаток суммируется по ним
+ * - С включённым StockLedger резерв выполняется в памяти без обращения к БД
+ * - Кусок импорта меняет память StockLedger только после коммита
+ * - В транзакции резервов StockLedger возвращает резерв при откате, а подтверждение применяет после коммита
  */
 @ExtendWith(MockitoExtension.class)
 class InventoryServiceTest {
@@ -32,13 +62,39 @@ class InventoryServiceTest {
     @Mock
     private InventoryRepository inventoryRepository;
 
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private ShardedStock shardedStock;
+
+    @Mock
+    private StockLedger stockLedger;
+
+    @Mock
+    private StockCache stockCache;
+
+    @Mock
+    private StockJournal stockJournal;
+
+    @Mock
+    private ApplicationEventPublisher eventPublisher;
+
     @InjectMocks
     private InventoryService inventoryService;
 
+    @Captor
+    private ArgumentCaptor<Map<Long, Integer>> quantities;
+
     private Inventory testInventory;
 
     @BeforeEach
     void setUp() {
+        // TransactionTemplate просто выполняет переданный callback
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0)
+                        .doInTransaction(new SimpleTransactionStatus()));
+
         testInventory = Inventory.builder()
                 .id(1L)
                 .productId(100L)
@@ -50,8 +106,8 @@ class InventoryServiceTest {
 
     @Test
     void reserveStock_SufficientStock_ReservesSuccessfully() {
-        // Arrange
-        when(inventoryRepository.findByProductId(100L)).thenReturn(Optional.of(testInventory));
+        // Arrange: условный UPDATE изменил одну строку
+        when(inventoryRepository.reserve(Map.of(100L, 5))).thenReturn(new int[]{1});
 
         Inventory savedInventory = Inventory.builder()
                 .id(1L)
@@ -59,7 +115,7 @@ class InventoryServiceTest {
                 .quantity(50)
                 .reservedQuantity(15)  // 10 + 5 = 15
                 .build();
-        when(inventoryRepository.save(any(Inventory.class))).thenReturn(savedInventory);
+        when(inventoryRepository.readStock(anyCollection())).thenReturn(List.of(savedInventory));
 
         // Act
         InventoryDto result = inventoryService.reserveStock(100L, 5);
@@ -69,15 +125,19 @@ class InventoryServiceTest {
         assertEquals(15, result.getReservedQuantity());
         assertEquals(35, result.getAvailableQuantity()); // 50 - 15 = 35
 
-        verify(inventoryRepository).findByProductId(100L);
-        verify(inventoryRepository).save(any(Inventory.class));
+        // Сущность не загружается и не сохраняется целиком
+        verify(inventoryRepository, never()).findByProductId(any());
+        verify(inventoryRepository, never()).save(any(Inventory.class));
+
+        // Новый остаток уходит подписчикам потока изменений
+        verify(eventPublisher).publishEvent((Object) new InventoryChangedEvent(List.of(savedInventory)));
     }
 
     @Test
     void reserveStock_InsufficientStock_ThrowsException() {
-        // Arrange
-        when(inventoryRepository.findByProductId(100L)).thenReturn(Optional.of(testInventory));
-        // Доступно только 40, пытаемся зарезервировать 50
+        // Arrange: доступно только 40, условие quantity - reserved >= 50 не выполнилось
+        when(inventoryRepository.reserve(Map.of(100L, 50))).thenReturn(new int[]{0});
+        when(inventoryRepository.readStock(anyCollection())).thenReturn(List.of(testInventory));
 
         // Act & Assert
         RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -85,9 +145,58 @@ class InventoryServiceTest {
         });
 
         assertEquals("Insufficient stock for product: 100", exception.getMessage());
+    }
 
-        // Проверяем, что save НЕ был вызван
-        verify(inventoryRepository, never()).save(any(Inventory.class));
+    @Test
+    void reserveStock_UnknownProduct_ThrowsNotFound() {
+        // Arrange
+        when(inventoryRepository.reserve(Map.of(999L, 1))).thenReturn(new int[]{0});
+        when(inventoryRepository.readStock(anyCollection())).thenReturn(List.of());
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+            inventoryService.reserveStock(999L, 1);
+        });
+
+        assertEquals("Inventory not found for product: 999", exception.getMessage());
+    }
+
+    @Test
+    void reserveStock_ShardedProduct_ReservesFromShards() {
+        // Arrange: строка шардированного товара не подходит под условие, остаток лежит в 4 шардах
+        when(inventoryRepository.reserve(Map.of(100L, 5))).thenReturn(new int[]{0});
+        when(inventoryRepository.readStock(anyCollection())).thenReturn(
+                List.of(sharded(40, 10)),
+                List.of(sharded(40, 15)));
+        when(shardedStock.apply(StockOperation.RESERVE, 100L, 5, 4)).thenReturn(true);
+
+        // Act
+        InventoryDto result = inventoryService.reserveStock(100L, 5);
+
+        // Assert: в ответе суммы по шардам
+        assertEquals(40, result.getQuantity());
+        assertEquals(15, result.getReservedQuantity());
+        assertEquals(25, result.getAvailableQuantity());
+        assertEquals(4, result.getShardCount());
+    }
+
+    @Test
+    void reserveStock_LedgerEnabled_ReservesInMemory() {
+        // Arrange
+        when(stockLedger.isEnabled()).thenReturn(true);
+        when(stockLedger.apply(StockOperation.RESERVE, Map.of(100L, 5))).thenReturn(List.of(Inventory.builder()
+                .id(1L)
+                .productId(100L)
+                .quantity(50)
+                .reservedQuantity(15)
+                .build()));
+
+        // Act
+        InventoryDto result = inventoryService.reserveStock(100L, 5);
+
+        // Assert
+        assertEquals(35, result.getAvailableQuantity());
+        verifyNoInteractions(inventoryRepository, transactionTemplate);
     }
 
     @Test
@@ -116,4 +225,135 @@ class InventoryServiceTest {
         assertFalse(result.isInStock());     // 40 < 50
         assertEquals(40, result.getAvailableQuantity());
     }
+
+    @Test
+    void reserveStockBatch_SufficientStock_ReservesAllItems() {
+        // Arrange
+        when(inventoryRepository.reserve(any())).thenReturn(new int[]{1, 1});
+        when(inventoryRepository.readStock(anyCollection())).thenReturn(List.of(
+                Inventory.builder().id(2L).productId(200L).quantity(20).reservedQuantity(3).build(),
+                Inventory.builder().id(1L).productId(100L).quantity(50).reservedQuantity(17).build()));
+
+        // Act (товар 100 встречается дважды — количества суммируются)
+        List<InventoryDto> result = inventoryService.reserveStockBatch(List.of(
+                stockRequest(100L, 5),
+                stockRequest(200L, 3),
+                stockRequest(100L, 2)));
+
+        // Assert: один пакет UPDATE, позиции по возрастанию product_id
+        verify(inventoryRepository, times(1)).reserve(quantities.capture());
+        assertEquals(List.of(100L, 200L), List.copyOf(quantities.getValue().keySet()));
+        assertEquals(7, quantities.getValue().get(100L));
+        assertEquals(3, quantities.getValue().get(200L));
+
+        assertEquals(2, result.size());
+        assertEquals(100L, result.get(0).getProductId());
+        assertEquals(17, result.get(0).getReservedQuantity());
+        verify(inventoryRepository, never()).saveAll(anyCollection());
+    }
+
+    @Test
+    void reserveStockBatch_OneItemInsufficient_ThrowsForThatItem() {
+        // Arrange: товар 200 не прошёл условие, транзакция откатит резерв товара 100
+        when(inventoryRepository.reserve(any())).thenReturn(new int[]{1, 0});
+        when(inventoryRepository.readStock(anyCollection())).thenReturn(List.of(testInventory, Inventory.builder()
+                .id(2L)
+                .productId(200L)
+                .quantity(20)
+                .reservedQuantity(0)
+                .build()));
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+            inventoryService.reserveStockBatch(List.of(stockRequest(100L, 5), stockRequest(200L, 25)));
+        });
+
+        assertEquals("Insufficient stock for product: 200", exception.getMessage());
+    }
+
+    @Test
+    void importStock_LedgerEnabled_ChangesMemoryOnlyAfterCommit() {
+        // Arrange: товар 100 уже в памяти, товар 200 новый
+        when(stockLedger.isEnabled()).thenReturn(true);
+        when(stockLedger.get(100L)).thenReturn(Optional.of(testInventory));
+        when(stockLedger.get(200L)).thenReturn(Optional.empty());
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            Set<Long> created = inventoryService.importStock(Map.of(100L, 5, 200L, 7));
+
+            // Assert: до коммита память не тронута — откат куска и его повтор не удвоят приход
+            assertEquals(Set.of(200L), created);
+            verify(stockLedger, never()).add(anyLong(), anyInt());
+            verify(stockLedger, never()).register(any());
+
+            when(stockLedger.add(100L, 5)).thenReturn(testInventory);
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(stockLedger).add(100L, 5);
+            verify(stockLedger).register(argThat(inventory -> inventory.getProductId() == 200L));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void update_LedgerReserveRolledBack_ReturnsReserveToLedger() {
+        // Arrange
+        when(stockLedger.isEnabled()).thenReturn(true);
+        when(stockLedger.apply(eq(StockOperation.RESERVE), any())).thenReturn(List.of(testInventory));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act: резерв берётся в памяти сразу, чтобы проверка остатка и списание были атомарны
+            inventoryService.update(Map.of(100L, 5), StockOperation.RESERVE);
+            TransactionSynchronizationManager.getSynchronizations()
+                    .forEach(sync -> sync.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+            // Assert: записи резервов откатились, память возвращает тот же резерв
+            verify(stockLedger).apply(StockOperation.RESERVE, Map.of(100L, 5));
+            verify(stockLedger).apply(StockOperation.RELEASE, Map.of(100L, 5));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void update_LedgerConfirmInTransaction_AppliesAfterCommit() {
+        // Arrange
+        when(stockLedger.isEnabled()).thenReturn(true);
+        when(stockLedger.get(100L)).thenReturn(Optional.of(testInventory));
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            // Act
+            inventoryService.update(Map.of(100L, 5), StockOperation.CONFIRM);
+
+            // Assert: до коммита условия только проверены
+            verify(stockLedger).check(StockOperation.CONFIRM, Map.of(100L, 5));
+            verify(stockLedger, never()).apply(any(), any());
+
+            when(stockLedger.apply(StockOperation.CONFIRM, Map.of(100L, 5))).thenReturn(List.of(testInventory));
+            TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+            verify(stockLedger).apply(StockOperation.CONFIRM, Map.of(100L, 5));
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    private Inventory sharded(int shardQuantity, int shardReservedQuantity) {
+        return Inventory.builder()
+                .id(1L)
+                .productId(100L)
+                .quantity(0)
+                .reservedQuantity(0)
+                .shardCount(4)
+                .shardQuantity(shardQuantity)
+                .shardReservedQuantity(shardReservedQuantity)
+                .build();
+    }
+
+    private StockUpdateRequest stockRequest(Long productId, Integer quantity) {
+        StockUpdateRequest request = new StockUpdateRequest();
+        request.setProductId(productId);
+        request.setQuantity(quantity);
+        return request;
+    }
 }
\ No newline at end of file
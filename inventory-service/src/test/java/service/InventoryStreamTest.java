@@ -0,0 +1,133 @@
+package service;
+
+import com.shop.inventory.controller.InventoryController;
+import com.shop.inventory.dto.InventoryDto;
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.service.InventoryChangedEvent;
+import com.shop.inventory.service.InventoryService;
+import com.shop.inventory.service.InventoryStream;
+import com.shop.inventory.service.StockImport;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.setup.MockMvcBuilders;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+
+/**
+ * Юнит-тест для InventoryStream
+ *
+ * Тестирует:
+ * - Первое событие потока — снимок остатков
+ * - Частые изменения товара сливаются в одну дельту с последним значением
+ * - Фильтр productIds: подписчик получает только свои товары
+ */
+@ExtendWith(MockitoExtension.class)
+class InventoryStreamTest {
+
+    @Mock
+    private InventoryService inventoryService;
+
+    private InventoryStream inventoryStream;
+    private MockMvc mockMvc;
+
+    @BeforeEach
+    void setUp() {
+        inventoryStream = new InventoryStream(inventoryService, new SimpleMeterRegistry(),
+                Duration.ofMinutes(1), Duration.ofSeconds(15), 2);
+        mockMvc = MockMvcBuilders.standaloneSetup(
+                new InventoryController(inventoryService, inventoryStream, mock(StockImport.class))).build();
+    }
+
+    @Test
+    void stream_RapidUpdates_SendsSnapshotThenOneCoalescedDelta() throws Exception {
+        // Arrange
+        when(inventoryService.getAllInventory()).thenReturn(List.of(dto(6L, 30, 0, 5L)));
+        MockHttpServletResponse response = mockMvc.perform(get("/api/inventory/stream"))
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse();
+
+        // Act: три резерва подряд за один интервал
+        inventoryStream.onInventoryChanged(changed(6L, 30, 1, 6L));
+        inventoryStream.onInventoryChanged(changed(6L, 30, 2, 7L));
+        inventoryStream.onInventoryChanged(changed(6L, 30, 3, 8L));
+        inventoryStream.flush();
+
+        // Assert
+        String body = awaitDeltas(response, 1);
+        assertTrue(body.startsWith("event:snapshot\ndata:[{\"id\":6,\"productId\":6,\"quantity\":30,\"reservedQuantity\":0"), body);
+        assertEquals(1, count(body, "event:delta"));
+        assertTrue(body.contains("data:[{\"productId\":6,\"quantity\":30,\"reservedQuantity\":3,\"availableQuantity\":27,\"version\":8}]"), body);
+    }
+
+    @Test
+    void stream_ProductFilter_SkipsOtherProducts() throws Exception {
+        // Arrange
+        when(inventoryService.getByProductIds(Set.of(6L))).thenReturn(List.of(dto(6L, 30, 0, 5L)));
+        MockHttpServletResponse response = mockMvc.perform(get("/api/inventory/stream").param("productIds", "6"))
+                .andExpect(request().asyncStarted())
+                .andReturn().getResponse();
+
+        // Act
+        inventoryStream.onInventoryChanged(changed(1L, 10, 1, 2L));
+        inventoryStream.flush();
+        String afterOther = response.getContentAsString();
+        inventoryStream.onInventoryChanged(changed(6L, 30, 1, 6L));
+        inventoryStream.flush();
+
+        // Assert: без изменений своих товаров отправка в пул не ставится
+        assertEquals(0, count(afterOther, "event:delta"));
+        String body = awaitDeltas(response, 1);
+        assertEquals(1, count(body, "event:delta"));
+        assertFalse(body.contains("\"productId\":1,"), body);
+        verify(inventoryService, never()).getAllInventory();
+    }
+
+    private InventoryDto dto(Long productId, int quantity, int reserved, Long version) {
+        return InventoryDto.builder()
+                .id(productId)
+                .productId(productId)
+                .quantity(quantity)
+                .reservedQuantity(reserved)
+                .availableQuantity(quantity - reserved)
+                .version(version)
+                .build();
+    }
+
+    private InventoryChangedEvent changed(Long productId, int quantity, int reserved, Long version) {
+        return new InventoryChangedEvent(List.of(Inventory.builder()
+                .id(productId)
+                .productId(productId)
+                .quantity(quantity)
+                .reservedQuantity(reserved)
+                .version(version)
+                .build()));
+    }
+
+    // Дельты пишет пул отправки, а не поток flush; событие дописано, когда тело кончается пустой строкой
+    private String awaitDeltas(MockHttpServletResponse response, int deltas) throws Exception {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        String body = response.getContentAsString();
+        while ((count(body, "event:delta") < deltas || !body.endsWith("\n\n")) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            body = response.getContentAsString();
+        }
+        return body;
+    }
+
+    private int count(String body, String token) {
+        return body.split(token, -1).length - 1;
+    }
+}
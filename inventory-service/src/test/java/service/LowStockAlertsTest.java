@@ -0,0 +1,158 @@
+package service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.inventory.dto.LowStockDto;
+import com.shop.inventory.service.LowStockAlerts;
+import com.shop.inventory.service.LowStockIndex;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.client.RestClient;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для LowStockAlerts
+ *
+ * Тестирует:
+ * - Пересечения порога за интервал уходят одним пакетным запросом получателю user-id
+ * - Неотправленная пачка повторяется с теми же eventId вместе с новыми пересечениями
+ * - Сверх max-pending отбрасываются самые старые уведомления
+ * - Без получателя уведомления не отправляются
+ */
+@ExtendWith(MockitoExtension.class)
+class LowStockAlertsTest {
+
+    @Mock
+    private LowStockIndex lowStockIndex;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<JsonNode> requests = new CopyOnWriteArrayList<>();
+    // Коды ответов notification-service по порядку; когда кончаются — 200
+    private final ConcurrentLinkedQueue<Integer> statuses = new ConcurrentLinkedQueue<>();
+    private HttpServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/api/notifications/send-batch", exchange -> {
+            requests.add(objectMapper.readTree(exchange.getRequestBody()));
+            Integer status = statuses.poll();
+            exchange.sendResponseHeaders(status != null ? status : 200, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void flush_Crossings_SendsOneBatch() {
+        // Arrange
+        LowStockAlerts alerts = alerts(7L, 100);
+        when(lowStockIndex.drainCrossings()).thenReturn(List.of(crossing(1L, true), crossing(2L, false)));
+
+        // Act
+        alerts.flush();
+
+        // Assert
+        assertEquals(1, requests.size());
+        JsonNode notifications = requests.get(0).get("notifications");
+        assertEquals(2, notifications.size());
+        assertEquals(7L, notifications.get(0).get("userId").asLong());
+        assertEquals("LOW_STOCK", notifications.get(0).get("type").asText());
+        assertEquals("STOCK_RESTORED", notifications.get(1).get("type").asText());
+    }
+
+    @Test
+    void flush_ServiceDown_RetriesWithSameEventIds() {
+        // Arrange
+        LowStockAlerts alerts = alerts(7L, 100);
+        statuses.add(503);
+        when(lowStockIndex.drainCrossings())
+                .thenReturn(List.of(crossing(1L, true)))
+                .thenReturn(List.of(crossing(2L, true)))
+                .thenReturn(List.of());
+
+        // Act
+        alerts.flush();
+        alerts.flush();
+        alerts.flush();
+
+        // Assert: повтор несёт прежний eventId и новое пересечение, после успеха пачка не повторяется
+        assertEquals(2, requests.size());
+        List<String> first = eventIds(requests.get(0));
+        List<String> retry = eventIds(requests.get(1));
+        assertEquals(1, first.size());
+        assertEquals(2, retry.size());
+        assertEquals(first.get(0), retry.get(0));
+    }
+
+    @Test
+    void flush_MaxPendingExceeded_DropsOldest() {
+        // Arrange: notification-service отвечает ошибкой, копится не больше двух уведомлений
+        LowStockAlerts alerts = alerts(7L, 2);
+        statuses.add(503);
+        statuses.add(503);
+        when(lowStockIndex.drainCrossings())
+                .thenReturn(List.of(crossing(1L, true), crossing(2L, true)))
+                .thenReturn(List.of(crossing(3L, true)));
+
+        // Act
+        alerts.flush();
+        alerts.flush();
+
+        // Assert
+        JsonNode notifications = requests.get(1).get("notifications");
+        assertEquals(2, notifications.size());
+        assertTrue(notifications.get(0).get("message").asText().startsWith("Product 2 "));
+        assertTrue(notifications.get(1).get("message").asText().startsWith("Product 3 "));
+    }
+
+    @Test
+    void flush_NoRecipient_SendsNothing() {
+        // Arrange
+        LowStockAlerts alerts = alerts(null, 100);
+        when(lowStockIndex.drainCrossings()).thenReturn(List.of(crossing(1L, true)));
+
+        // Act
+        alerts.flush();
+
+        // Assert: пересечения всё равно забираются, чтобы не копиться в индексе
+        assertTrue(requests.isEmpty());
+        verify(lowStockIndex).drainCrossings();
+    }
+
+    private LowStockAlerts alerts(Long userId, int maxPending) {
+        return new LowStockAlerts(lowStockIndex, RestClient.builder(), new SimpleMeterRegistry(),
+                "http://localhost:" + server.getAddress().getPort(), Duration.ofSeconds(3),
+                true, userId, maxPending);
+    }
+
+    private LowStockIndex.Crossing crossing(Long productId, boolean low) {
+        return new LowStockIndex.Crossing(new LowStockDto(productId, low ? 2 : 20, 10), low);
+    }
+
+    private List<String> eventIds(JsonNode request) {
+        List<String> eventIds = new ArrayList<>();
+        request.get("notifications").forEach(notification -> eventIds.add(notification.get("eventId").asText()));
+        return eventIds;
+    }
+}
@@ -0,0 +1,103 @@
+package service;
+
+import com.shop.inventory.dto.LowStockPageDto;
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.repository.InventoryRepository;
+import com.shop.inventory.service.InventoryChangedEvent;
+import com.shop.inventory.service.LowStockIndex;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для LowStockIndex
+ *
+ * Тестирует:
+ * - Страница товаров ниже порога по возрастанию остатка, свой порог товара вместо порога по умолчанию
+ * - Изменение остатка переносит товар в индекс и из него, старая версия не применяется
+ * - Пересечение порога отдаётся один раз; товар, вернувшийся за интервал, не даёт уведомления
+ */
+@ExtendWith(MockitoExtension.class)
+class LowStockIndexTest {
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    private LowStockIndex lowStockIndex;
+
+    @BeforeEach
+    void setUp() {
+        lowStockIndex = new LowStockIndex(inventoryRepository, new SimpleMeterRegistry(), 10);
+        // Товар 3 ниже порога по умолчанию, у товара 4 свой порог 50
+        when(inventoryRepository.findAll()).thenReturn(List.of(
+                inventory(1L, 100, 1L, null),
+                inventory(2L, 8, 1L, null),
+                inventory(3L, 2, 1L, null),
+                inventory(4L, 40, 1L, 50)));
+        lowStockIndex.load();
+    }
+
+    @Test
+    void getPage_ReturnsLowProductsByAvailableQuantity() {
+        // Act
+        LowStockPageDto first = lowStockIndex.getPage(0, 2);
+        LowStockPageDto second = lowStockIndex.getPage(1, 2);
+
+        // Assert
+        assertEquals(3, first.getTotalElements());
+        assertEquals(2, first.getTotalPages());
+        assertEquals(List.of(3L, 2L), first.getItems().stream().map(item -> item.getProductId()).toList());
+        assertEquals(4L, second.getItems().get(0).getProductId());
+        assertEquals(50, second.getItems().get(0).getThreshold());
+        assertTrue(lowStockIndex.drainCrossings().isEmpty());
+    }
+
+    @Test
+    void onInventoryChanged_MovesProductsAndSkipsStaleVersions() {
+        // Act: товар 1 уходит ниже порога, товар 3 пополнен, затем приходит устаревшее значение товара 3
+        lowStockIndex.onInventoryChanged(new InventoryChangedEvent(List.of(
+                inventory(1L, 5, 2L, null),
+                inventory(3L, 30, 3L, null))));
+        lowStockIndex.onInventoryChanged(new InventoryChangedEvent(List.of(inventory(3L, 2, 2L, null))));
+
+        // Assert
+        LowStockPageDto page = lowStockIndex.getPage(0, 10);
+        assertEquals(List.of(1L, 2L, 4L), page.getItems().stream().map(item -> item.getProductId()).toList());
+        assertEquals(3, page.getTotalElements());
+        List<LowStockIndex.Crossing> crossings = lowStockIndex.drainCrossings();
+        assertEquals(2, crossings.size());
+        assertTrue(crossings.stream().anyMatch(c -> c.stock().getProductId() == 1L && c.low()));
+        assertTrue(crossings.stream().anyMatch(c -> c.stock().getProductId() == 3L && !c.low()));
+        assertTrue(lowStockIndex.drainCrossings().isEmpty());
+    }
+
+    @Test
+    void drainCrossings_ProductBackBeforeDrain_ReportsNothing() {
+        // Act: товар 1 проседает и снова пополняется до отправки уведомлений
+        lowStockIndex.onInventoryChanged(new InventoryChangedEvent(List.of(inventory(1L, 5, 2L, null))));
+        lowStockIndex.onInventoryChanged(new InventoryChangedEvent(List.of(inventory(1L, 60, 3L, null))));
+
+        // Assert
+        assertTrue(lowStockIndex.drainCrossings().isEmpty());
+        assertEquals(3, lowStockIndex.getPage(0, 10).getTotalElements());
+    }
+
+    private Inventory inventory(Long productId, int quantity, Long version, Integer threshold) {
+        return Inventory.builder()
+                .id(productId)
+                .productId(productId)
+                .quantity(quantity)
+                .reservedQuantity(0)
+                .version(version)
+                .lowStockThreshold(threshold)
+                .build();
+    }
+}
@@ -0,0 +1,126 @@
+package service;
+
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.service.StockCache;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Юнит-тест для StockCache
+ *
+ * Тестирует:
+ * - Повторная проверка наличия не читает БД, попадания видны в метриках
+ * - Опоздавшая загрузка со старой версией не вытесняет закоммиченное значение
+ * - Значение из транзакции попадает в кэш только после коммита
+ * - Шардированный товар всегда читается из БД
+ */
+class StockCacheTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private StockCache cache;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        cache = new StockCache(meterRegistry, true, 100, Duration.ofMinutes(1));
+        loads = new AtomicInteger();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    @Test
+    void get_RepeatedCheck_ReadsDatabaseOnce() {
+        // Act
+        cache.get(100L, loader(inventory(5, 10)));
+        Inventory cached = cache.get(100L, loader(inventory(5, 10))).orElseThrow();
+
+        // Assert
+        assertEquals(1, loads.get());
+        assertEquals(40, cached.getAvailableQuantity());
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "inventory.stock")
+                .tag("result", "hit").functionCounter().count());
+    }
+
+    @Test
+    void get_LoadOlderThanCommittedWrite_KeepsCommittedValue() {
+        // Arrange: резерв закоммитил версию 6
+        cache.updateAfterCommit(List.of(inventory(6, 15)));
+
+        // Act: загрузка, прочитавшая версию 5 до этого резерва, завершилась позже
+        cache.updateAfterCommit(List.of(inventory(5, 10)));
+
+        // Assert
+        Inventory cached = cache.get(100L, loader(inventory(5, 10))).orElseThrow();
+        assertEquals(6L, cached.getVersion());
+        assertEquals(35, cached.getAvailableQuantity());
+        assertEquals(0, loads.get());
+    }
+
+    @Test
+    void updateAfterCommit_InsideTransaction_AppliesOnlyAfterCommit() {
+        // Arrange
+        cache.updateAfterCommit(List.of(inventory(1, 10)));
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act
+        cache.updateAfterCommit(List.of(inventory(2, 20)));
+
+        // Assert: до коммита в кэше прежнее значение
+        assertEquals(1L, cache.get(100L, loader(inventory(1, 10))).orElseThrow().getVersion());
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        assertEquals(2L, cache.get(100L, loader(inventory(1, 10))).orElseThrow().getVersion());
+    }
+
+    @Test
+    void get_ShardedProduct_AlwaysReadsDatabase() {
+        // Arrange
+        Inventory sharded = inventory(3, 0);
+        sharded.setShardCount(4);
+        cache.updateAfterCommit(List.of(sharded));
+
+        // Act
+        cache.get(100L, loader(sharded));
+        cache.get(100L, loader(sharded));
+
+        // Assert
+        assertEquals(2, loads.get());
+        assertEquals(0.0, meterRegistry.get("cache.gets").tag("cache", "inventory.stock")
+                .tag("result", "hit").functionCounter().count());
+    }
+
+    private Function<Collection<Long>, Map<Long, Inventory>> loader(Inventory inventory) {
+        return productIds -> {
+            loads.incrementAndGet();
+            return Map.of(inventory.getProductId(), inventory);
+        };
+    }
+
+    private Inventory inventory(long version, int reserved) {
+        return Inventory.builder()
+                .id(1L)
+                .productId(100L)
+                .quantity(50)
+                .reservedQuantity(reserved)
+                .version(version)
+                .build();
+    }
+}
@@ -0,0 +1,114 @@
+package service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.inventory.dto.StockImportResponse;
+import com.shop.inventory.service.InventoryService;
+import com.shop.inventory.service.StockImport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для StockImport
+ *
+ * Тестирует:
+ * - CSV с заголовком: строки одного товара складываются, фид применяется кусками
+ * - Отклонённые строки NDJSON с номером строки и причиной
+ * - Кусок, который не применился и после повтора, отклоняется, следующие куски применяются
+ */
+@ExtendWith(MockitoExtension.class)
+class StockImportTest {
+
+    @Mock
+    private InventoryService inventoryService;
+
+    private StockImport stockImport;
+
+    @BeforeEach
+    void setUp() {
+        // Кусок — два разных товара
+        stockImport = new StockImport(inventoryService, new ObjectMapper(), 2, 100);
+    }
+
+    @Test
+    void importStock_Csv_MergesDuplicatesAndAppliesInChunks() throws Exception {
+        // Arrange: товар 7 новый
+        when(inventoryService.importStock(Map.of(1L, 15, 2L, 3))).thenReturn(Set.of());
+        when(inventoryService.importStock(Map.of(7L, 4))).thenReturn(Set.of(7L));
+        String csv = """
+                productId,quantity
+                1,10
+                1;5
+                2,3
+                7,4
+                """;
+
+        // Act
+        StockImportResponse response = stockImport.importStock(body(csv), "text/csv");
+
+        // Assert
+        assertEquals(4, response.getRows());
+        assertEquals(3, response.getApplied());
+        assertEquals(1, response.getCreated());
+        assertEquals(0, response.getRejected());
+        verify(inventoryService, times(2)).importStock(any());
+    }
+
+    @Test
+    void importStock_NdjsonWithInvalidRows_RejectsThemWithLineNumbers() throws Exception {
+        // Arrange
+        when(inventoryService.importStock(Map.of(1L, 5))).thenReturn(Set.of());
+        String ndjson = """
+                {"productId":1,"quantity":5}
+                {"productId":2,"quantity":0}
+                {"productId":"x","quantity":1}
+                not json
+                """;
+
+        // Act
+        StockImportResponse response = stockImport.importStock(body(ndjson), "application/x-ndjson");
+
+        // Assert
+        assertEquals(4, response.getRows());
+        assertEquals(1, response.getApplied());
+        assertEquals(3, response.getRejected());
+        assertEquals(2, response.getErrors().get(0).getLine());
+        assertEquals("Quantity must be positive", response.getErrors().get(0).getReason());
+        assertEquals("Product ID and quantity must be integers", response.getErrors().get(1).getReason());
+        assertEquals("Malformed JSON", response.getErrors().get(2).getReason());
+    }
+
+    @Test
+    void importStock_ChunkFailsTwice_RejectsItsRowsAndContinues() throws Exception {
+        // Arrange
+        when(inventoryService.importStock(Map.of(1L, 1, 2L, 2)))
+                .thenThrow(new RuntimeException("Sharding mode of product 2 changed, please retry"));
+        when(inventoryService.importStock(Map.of(3L, 3))).thenReturn(Set.of());
+
+        // Act
+        StockImportResponse response = stockImport.importStock(body("1,1\n2,2\n3,3\n"), "text/csv");
+
+        // Assert: первый кусок пробовали дважды
+        verify(inventoryService, times(2)).importStock(Map.of(1L, 1, 2L, 2));
+        assertEquals(2, response.getRejected());
+        assertEquals(1, response.getApplied());
+        assertEquals(1, response.getErrors().get(0).getLine());
+        assertTrue(response.getErrors().get(0).getReason().startsWith("Rows on lines 1-2 were not imported"));
+    }
+
+    private InputStream body(String content) {
+        return new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,132 @@
+package service;
+
+import com.shop.inventory.model.Inventory;
+import com.shop.inventory.repository.InventoryRepository;
+import com.shop.inventory.repository.StockDelta;
+import com.shop.inventory.repository.StockOperation;
+import com.shop.inventory.service.StockJournal;
+import com.shop.inventory.service.StockLedger;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для StockLedger
+ *
+ * Тестирует:
+ * - Резервы в памяти не продают больше остатка, накопленное уходит в БД одним приращением на товар
+ * - Пакет с непроходящей позицией не меняет ничего
+ * - Если запись в БД не удалась, изменения остаются до следующего сброса
+ * - При max-pending незаписанных товаров запись сначала сбрасывает накопленное
+ */
+@ExtendWith(MockitoExtension.class)
+class StockLedgerTest {
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private StockJournal stockJournal;
+
+    private StockLedger ledger;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0)
+                        .doInTransaction(new SimpleTransactionStatus()));
+        when(inventoryRepository.findAll()).thenReturn(List.of(
+                Inventory.builder().id(1L).productId(100L).quantity(500).reservedQuantity(0).build(),
+                Inventory.builder().id(2L).productId(200L).quantity(20).reservedQuantity(5).build()));
+
+        ledger = new StockLedger(inventoryRepository, transactionTemplate, stockJournal, new SimpleMeterRegistry(),
+                true, 64, 10_000, Duration.ofSeconds(1));
+        ledger.load();
+    }
+
+    @Test
+    void apply_ManyReservations_FlushesOneDelta() {
+        // Arrange
+        when(inventoryRepository.applyDeltas(any())).thenReturn(new int[]{1});
+
+        // Act: 500 резервов по 1 шт. при остатке 500 и ещё один сверх остатка
+        for (int i = 0; i < 500; i++) {
+            ledger.apply(StockOperation.RESERVE, Map.of(100L, 1));
+        }
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> ledger.apply(StockOperation.RESERVE, Map.of(100L, 1)));
+        ledger.flush();
+
+        // Assert: в БД уходит одно приращение резерва на 500
+        assertEquals("Insufficient stock for product: 100", exception.getMessage());
+        assertEquals(0, ledger.get(100L).orElseThrow().getAvailableQuantity());
+        verify(inventoryRepository).applyDeltas(Map.of(100L, new StockDelta(0, 500)));
+    }
+
+    @Test
+    void apply_BatchWithInsufficientItem_ChangesNothing() {
+        // Act & Assert: у товара 200 доступно 15
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> ledger.apply(StockOperation.RESERVE, Map.of(100L, 5, 200L, 16)));
+        assertEquals("Insufficient stock for product: 200", exception.getMessage());
+
+        assertEquals(0, ledger.get(100L).orElseThrow().getReservedQuantity());
+        ledger.flush();
+        verify(inventoryRepository, never()).applyDeltas(any());
+    }
+
+    @Test
+    void flush_DatabaseFails_KeepsDeltasForNextFlush() {
+        // Arrange
+        when(inventoryRepository.applyDeltas(any()))
+                .thenThrow(new RuntimeException("Connection refused"))
+                .thenReturn(new int[]{1});
+        ledger.apply(StockOperation.RESERVE, Map.of(200L, 10));
+        ledger.apply(StockOperation.CONFIRM, Map.of(200L, 4));
+
+        // Act
+        assertThrows(RuntimeException.class, () -> ledger.flush());
+        ledger.flush();
+
+        // Assert: второй сброс пишет всё накопленное, в памяти остаток не менялся
+        verify(inventoryRepository, times(2)).applyDeltas(Map.of(200L, new StockDelta(-4, 6)));
+        Inventory inventory = ledger.get(200L).orElseThrow();
+        assertEquals(16, inventory.getQuantity());
+        assertEquals(11, inventory.getReservedQuantity());
+    }
+
+    @Test
+    void apply_MaxPendingReached_FlushesBeforeWriting() {
+        // Arrange: отставание не больше одного товара
+        when(inventoryRepository.applyDeltas(any())).thenReturn(new int[]{1});
+        ledger = new StockLedger(inventoryRepository, transactionTemplate, stockJournal, new SimpleMeterRegistry(),
+                true, 64, 1, Duration.ofSeconds(1));
+        ledger.load();
+        ledger.apply(StockOperation.RESERVE, Map.of(100L, 3));
+
+        // Act
+        ledger.apply(StockOperation.RESERVE, Map.of(200L, 2));
+
+        // Assert: накопленное по товару 100 записано до изменения товара 200, который ждёт следующего сброса
+        verify(inventoryRepository).applyDeltas(Map.of(100L, new StockDelta(0, 3)));
+        ledger.flush();
+        verify(inventoryRepository).applyDeltas(Map.of(200L, new StockDelta(0, 2)));
+    }
+}
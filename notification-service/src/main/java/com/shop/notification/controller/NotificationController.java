@@ -1,5 +1,6 @@
 package com.shop.notification.controller;
 
+import com.shop.notification.dto.BatchNotificationRequest;
 import com.shop.notification.dto.NotificationDto;
 import com.shop.notification.service.NotificationService;
 import jakarta.validation.Valid;
@@ -24,6 +25,12 @@ public class NotificationController {
                 .body(notificationService.sendNotification(dto));
     }
     
+    @PostMapping("/send-batch")
+    public ResponseEntity<Map<String, Integer>> sendBatch(@Valid @RequestBody BatchNotificationRequest request) {
+        int created = notificationService.sendBatch(request.getNotifications());
+        return ResponseEntity.ok(Map.of("received", request.getNotifications().size(), "created", created));
+    }
+    
     @GetMapping
     public ResponseEntity<List<NotificationDto>> getMyNotifications(
             @RequestHeader("X-User-Id") Long userId) {
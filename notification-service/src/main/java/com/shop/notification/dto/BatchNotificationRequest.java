@@ -0,0 +1,15 @@
+package com.shop.notification.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchNotificationRequest {
+    
+    @NotEmpty(message = "At least one notification is required")
+    @Valid
+    private List<NotificationDto> notifications;
+}
@@ -27,6 +27,8 @@ public class NotificationDto {
     
     private String message;
     
+    private String eventId;
+    
     private Boolean isRead;
     
     private LocalDateTime createdAt;
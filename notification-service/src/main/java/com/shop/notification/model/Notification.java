@@ -17,7 +17,8 @@ import java.time.LocalDateTime;
 public class Notification {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "notifications_seq")
+    @SequenceGenerator(name = "notifications_seq", sequenceName = "notifications_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "user_id", nullable = false)
@@ -32,6 +33,10 @@ public class Notification {
     @Column(length = 1000)
     private String message;
     
+    // Идентификатор события отправителя; повторная доставка того же события не создаёт дубль
+    @Column(name = "event_id", unique = true, length = 100)
+    private String eventId;
+    
     @Column(name = "is_read")
     private Boolean isRead = false;
     
@@ -6,6 +6,7 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -18,4 +19,7 @@ public interface NotificationRepository extends JpaRepository<Notification, Long
     void markAllAsRead(Long userId);
     
     long countByUserIdAndIsReadFalse(Long userId);
+    
+    @Query("SELECT n.eventId FROM Notification n WHERE n.eventId IN :eventIds")
+    List<String> findExistingEventIds(Collection<String> eventIds);
 }
@@ -8,7 +8,11 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 @Service
@@ -25,6 +29,7 @@ public class NotificationService {
                 .type(dto.getType())
                 .title(dto.getTitle())
                 .message(dto.getMessage())
+                .eventId(dto.getEventId())
                 .isRead(false)
                 .build();
         
@@ -34,6 +39,37 @@ public class NotificationService {
         return toDto(notification);
     }
     
+    // Пакет сохраняется одной транзакцией; события, которые уже были доставлены, пропускаются
+    @Transactional
+    public int sendBatch(List<NotificationDto> dtos) {
+        Set<String> eventIds = dtos.stream()
+                .map(NotificationDto::getEventId)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toSet());
+        Set<String> seen = eventIds.isEmpty()
+                ? new HashSet<>()
+                : new HashSet<>(notificationRepository.findExistingEventIds(eventIds));
+        
+        List<Notification> notifications = new ArrayList<>();
+        for (NotificationDto dto : dtos) {
+            if (dto.getEventId() != null && !seen.add(dto.getEventId())) {
+                continue;
+            }
+            notifications.add(Notification.builder()
+                    .userId(dto.getUserId())
+                    .type(dto.getType())
+                    .title(dto.getTitle())
+                    .message(dto.getMessage())
+                    .eventId(dto.getEventId())
+                    .isRead(false)
+                    .build());
+        }
+        
+        notificationRepository.saveAll(notifications);
+        log.info("Batch of {} notifications received, {} new", dtos.size(), notifications.size());
+        return notifications.size();
+    }
+    
     public List<NotificationDto> getUserNotifications(Long userId) {
         return notificationRepository.findByUserIdOrderByCreatedAtDesc(userId).stream()
                 .map(this::toDto)
@@ -73,6 +109,7 @@ public class NotificationService {
                 .type(notification.getType())
                 .title(notification.getTitle())
                 .message(notification.getMessage())
+                .eventId(notification.getEventId())
                 .isRead(notification.getIsRead())
                 .createdAt(notification.getCreatedAt())
                 .build();
@@ -7,6 +7,7 @@ import com.shop.notification.service.NotificationService;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
@@ -27,6 +28,7 @@ import static org.mockito.Mockito.*;
  * - Отправка (создание) уведомления
  * - Получение уведомлений пользователя
  * - Подсчёт непрочитанных уведомлений
+ * - Пакетная отправка с пропуском повторно доставленных событий
  */
 @ExtendWith(MockitoExtension.class)
 class NotificationServiceTest {
@@ -129,4 +131,35 @@ class NotificationServiceTest {
 
         verify(notificationRepository).countByUserIdAndIsReadFalse(1L);
     }
-}
\ No newline at end of file
+
+    @Test
+    void sendBatch_SkipsAlreadyDeliveredEvents() {
+        // Arrange (событие order-outbox-1 уже было доставлено, order-outbox-2 пришло дважды)
+        List<NotificationDto> batch = List.of(
+                batchItem("order-outbox-1"),
+                batchItem("order-outbox-2"),
+                batchItem("order-outbox-2"),
+                batchItem(null));
+        when(notificationRepository.findExistingEventIds(any())).thenReturn(List.of("order-outbox-1"));
+
+        // Act
+        int created = notificationService.sendBatch(batch);
+
+        // Assert
+        assertEquals(2, created);
+        ArgumentCaptor<List<Notification>> saved = ArgumentCaptor.forClass(List.class);
+        verify(notificationRepository).saveAll(saved.capture());
+        assertEquals("order-outbox-2", saved.getValue().get(0).getEventId());
+        assertNull(saved.getValue().get(1).getEventId());
+    }
+
+    private NotificationDto batchItem(String eventId) {
+        return NotificationDto.builder()
+                .userId(1L)
+                .type("ORDER_CREATED")
+                .title("Order Created")
+                .message("Your order #1 has been created successfully!")
+                .eventId(eventId)
+                .build();
+    }
+}
@@ -0,0 +1,75 @@
+package com.shop.order.client;
+
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Настройки HTTP-клиентов к соседним сервисам (services.*-service).
+ *
+ * У каждого сервиса свой пул соединений, таймауты, bulkhead и circuit breaker,
+ * чтобы медленный сервис не забирал ресурсы, нужные для вызовов остальных.
+ */
+@Data
+@ConfigurationProperties(prefix = "services")
+public class DownstreamProperties {
+    
+    private Downstream productService = new Downstream();
+    private Downstream inventoryService = new Downstream();
+    private Downstream notificationService = new Downstream();
+    
+    @Data
+    public static class Downstream {
+        private String url;
+        // Дополнительные инстансы для хеджирования чтений; первый инстанс всегда url
+        private List<String> instances = new ArrayList<>();
+        private Duration connectTimeout = Duration.ofSeconds(2);
+        private Duration responseTimeout = Duration.ofSeconds(5);
+        private Pool pool = new Pool();
+        private Bulkhead bulkhead = new Bulkhead();
+        private CircuitBreaker circuitBreaker = new CircuitBreaker();
+        private Hedging hedging = new Hedging();
+    }
+    
+    @Data
+    public static class Pool {
+        private int maxConnections = 50;
+        private Duration pendingAcquireTimeout = Duration.ofSeconds(2);
+        private Duration maxIdleTime = Duration.ofSeconds(30);
+    }
+    
+    @Data
+    public static class Bulkhead {
+        // Сколько вызовов к сервису может выполняться одновременно
+        private int maxConcurrentCalls = 25;
+        // Сколько ждать свободного места; 0 — отказ сразу
+        private Duration maxWaitDuration = Duration.ZERO;
+    }
+    
+    @Data
+    public static class CircuitBreaker {
+        private float failureRateThreshold = 50;
+        private float slowCallRateThreshold = 80;
+        private Duration slowCallDurationThreshold = Duration.ofSeconds(3);
+        private int slidingWindowSize = 20;
+        private int minimumNumberOfCalls = 10;
+        private Duration waitDurationInOpenState = Duration.ofSeconds(10);
+        private int permittedNumberOfCallsInHalfOpenState = 3;
+    }
+    
+    @Data
+    public static class Hedging {
+        private boolean enabled = false;
+        // Резервный запрос уходит, когда первый дольше этого перцентиля недавних ответов
+        private double percentile = 0.95;
+        private Duration minDelay = Duration.ofMillis(10);
+        // Задержка до резервного запроса, пока статистики ещё нет, и её верхняя граница
+        private Duration maxDelay = Duration.ofMillis(500);
+        // Доля резервных запросов от основных и запас, который можно накопить
+        private double budgetRatio = 0.1;
+        private int maxBudget = 10;
+    }
+}
@@ -0,0 +1,99 @@
+package com.shop.order.client;
+
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.github.resilience4j.reactor.bulkhead.operator.BulkheadOperator;
+import io.github.resilience4j.reactor.circuitbreaker.operator.CircuitBreakerOperator;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.netty.channel.ChannelOption;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFilterFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Собирает WebClient для соседнего сервиса по настройкам из DownstreamProperties.
+ *
+ * Каждый клиент получает собственный пул соединений Reactor Netty, таймауты на соединение
+ * и ответ, а все вызовы проходят через bulkhead и circuit breaker этого сервиса.
+ * Метрики пулов (reactor.netty.connection.provider.*), bulkhead (resilience4j.bulkhead.*)
+ * и circuit breaker (resilience4j.circuitbreaker.*) публикуются в MeterRegistry.
+ */
+@Component
+@EnableConfigurationProperties(DownstreamProperties.class)
+public class DownstreamWebClients {
+    
+    private final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
+    private final BulkheadRegistry bulkheadRegistry = BulkheadRegistry.ofDefaults();
+    
+    public DownstreamWebClients(MeterRegistry meterRegistry) {
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry).bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+    }
+    
+    public WebClient create(String name, DownstreamProperties.Downstream settings) {
+        return create(name, settings.getUrl(), settings);
+    }
+    
+    public WebClient create(String name, String url, DownstreamProperties.Downstream settings) {
+        ConnectionProvider connectionProvider = ConnectionProvider.builder(name)
+                .maxConnections(settings.getPool().getMaxConnections())
+                .pendingAcquireTimeout(settings.getPool().getPendingAcquireTimeout())
+                .maxIdleTime(settings.getPool().getMaxIdleTime())
+                .metrics(true)
+                .build();
+        HttpClient httpClient = HttpClient.create(connectionProvider)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, (int) settings.getConnectTimeout().toMillis())
+                .responseTimeout(settings.getResponseTimeout());
+        
+        return WebClient.builder()
+                .baseUrl(url)
+                .clientConnector(new ReactorClientHttpConnector(httpClient))
+                .filter(protect(bulkhead(name, settings.getBulkhead()),
+                        circuitBreaker(name, settings.getCircuitBreaker())))
+                .build();
+    }
+    
+    // Ответы 5xx превращаются в ошибку до circuit breaker, чтобы он их учитывал; 4xx — ответ по делу, не сбой
+    private ExchangeFilterFunction protect(Bulkhead bulkhead, CircuitBreaker circuitBreaker) {
+        return (request, next) -> next.exchange(request)
+                .flatMap(response -> response.statusCode().is5xxServerError()
+                        ? response.createException().flatMap(e -> Mono.<ClientResponse>error(e))
+                        : Mono.just(response))
+                .transformDeferred(BulkheadOperator.of(bulkhead))
+                .transformDeferred(CircuitBreakerOperator.of(circuitBreaker));
+    }
+    
+    private Bulkhead bulkhead(String name, DownstreamProperties.Bulkhead settings) {
+        return bulkheadRegistry.bulkhead(name, BulkheadConfig.custom()
+                .maxConcurrentCalls(settings.getMaxConcurrentCalls())
+                .maxWaitDuration(settings.getMaxWaitDuration())
+                .build());
+    }
+    
+    private CircuitBreaker circuitBreaker(String name, DownstreamProperties.CircuitBreaker settings) {
+        return circuitBreakerRegistry.circuitBreaker(name, CircuitBreakerConfig.custom()
+                .failureRateThreshold(settings.getFailureRateThreshold())
+                .slowCallRateThreshold(settings.getSlowCallRateThreshold())
+                .slowCallDurationThreshold(settings.getSlowCallDurationThreshold())
+                .slidingWindowSize(settings.getSlidingWindowSize())
+                .minimumNumberOfCalls(settings.getMinimumNumberOfCalls())
+                .waitDurationInOpenState(settings.getWaitDurationInOpenState())
+                .permittedNumberOfCallsInHalfOpenState(settings.getPermittedNumberOfCallsInHalfOpenState())
+                // Переполненный bulkhead — наша перегрузка, а не сбой сервиса
+                .ignoreExceptions(BulkheadFullException.class)
+                .build());
+    }
+}
@@ -0,0 +1,141 @@
+package com.shop.order.client;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.SignalType;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Хеджированные запросы для идемпотентных чтений из статического списка инстансов.
+ *
+ * Основной запрос уходит на следующий инстанс по кругу. Если он не ответил за заданный
+ * перцентиль недавних задержек, на соседний инстанс уходит один резервный запрос,
+ * и берётся тот ответ, что пришёл первым; второй запрос отменяется.
+ * Резервные запросы ограничены бюджетом: каждый основной запрос добавляет budgetRatio
+ * токена (не больше maxBudget), резервный тратит один. С одним инстансом запрос не хеджируется:
+ * резервный ушёл бы на тот же медленный инстанс.
+ */
+public class HedgingClient {
+    
+    private static final long TOKEN = 1000;
+    private static final long DELAY_REFRESH_NANOS = TimeUnit.SECONDS.toNanos(1);
+    
+    private final List<WebClient> instances;
+    private final DownstreamProperties.Hedging settings;
+    private final Timer latency;
+    private final Counter hedged;
+    private final Counter hedgeWins;
+    private final Counter budgetExhausted;
+    private final AtomicInteger nextInstance = new AtomicInteger();
+    private final AtomicLong budget = new AtomicLong();
+    private final long budgetDeposit;
+    private final long budgetLimit;
+    private volatile long hedgeDelayNanos;
+    private volatile long delayRefreshedAt;
+    
+    public HedgingClient(String name, List<WebClient> instances,
+                         DownstreamProperties.Hedging settings, MeterRegistry meterRegistry) {
+        this.instances = List.copyOf(instances);
+        this.settings = settings;
+        this.budgetDeposit = Math.round(settings.getBudgetRatio() * TOKEN);
+        this.budgetLimit = settings.getMaxBudget() * TOKEN;
+        this.hedgeDelayNanos = settings.getMaxDelay().toNanos();
+        this.delayRefreshedAt = System.nanoTime();
+        this.latency = Timer.builder("hedging.latency")
+                .description("Latency of hedged read attempts, including attempts cancelled by a faster one")
+                .tag("name", name)
+                .publishPercentiles(settings.getPercentile())
+                .distributionStatisticExpiry(Duration.ofMinutes(1))
+                .register(meterRegistry);
+        this.hedged = Counter.builder("hedging.requests")
+                .description("Backup requests sent because the first attempt was slow")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.hedgeWins = Counter.builder("hedging.wins")
+                .description("Backup requests that answered before the first attempt")
+                .tag("name", name)
+                .register(meterRegistry);
+        this.budgetExhausted = Counter.builder("hedging.budget.exhausted")
+                .description("Backup requests skipped because the hedge budget was spent")
+                .tag("name", name)
+                .register(meterRegistry);
+    }
+    
+    public <T> Mono<T> execute(Function<WebClient, Mono<T>> request) {
+        if (instances.size() == 1) {
+            return request.apply(instances.get(0));
+        }
+        int primary = Math.floorMod(nextInstance.getAndIncrement(), instances.size());
+        int backup = (primary + 1) % instances.size();
+        deposit();
+        
+        Mono<T> first = timed(request.apply(instances.get(primary)));
+        // Ошибка резервного запроса не должна перебивать основной: его ответ всё ещё может прийти
+        Mono<T> second = Mono.delay(Duration.ofNanos(hedgeDelay()))
+                .flatMap(tick -> {
+                    if (!withdraw()) {
+                        budgetExhausted.increment();
+                        return Mono.<T>never();
+                    }
+                    hedged.increment();
+                    return timed(request.apply(instances.get(backup))).doOnNext(result -> hedgeWins.increment());
+                })
+                .onErrorResume(e -> Mono.never());
+        
+        return Mono.firstWithSignal(first, second);
+    }
+    
+    // Отменённая попытка тоже попадает в выборку: без неё медленные ответы, проигравшие резервному,
+    // не учитывались бы, и перцентиль занижался бы ровно тогда, когда инстанс тормозит
+    private <T> Mono<T> timed(Mono<T> attempt) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return attempt.doFinally(signal -> {
+                if (signal != SignalType.ON_ERROR) {
+                    latency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                }
+            });
+        });
+    }
+    
+    // Перцентиль пересчитывается не чаще раза в секунду, чтобы не снимать снапшот на каждый запрос
+    private long hedgeDelay() {
+        long now = System.nanoTime();
+        if (now - delayRefreshedAt > DELAY_REFRESH_NANOS) {
+            delayRefreshedAt = now;
+            long observed = 0;
+            for (ValueAtPercentile value : latency.takeSnapshot().percentileValues()) {
+                observed = (long) value.value(TimeUnit.NANOSECONDS);
+            }
+            hedgeDelayNanos = observed > 0
+                    ? Math.max(settings.getMinDelay().toNanos(), Math.min(observed, settings.getMaxDelay().toNanos()))
+                    : settings.getMaxDelay().toNanos();
+        }
+        return hedgeDelayNanos;
+    }
+    
+    private void deposit() {
+        budget.accumulateAndGet(budgetDeposit, (current, deposit) -> Math.min(current + deposit, budgetLimit));
+    }
+    
+    private boolean withdraw() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < TOKEN) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - TOKEN));
+        return true;
+    }
+}
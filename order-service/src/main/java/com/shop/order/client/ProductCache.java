@@ -0,0 +1,107 @@
+package com.shop.order.client;
+
+import com.github.benmanes.caffeine.cache.AsyncCacheLoader;
+import com.github.benmanes.caffeine.cache.AsyncLoadingCache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import lombok.extern.slf4j.Slf4j;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Ближний кэш товаров внутри order-service.
+ *
+ * Через ttl запись считается устаревшей: она по-прежнему отдаётся сразу, а обновление
+ * идёт в фоне (stale-while-revalidate). Если product-service медленный или недоступен,
+ * устаревшая запись продолжает отдаваться до истечения maxStale.
+ */
+@Slf4j
+public class ProductCache {
+    
+    private final AsyncLoadingCache<Long, CachedProduct> cache;
+    private final long ttlNanos;
+    private final Counter staleServed;
+    private final Counter refreshFailures;
+    
+    public ProductCache(
+            Function<Set<Long>, Mono<Map<Long, ServiceClients.ProductResponse>>> loader,
+            long maxSize,
+            Duration ttl,
+            Duration maxStale,
+            MeterRegistry meterRegistry) {
+        this.ttlNanos = ttl.toNanos();
+        this.staleServed = Counter.builder("product.cache.stale.served")
+                .description("Product entries served after their TTL while a refresh was pending")
+                .register(meterRegistry);
+        this.refreshFailures = Counter.builder("product.cache.refresh.failures")
+                .description("Failed loads and background refreshes of product entries")
+                .register(meterRegistry);
+        
+        // Параллельные промахи по одному ID объединяются в одну загрузку
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .refreshAfterWrite(ttl)
+                .expireAfterWrite(maxStale)
+                .recordStats()
+                .buildAsync(new ProductLoader(loader));
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "products");
+    }
+    
+    public Mono<Map<Long, ServiceClients.ProductResponse>> getAll(Collection<Long> productIds) {
+        return Mono.fromFuture(() -> cache.getAll(productIds))
+                .map(entries -> {
+                    long now = System.nanoTime();
+                    return entries.values().stream()
+                            .peek(entry -> {
+                                if (now - entry.loadedAt() > ttlNanos) {
+                                    staleServed.increment();
+                                }
+                            })
+                            .map(CachedProduct::product)
+                            .collect(Collectors.toMap(ServiceClients.ProductResponse::getId, Function.identity()));
+                });
+    }
+    
+    private record CachedProduct(ServiceClients.ProductResponse product, long loadedAt) {
+    }
+    
+    private class ProductLoader implements AsyncCacheLoader<Long, CachedProduct> {
+        
+        private final Function<Set<Long>, Mono<Map<Long, ServiceClients.ProductResponse>>> loader;
+        
+        ProductLoader(Function<Set<Long>, Mono<Map<Long, ServiceClients.ProductResponse>>> loader) {
+            this.loader = loader;
+        }
+        
+        @Override
+        public CompletableFuture<? extends CachedProduct> asyncLoad(Long key, Executor executor) {
+            return asyncLoadAll(Set.of(key), executor)
+                    .thenApply(entries -> entries.get(key));
+        }
+        
+        @Override
+        public CompletableFuture<? extends Map<? extends Long, ? extends CachedProduct>> asyncLoadAll(
+                Set<? extends Long> keys, Executor executor) {
+            long loadedAt = System.nanoTime();
+            return loader.apply(Set.copyOf(keys))
+                    .map(products -> products.values().stream()
+                            .collect(Collectors.toMap(ServiceClients.ProductResponse::getId,
+                                    product -> new CachedProduct(product, loadedAt))))
+                    .doOnError(e -> {
+                        refreshFailures.increment();
+                        log.warn("Failed to load products {}: {}", keys, e.getMessage());
+                    })
+                    .toFuture();
+        }
+    }
+}
@@ -1,11 +1,22 @@
 package com.shop.order.client;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.Data;
+import lombok.NoArgsConstructor;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 @Component
 public class ServiceClients {
@@ -13,60 +24,186 @@ public class ServiceClients {
     private final WebClient productClient;
     private final WebClient inventoryClient;
     private final WebClient notificationClient;
+    private final HedgingClient inventoryReads;
+    private final ProductCache productCache;
     
     public ServiceClients(
-            @Value("${services.product-service.url}") String productUrl,
-            @Value("${services.inventory-service.url}") String inventoryUrl,
-            @Value("${services.notification-service.url}") String notificationUrl) {
-        this.productClient = WebClient.builder().baseUrl(productUrl).build();
-        this.inventoryClient = WebClient.builder().baseUrl(inventoryUrl).build();
-        this.notificationClient = WebClient.builder().baseUrl(notificationUrl).build();
+            DownstreamProperties downstreams,
+            DownstreamWebClients webClients,
+            @Value("${services.product-service.cache.enabled:true}") boolean productCacheEnabled,
+            @Value("${services.product-service.cache.max-size:10000}") long productCacheMaxSize,
+            @Value("${services.product-service.cache.ttl:60s}") Duration productCacheTtl,
+            @Value("${services.product-service.cache.max-stale:10m}") Duration productCacheMaxStale,
+            MeterRegistry meterRegistry) {
+        this.productClient = webClients.create("product-service", downstreams.getProductService());
+        this.inventoryClient = webClients.create("inventory-service", downstreams.getInventoryService());
+        this.inventoryReads = downstreams.getInventoryService().getHedging().isEnabled()
+                ? new HedgingClient("inventory-service",
+                        inventoryInstances(webClients, downstreams.getInventoryService()),
+                        downstreams.getInventoryService().getHedging(), meterRegistry)
+                : null;
+        this.notificationClient = webClients.create("notification-service", downstreams.getNotificationService());
+        this.productCache = productCacheEnabled
+                ? new ProductCache(this::fetchProducts, productCacheMaxSize,
+                        productCacheTtl, productCacheMaxStale, meterRegistry)
+                : null;
     }
     
     public ProductResponse getProduct(Long productId) {
+        return getProductAsync(productId).block();
+    }
+    
+    public Mono<ProductResponse> getProductAsync(Long productId) {
+        if (productCache != null) {
+            return productCache.getAll(List.of(productId))
+                    .flatMap(products -> Mono.justOrEmpty(products.get(productId)))
+                    .switchIfEmpty(Mono.error(new RuntimeException("Product not found")));
+        }
         return productClient.get()
                 .uri("/api/products/{id}", productId)
                 .retrieve()
-                .bodyToMono(ProductResponse.class)
-                .block();
+                .bodyToMono(ProductResponse.class);
+    }
+    
+    public ProductBatchResponse getProducts(Collection<Long> productIds) {
+        return getProductsAsync(productIds).block();
+    }
+    
+    public Mono<ProductBatchResponse> getProductsAsync(Collection<Long> productIds) {
+        if (productCache == null) {
+            return fetchProductBatch(productIds);
+        }
+        // Товары берём из ближнего кэша, недостающие загружаются одним пакетным запросом
+        return productCache.getAll(productIds)
+                .map(products -> {
+                    ProductBatchResponse response = new ProductBatchResponse();
+                    response.setProducts(new ArrayList<>());
+                    response.setMissingIds(new ArrayList<>());
+                    for (Long productId : productIds) {
+                        ProductResponse product = products.get(productId);
+                        if (product != null) {
+                            response.getProducts().add(product);
+                        } else {
+                            response.getMissingIds().add(productId);
+                        }
+                    }
+                    return response;
+                });
+    }
+    
+    private Mono<Map<Long, ProductResponse>> fetchProducts(Set<Long> productIds) {
+        return fetchProductBatch(productIds)
+                .map(response -> response.getProducts().stream()
+                        .collect(Collectors.toMap(ProductResponse::getId, Function.identity())));
+    }
+    
+    private Mono<ProductBatchResponse> fetchProductBatch(Collection<Long> productIds) {
+        return productClient.post()
+                .uri("/api/products/batch")
+                .bodyValue(productIds)
+                .retrieve()
+                .bodyToMono(ProductBatchResponse.class);
     }
     
     public StockCheckResponse checkStock(Long productId, Integer quantity) {
-        return inventoryClient.get()
+        return checkStockAsync(productId, quantity).block();
+    }
+    
+    public Mono<StockCheckResponse> checkStockAsync(Long productId, Integer quantity) {
+        return readInventory(client -> client.get()
                 .uri(uriBuilder -> uriBuilder
                         .path("/api/inventory/check/{productId}")
                         .queryParam("quantity", quantity)
                         .build(productId))
                 .retrieve()
-                .bodyToMono(StockCheckResponse.class)
-                .block();
+                .bodyToMono(StockCheckResponse.class));
     }
     
-    public void reserveStock(Long productId, Integer quantity) {
-        inventoryClient.post()
-                .uri("/api/inventory/reserve")
-                .bodyValue(new StockRequest(productId, quantity))
-                .retrieve()
-                .bodyToMono(Void.class)
-                .block();
+    public List<StockCheckResponse> checkStockBatch(List<StockRequest> items) {
+        return checkStockBatchAsync(items).block();
     }
     
-    public void confirmStock(Long productId, Integer quantity) {
-        inventoryClient.post()
-                .uri("/api/inventory/confirm")
-                .bodyValue(new StockRequest(productId, quantity))
+    // Пакетная проверка только читает остатки, поэтому тоже может хеджироваться
+    public Mono<List<StockCheckResponse>> checkStockBatchAsync(List<StockRequest> items) {
+        return readInventory(client -> client.post()
+                .uri("/api/inventory/batch/check")
+                .bodyValue(new BatchStockRequest(items))
                 .retrieve()
-                .bodyToMono(Void.class)
-                .block();
+                .bodyToFlux(StockCheckResponse.class)
+                .collectList());
+    }
+    
+    private <T> Mono<T> readInventory(Function<WebClient, Mono<T>> request) {
+        return inventoryReads != null ? inventoryReads.execute(request) : request.apply(inventoryClient);
+    }
+    
+    // Первый инстанс — основной inventory-service, остальные перечислены в instances
+    private List<WebClient> inventoryInstances(DownstreamWebClients webClients,
+                                               DownstreamProperties.Downstream settings) {
+        List<WebClient> instances = new ArrayList<>();
+        instances.add(inventoryClient);
+        for (int i = 0; i < settings.getInstances().size(); i++) {
+            instances.add(webClients.create("inventory-service-" + (i + 1), settings.getInstances().get(i), settings));
+        }
+        return instances;
+    }
+    
+    public void reserveStockBatch(List<StockRequest> items) {
+        reserveStockBatchAsync(items).block();
+    }
+    
+    public Mono<Void> reserveStockBatchAsync(List<StockRequest> items) {
+        return postStockBatch("/api/inventory/batch/reserve", items);
+    }
+    
+    public void confirmStockBatch(List<StockRequest> items) {
+        confirmStockBatchAsync(items).block();
+    }
+    
+    public Mono<Void> confirmStockBatchAsync(List<StockRequest> items) {
+        return postStockBatch("/api/inventory/batch/confirm", items);
+    }
+    
+    public void releaseStockBatch(List<StockRequest> items) {
+        releaseStockBatchAsync(items).block();
+    }
+    
+    public Mono<Void> releaseStockBatchAsync(List<StockRequest> items) {
+        return postStockBatch("/api/inventory/batch/release", items);
+    }
+    
+    // Резервы по заказам: у каждой позиции orderId, повтор вызова склад не применяет второй раз
+    public void reserveOrderStock(List<StockRequest> items) {
+        postStockBatch("/api/inventory/reservations/reserve", items).block();
+    }
+    
+    // Заказ принят: склад держит его резерв без срока до подтверждения или снятия
+    public void pinOrderStock(List<StockRequest> items) {
+        postStockBatch("/api/inventory/reservations/pin", items).block();
+    }
+    
+    public void confirmOrderStock(List<StockRequest> items) {
+        confirmOrderStockAsync(items).block();
+    }
+    
+    public Mono<Void> confirmOrderStockAsync(List<StockRequest> items) {
+        return postStockBatch("/api/inventory/reservations/confirm", items);
     }
     
-    public void releaseStock(Long productId, Integer quantity) {
-        inventoryClient.post()
-                .uri("/api/inventory/release")
-                .bodyValue(new StockRequest(productId, quantity))
+    public void releaseOrderStock(List<StockRequest> items) {
+        releaseOrderStockAsync(items).block();
+    }
+    
+    public Mono<Void> releaseOrderStockAsync(List<StockRequest> items) {
+        return postStockBatch("/api/inventory/reservations/release", items);
+    }
+    
+    private Mono<Void> postStockBatch(String uri, List<StockRequest> items) {
+        return inventoryClient.post()
+                .uri(uri)
+                .bodyValue(new BatchStockRequest(items))
                 .retrieve()
-                .bodyToMono(Void.class)
-                .block();
+                .bodyToMono(Void.class);
     }
     
     public void sendNotification(NotificationRequest request) {
@@ -78,6 +215,14 @@ public class ServiceClients {
                 .subscribe(); // Fire and forget
     }
     
+    public Mono<Void> sendNotificationBatchAsync(List<NotificationRequest> requests) {
+        return notificationClient.post()
+                .uri("/api/notifications/send-batch")
+                .bodyValue(new BatchNotificationRequest(requests))
+                .retrieve()
+                .bodyToMono(Void.class);
+    }
+    
     @Data
     public static class ProductResponse {
         private Long id;
@@ -87,6 +232,12 @@ public class ServiceClients {
         private String category;
     }
     
+    @Data
+    public static class ProductBatchResponse {
+        private List<ProductResponse> products;
+        private List<Long> missingIds;
+    }
+    
     @Data
     public static class StockCheckResponse {
         private Long productId;
@@ -96,6 +247,7 @@ public class ServiceClients {
     
     @Data
     public static class StockRequest {
+        private Long orderId;
         private Long productId;
         private Integer quantity;
         
@@ -103,14 +255,32 @@ public class ServiceClients {
             this.productId = productId;
             this.quantity = quantity;
         }
+        
+        public StockRequest(Long orderId, Long productId, Integer quantity) {
+            this.orderId = orderId;
+            this.productId = productId;
+            this.quantity = quantity;
+        }
     }
     
     @Data
+    public static class BatchStockRequest {
+        private List<StockRequest> items;
+        
+        public BatchStockRequest(List<StockRequest> items) {
+            this.items = items;
+        }
+    }
+    
+    @Data
+    @NoArgsConstructor
     public static class NotificationRequest {
         private Long userId;
         private String type;
         private String title;
         private String message;
+        // Ключ для дедупликации повторной доставки из outbox
+        private String eventId;
         
         public NotificationRequest(Long userId, String type, String title, String message) {
             this.userId = userId;
@@ -119,4 +289,13 @@ public class ServiceClients {
             this.message = message;
         }
     }
+    
+    @Data
+    public static class BatchNotificationRequest {
+        private List<NotificationRequest> notifications;
+        
+        public BatchNotificationRequest(List<NotificationRequest> notifications) {
+            this.notifications = notifications;
+        }
+    }
 }
@@ -1,30 +1,56 @@
 package com.shop.order.controller;
 
+import com.shop.order.dto.BulkStatusUpdateRequest;
+import com.shop.order.dto.BulkStatusUpdateResponse;
 import com.shop.order.dto.CreateOrderRequest;
+import com.shop.order.dto.OrderCursorPageDto;
 import com.shop.order.dto.OrderDto;
+import com.shop.order.dto.OrderPageDto;
 import com.shop.order.model.OrderStatus;
+import com.shop.order.service.IdempotencyService;
+import com.shop.order.service.OrderAcceptanceQueue;
 import com.shop.order.service.OrderService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.net.URI;
 import java.util.List;
 
 @RestController
 @RequestMapping("/api/orders")
+@Profile("!reactive")
 @RequiredArgsConstructor
 public class OrderController {
     
     private final OrderService orderService;
+    private final IdempotencyService idempotencyService;
+    private final OrderAcceptanceQueue orderAcceptanceQueue;
     
     @PostMapping
     public ResponseEntity<OrderDto> createOrder(
             @RequestHeader("X-User-Id") Long userId,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @Valid @RequestBody CreateOrderRequest request) {
-        return ResponseEntity.status(HttpStatus.CREATED)
-                .body(orderService.createOrder(userId, request));
+        // Асинхронный приём: 202 и адрес, по которому клиент следит за статусом заказа
+        if (orderAcceptanceQueue.isEnabled()) {
+            OrderDto order = idempotencyKey == null
+                    ? orderAcceptanceQueue.submit(userId, request)
+                    : idempotencyService.execute(idempotencyKey, userId, request,
+                            () -> orderAcceptanceQueue.submit(userId, request));
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/orders/" + order.getId()))
+                    .body(order);
+        }
+        
+        OrderDto order = idempotencyKey == null
+                ? orderService.createOrder(userId, request)
+                : idempotencyService.execute(idempotencyKey, userId, request,
+                        () -> orderService.createOrder(userId, request));
+        return ResponseEntity.status(HttpStatus.CREATED).body(order);
     }
     
     @GetMapping("/{id}")
@@ -42,6 +68,42 @@ public class OrderController {
         return ResponseEntity.ok(orderService.getOrdersByUserId(userId));
     }
     
+    @GetMapping("/page")
+    public ResponseEntity<OrderPageDto> getOrdersPage(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(orderService.getOrdersPage(page, size));
+    }
+    
+    @GetMapping("/my/page")
+    public ResponseEntity<OrderPageDto> getMyOrdersPage(
+            @RequestHeader("X-User-Id") Long userId,
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(orderService.getOrdersPageByUserId(userId, page, size));
+    }
+    
+    @GetMapping("/cursor")
+    public ResponseEntity<OrderCursorPageDto> getOrdersAfter(
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(orderService.getOrdersAfter(after, size));
+    }
+    
+    @GetMapping("/my/cursor")
+    public ResponseEntity<OrderCursorPageDto> getMyOrdersAfter(
+            @RequestHeader("X-User-Id") Long userId,
+            @RequestParam(required = false) String after,
+            @RequestParam(defaultValue = "20") int size) {
+        return ResponseEntity.ok(orderService.getOrdersByUserIdAfter(userId, after, size));
+    }
+    
+    @PatchMapping("/status")
+    public ResponseEntity<BulkStatusUpdateResponse> updateStatuses(
+            @Valid @RequestBody BulkStatusUpdateRequest request) {
+        return ResponseEntity.ok(orderService.updateOrderStatuses(request.getOrderIds(), request.getStatus()));
+    }
+    
     @PatchMapping("/{id}/status")
     public ResponseEntity<OrderDto> updateStatus(
             @PathVariable Long id,
@@ -0,0 +1,59 @@
+package com.shop.order.controller;
+
+import com.shop.order.dto.CreateOrderRequest;
+import com.shop.order.dto.OrderDto;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.service.ReactiveOrderService;
+import jakarta.validation.Valid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@RestController
+@RequestMapping("/api/orders")
+@Profile("reactive")
+@RequiredArgsConstructor
+public class ReactiveOrderController {
+    
+    private final ReactiveOrderService orderService;
+    
+    @PostMapping
+    @ResponseStatus(HttpStatus.CREATED)
+    public Mono<OrderDto> createOrder(
+            @RequestHeader("X-User-Id") Long userId,
+            @Valid @RequestBody CreateOrderRequest request) {
+        return orderService.createOrder(userId, request);
+    }
+    
+    @GetMapping("/{id}")
+    public Mono<OrderDto> getOrder(@PathVariable Long id) {
+        return orderService.getOrderById(id);
+    }
+    
+    @GetMapping
+    public Flux<OrderDto> getAllOrders() {
+        return orderService.getAllOrders();
+    }
+    
+    @GetMapping("/my")
+    public Flux<OrderDto> getMyOrders(@RequestHeader("X-User-Id") Long userId) {
+        return orderService.getOrdersByUserId(userId);
+    }
+    
+    @PatchMapping("/{id}/status")
+    public Mono<OrderDto> updateStatus(
+            @PathVariable Long id,
+            @RequestParam OrderStatus status) {
+        return orderService.updateOrderStatus(id, status);
+    }
+    
+    @PostMapping("/{id}/cancel")
+    public Mono<OrderDto> cancelOrder(
+            @PathVariable Long id,
+            @RequestHeader("X-User-Id") Long userId) {
+        return orderService.cancelOrder(id, userId);
+    }
+}
@@ -0,0 +1,20 @@
+package com.shop.order.dto;
+
+import com.shop.order.model.OrderStatus;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkStatusUpdateRequest {
+    
+    @NotEmpty(message = "At least one order ID is required")
+    @Size(max = 1000, message = "At most 1000 orders can be updated at once")
+    private List<@NotNull Long> orderIds;
+    
+    @NotNull(message = "Status is required")
+    private OrderStatus status;
+}
@@ -0,0 +1,33 @@
+package com.shop.order.dto;
+
+import com.shop.order.model.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkStatusUpdateResponse {
+    private int succeeded;
+    private int failed;
+    private List<Result> results;
+    
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Result {
+        private Long orderId;
+        private boolean success;
+        private OrderStatus previousStatus;
+        private OrderStatus status;
+        private String error;
+        // Склад уже подтвердил или снял резерв, а статус заказа не сохранён: нужна ручная сверка
+        private boolean stockAdjusted;
+    }
+}
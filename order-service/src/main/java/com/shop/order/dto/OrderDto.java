@@ -18,6 +18,7 @@ public class OrderDto {
     private Long id;
     private Long userId;
     private OrderStatus status;
+    private String statusReason;
     private BigDecimal totalAmount;
     private String shippingAddress;
     private List<OrderItemDto> items;
@@ -12,7 +12,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_user_created", columnList = "user_id, created_at"),
+        @Index(name = "idx_orders_created", columnList = "created_at")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -20,7 +23,9 @@ import java.util.List;
 public class Order {
     
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Последовательность с шагом 50 (pooled): id выдаются из памяти, вставки идут JDBC-пакетами
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "orders_seq")
+    @SequenceGenerator(name = "orders_seq", sequenceName = "orders_seq", allocationSize = 50)
     private Long id;
     
     @Column(name = "user_id", nullable = false)
@@ -36,6 +41,19 @@ public class Order {
     @Column(name = "shipping_address")
     private String shippingAddress;
     
+    // Почему заказ отклонён (для REJECTED)
+    @Column(name = "status_reason", length = 500)
+    private String statusReason;
+    
+    // true — заказ записан синхронным createOrder; в PENDING_VALIDATION такой заказ не ждёт очереди,
+    // а брошен упавшим инстансом, и его удаляет PendingOrderCleanup
+    @Column(name = "synchronous_creation")
+    private Boolean synchronousCreation;
+    
+    // false — заказ принят, но склад ещё не снял срок с его резерва (ReservationPinner повторит)
+    @Column(name = "stock_pinned")
+    private Boolean stockPinned;
+    
     @OneToMany(mappedBy = "order", cascade = CascadeType.ALL, orphanRemoval = true)
     @Builder.Default
     private List<OrderItem> items = new ArrayList<>();
@@ -0,0 +1,39 @@
+package com.shop.order.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.math.BigDecimal;
+
+@Table("order_items")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderItemRecord {
+    
+    @Id
+    private Long id;
+    
+    @Column("order_id")
+    private Long orderId;
+    
+    @Column("product_id")
+    private Long productId;
+    
+    @Column("product_name")
+    private String productName;
+    
+    private Integer quantity;
+    
+    private BigDecimal price;
+    
+    public BigDecimal getSubtotal() {
+        return price.multiply(BigDecimal.valueOf(quantity));
+    }
+}
@@ -0,0 +1,41 @@
+package com.shop.order.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.relational.core.mapping.Column;
+import org.springframework.data.relational.core.mapping.Table;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+// Строка таблицы orders для реактивного стека (R2DBC не поддерживает связи, позиции хранятся отдельно)
+@Table("orders")
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderRecord {
+    
+    @Id
+    private Long id;
+    
+    @Column("user_id")
+    private Long userId;
+    
+    private OrderStatus status;
+    
+    @Column("total_amount")
+    private BigDecimal totalAmount;
+    
+    @Column("shipping_address")
+    private String shippingAddress;
+    
+    @Column("created_at")
+    private LocalDateTime createdAt;
+    
+    @Column("updated_at")
+    private LocalDateTime updatedAt;
+}
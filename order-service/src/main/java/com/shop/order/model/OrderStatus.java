@@ -1,10 +1,27 @@
 package com.shop.order.model;
 
 public enum OrderStatus {
+    // Принят асинхронно, наличие и цены ещё не проверены
+    PENDING_VALIDATION,
     PENDING,
     CONFIRMED,
     PROCESSING,
     SHIPPED,
     DELIVERED,
-    CANCELLED
+    CANCELLED,
+    // Отклонён при асинхронной проверке, причина в statusReason
+    REJECTED;
+    
+    // Переходы по жизненному циклу заказа; отменить можно только неподтверждённый заказ.
+    // Из PENDING_VALIDATION заказ выводит только конвейер приёма (OrderAcceptanceProcessor)
+    public boolean canTransitionTo(OrderStatus target) {
+        return switch (this) {
+            case PENDING_VALIDATION -> false;
+            case PENDING -> target == CONFIRMED || target == CANCELLED;
+            case CONFIRMED -> target == PROCESSING;
+            case PROCESSING -> target == SHIPPED;
+            case SHIPPED -> target == DELIVERED;
+            case DELIVERED, CANCELLED, REJECTED -> false;
+        };
+    }
 }
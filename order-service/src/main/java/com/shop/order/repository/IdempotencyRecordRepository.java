@@ -0,0 +1,31 @@
+package com.shop.order.repository;
+
+import com.shop.order.model.IdempotencyRecord;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecord, String> {
+    
+    // Явный INSERT вместо save(): при гонке двух запросов второй получит нарушение первичного ключа
+    @Modifying
+    @Query(value = "INSERT INTO idempotency_keys (idempotency_key, request_hash, status, created_at, expires_at) " +
+            "VALUES (:key, :requestHash, 'IN_PROGRESS', :createdAt, :expiresAt)", nativeQuery = true)
+    void insertInProgress(String key, String requestHash, LocalDateTime createdAt, LocalDateTime expiresAt);
+    
+    @Modifying
+    @Query("UPDATE IdempotencyRecord r SET r.status = :status, r.responseBody = :responseBody WHERE r.key = :key")
+    int complete(String key, IdempotencyRecord.Status status, String responseBody);
+    
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.key = :key AND r.createdAt = :createdAt")
+    int deleteVersion(String key, LocalDateTime createdAt);
+    
+    @Modifying
+    @Query("DELETE FROM IdempotencyRecord r WHERE r.expiresAt < :now")
+    int deleteExpired(LocalDateTime now);
+}
@@ -0,0 +1,14 @@
+package com.shop.order.repository;
+
+import com.shop.order.model.OrderItemRecord;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+import java.util.Collection;
+
+@Repository
+public interface OrderItemRecordRepository extends ReactiveCrudRepository<OrderItemRecord, Long> {
+    Flux<OrderItemRecord> findByOrderId(Long orderId);
+    Flux<OrderItemRecord> findByOrderIdIn(Collection<Long> orderIds);
+}
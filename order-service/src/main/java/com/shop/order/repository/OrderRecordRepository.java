@@ -0,0 +1,11 @@
+package com.shop.order.repository;
+
+import com.shop.order.model.OrderRecord;
+import org.springframework.data.repository.reactive.ReactiveCrudRepository;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Flux;
+
+@Repository
+public interface OrderRecordRepository extends ReactiveCrudRepository<OrderRecord, Long> {
+    Flux<OrderRecord> findByUserIdOrderByCreatedAtDesc(Long userId);
+}
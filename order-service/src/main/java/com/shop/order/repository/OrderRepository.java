@@ -2,14 +2,88 @@ package com.shop.order.repository;
 
 import com.shop.order.model.Order;
 import com.shop.order.model.OrderStatus;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByUserId(Long userId);
     List<Order> findByStatus(OrderStatus status);
+    
+    @EntityGraph(attributePaths = "items")
     List<Order> findByUserIdOrderByCreatedAtDesc(Long userId);
+    
+    @EntityGraph(attributePaths = "items")
+    List<Order> findAllWithItemsByOrderByCreatedAtDesc();
+    
+    @EntityGraph(attributePaths = "items")
+    Optional<Order> findWithItemsById(Long id);
+    
+    @EntityGraph(attributePaths = "items")
+    List<Order> findWithItemsByIdIn(Collection<Long> ids);
+    
+    // Страницы выбираются по ID, позиции догружаются отдельным запросом без пагинации в памяти
+    @Query(value = "SELECT o.id FROM Order o",
+            countQuery = "SELECT COUNT(o) FROM Order o")
+    Page<Long> findIds(Pageable pageable);
+    
+    @Query(value = "SELECT o.id FROM Order o WHERE o.userId = :userId",
+            countQuery = "SELECT COUNT(o) FROM Order o WHERE o.userId = :userId")
+    Page<Long> findIdsByUserId(Long userId, Pageable pageable);
+    
+    @Query("SELECT o.id FROM Order o ORDER BY o.createdAt DESC, o.id DESC")
+    List<Long> findFirstIds(Pageable pageable);
+    
+    @Query("SELECT o.id FROM Order o " +
+            "WHERE o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id) " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Long> findIdsBefore(LocalDateTime createdAt, Long id, Pageable pageable);
+    
+    @Query("SELECT o.id FROM Order o WHERE o.userId = :userId ORDER BY o.createdAt DESC, o.id DESC")
+    List<Long> findFirstIdsByUserId(Long userId, Pageable pageable);
+    
+    @Query("SELECT o.id FROM Order o WHERE o.userId = :userId " +
+            "AND (o.createdAt < :createdAt OR (o.createdAt = :createdAt AND o.id < :id)) " +
+            "ORDER BY o.createdAt DESC, o.id DESC")
+    List<Long> findIdsByUserIdBefore(Long userId, LocalDateTime createdAt, Long id, Pageable pageable);
+    
+    // Конвейер приёма блокирует заказы перед сменой статуса: один и тот же заказ не проведут дважды
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM Order o WHERE o.id IN :ids AND o.status = :status")
+    List<Order> lockByIdInAndStatus(Collection<Long> ids, OrderStatus status);
+    
+    // Заказы синхронного приёма и очереди разбираются разными сборщиками; у старых заказов признака нет,
+    // они считаются асинхронными
+    @Query("SELECT o.id FROM Order o WHERE o.status = :status " +
+            "AND COALESCE(o.synchronousCreation, false) = :synchronousCreation " +
+            "AND o.updatedAt < :before ORDER BY o.id")
+    List<Long> findIdsByStatusUpdatedBefore(OrderStatus status, boolean synchronousCreation, LocalDateTime before,
+                                            Pageable pageable);
+    
+    // Забрать зависший заказ может только один инстанс: updatedAt сдвигается условным UPDATE
+    @Modifying
+    @Query("UPDATE Order o SET o.updatedAt = :now " +
+            "WHERE o.id = :id AND o.status = :status AND o.updatedAt < :before")
+    int claimStale(Long id, OrderStatus status, LocalDateTime before, LocalDateTime now);
+    
+    // Принятые заказы, чей резерв склад ещё не закрепил (вызов pin не прошёл)
+    @Query("SELECT o.id FROM Order o WHERE o.status = :status AND o.stockPinned = false " +
+            "AND o.updatedAt < :before ORDER BY o.id")
+    List<Long> findUnpinnedIdsByStatusUpdatedBefore(OrderStatus status, LocalDateTime before, Pageable pageable);
+    
+    @Modifying
+    @Query("UPDATE Order o SET o.stockPinned = true WHERE o.id IN :ids")
+    int markStockPinned(Collection<Long> ids);
 }
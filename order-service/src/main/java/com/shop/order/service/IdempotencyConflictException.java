@@ -0,0 +1,19 @@
+package com.shop.order.service;
+
+import lombok.Getter;
+
+/**
+ * Запрос конфликтует с уже принятым запросом с тем же Idempotency-Key: ключ занят другим телом
+ * запроса или первый запрос ещё выполняется. Во втором случае retryAfterSeconds подсказывает,
+ * когда повторить.
+ */
+@Getter
+public class IdempotencyConflictException extends RuntimeException {
+    
+    private final Integer retryAfterSeconds;
+    
+    public IdempotencyConflictException(String message, Integer retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+}
@@ -0,0 +1,219 @@
+package com.shop.order.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.shop.order.dto.CreateOrderRequest;
+import com.shop.order.dto.OrderDto;
+import com.shop.order.model.IdempotencyRecord;
+import com.shop.order.repository.IdempotencyRecordRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.HexFormat;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Идемпотентное создание заказов по заголовку Idempotency-Key.
+ *
+ * Результат первого запроса сохраняется в таблице idempotency_keys и в локальном кэше.
+ * Повтор с тем же ключом получает сохранённый ответ без повторного резерва на складе,
+ * а параллельный дубликат на этом же инстансе ждёт завершения первого запроса.
+ */
+@Service
+@Profile("!reactive")
+@Slf4j
+public class IdempotencyService {
+    
+    private static final int MAX_KEY_LENGTH = 255;
+    // Через сколько секунд повторить запрос, пока первый запрос с ключом ещё выполняется
+    private static final int IN_PROGRESS_RETRY_AFTER = 1;
+    
+    private final IdempotencyRecordRepository repository;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectMapper objectMapper;
+    private final Duration ttl;
+    private final Duration waitTimeout;
+    private final Duration processingTimeout;
+    private final Cache<String, InFlight> results;
+    private final Counter replayed;
+    
+    public IdempotencyService(
+            IdempotencyRecordRepository repository,
+            TransactionTemplate transactionTemplate,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${orders.idempotency.ttl:24h}") Duration ttl,
+            @Value("${orders.idempotency.cache-max-size:10000}") long cacheMaxSize,
+            @Value("${orders.idempotency.wait-timeout:30s}") Duration waitTimeout,
+            @Value("${orders.idempotency.processing-timeout:2m}") Duration processingTimeout) {
+        this.repository = repository;
+        this.transactionTemplate = transactionTemplate;
+        this.objectMapper = objectMapper;
+        this.ttl = ttl;
+        this.waitTimeout = waitTimeout;
+        this.processingTimeout = processingTimeout;
+        this.results = Caffeine.newBuilder()
+                .maximumSize(cacheMaxSize)
+                .expireAfterWrite(ttl)
+                .build();
+        this.replayed = Counter.builder("orders.idempotency.replayed")
+                .description("Order submissions answered from a stored Idempotency-Key result")
+                .register(meterRegistry);
+    }
+    
+    public OrderDto execute(String idempotencyKey, Long userId, CreateOrderRequest request, Supplier<OrderDto> action) {
+        if (idempotencyKey.isBlank() || idempotencyKey.length() > MAX_KEY_LENGTH) {
+            throw new RuntimeException("Idempotency-Key must be between 1 and " + MAX_KEY_LENGTH + " characters");
+        }
+        String key = userId + ":" + idempotencyKey;
+        String requestHash = hash(request);
+        
+        // Первый запрос с ключом регистрирует future, дубликаты ждут его результат
+        InFlight created = new InFlight(requestHash, new CompletableFuture<>());
+        InFlight existing = results.asMap().putIfAbsent(key, created);
+        if (existing != null) {
+            ensureSameRequest(existing.requestHash(), requestHash);
+            replayed.increment();
+            return await(existing.result());
+        }
+        
+        try {
+            OrderDto result = executeOnce(key, requestHash, action);
+            created.result().complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            // Неудачный запрос не запоминаем: повтор с тем же ключом выполнится заново
+            results.asMap().remove(key, created);
+            created.result().completeExceptionally(e);
+            throw e;
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${orders.idempotency.purge-interval:PT10M}")
+    public void purgeExpired() {
+        Integer deleted = transactionTemplate.execute(status -> repository.deleteExpired(LocalDateTime.now()));
+        if (deleted != null && deleted > 0) {
+            log.info("Purged {} expired idempotency keys", deleted);
+        }
+    }
+    
+    private OrderDto executeOnce(String key, String requestHash, Supplier<OrderDto> action) {
+        // Точность как у колонки TIMESTAMP(6), чтобы deleteVersion находил свою запись
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        
+        // Ключ мог быть обработан другим инстансом или до рестарта
+        Optional<IdempotencyRecord> stored = repository.findById(key);
+        if (stored.isPresent()) {
+            IdempotencyRecord record = stored.get();
+            boolean expired = record.getExpiresAt().isBefore(now);
+            boolean abandoned = record.getStatus() == IdempotencyRecord.Status.IN_PROGRESS
+                    && record.getCreatedAt().plus(processingTimeout).isBefore(now);
+            
+            if (!expired && !abandoned) {
+                ensureSameRequest(record.getRequestHash(), requestHash);
+                if (record.getStatus() == IdempotencyRecord.Status.IN_PROGRESS) {
+                    throw inProgress();
+                }
+                replayed.increment();
+                return read(record.getResponseBody());
+            }
+            
+            // Просроченную или брошенную запись удаляем, только если её никто не успел заменить
+            transactionTemplate.execute(status -> repository.deleteVersion(key, record.getCreatedAt()));
+        }
+        
+        try {
+            transactionTemplate.executeWithoutResult(status ->
+                    repository.insertInProgress(key, requestHash, now, now.plus(ttl)));
+        } catch (DataIntegrityViolationException e) {
+            throw inProgress();
+        }
+        
+        OrderDto result;
+        try {
+            result = action.get();
+        } catch (RuntimeException e) {
+            transactionTemplate.execute(status -> repository.deleteVersion(key, now));
+            throw e;
+        }
+        
+        try {
+            String body = objectMapper.writeValueAsString(result);
+            transactionTemplate.execute(status ->
+                    repository.complete(key, IdempotencyRecord.Status.COMPLETED, body));
+        } catch (JsonProcessingException | RuntimeException e) {
+            // Заказ уже создан; ответ остаётся в локальном кэше, а запись истечёт по processing-timeout
+            log.error("Order {} was created but its Idempotency-Key result could not be stored", result.getId(), e);
+        }
+        return result;
+    }
+    
+    private OrderDto await(CompletableFuture<OrderDto> result) {
+        try {
+            return result.get(waitTimeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IdempotencyConflictException(
+                    "Timed out waiting for the original request with this Idempotency-Key", IN_PROGRESS_RETRY_AFTER);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw new RuntimeException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while waiting for the original request with this Idempotency-Key");
+        }
+    }
+    
+    private void ensureSameRequest(String storedHash, String requestHash) {
+        if (!storedHash.equals(requestHash)) {
+            throw new IdempotencyConflictException("Idempotency-Key was already used for a different request", null);
+        }
+    }
+    
+    private IdempotencyConflictException inProgress() {
+        return new IdempotencyConflictException(
+                "A request with this Idempotency-Key is still being processed", IN_PROGRESS_RETRY_AFTER);
+    }
+    
+    private OrderDto read(String body) {
+        try {
+            return objectMapper.readValue(body, OrderDto.class);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Stored response for Idempotency-Key is unreadable", e);
+        }
+    }
+    
+    private String hash(CreateOrderRequest request) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException | NoSuchAlgorithmException e) {
+            throw new RuntimeException("Failed to fingerprint order request", e);
+        }
+    }
+    
+    private record InFlight(String requestHash, CompletableFuture<OrderDto> result) {
+    }
+}
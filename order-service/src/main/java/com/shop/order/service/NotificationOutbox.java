@@ -0,0 +1,51 @@
+package com.shop.order.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.order.client.ServiceClients;
+import com.shop.order.model.OutboxEvent;
+import com.shop.order.repository.OutboxEventRepository;
+import lombok.RequiredArgsConstructor;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+
+/**
+ * Запись уведомлений в таблицу outbox_events.
+ *
+ * Вызывается только внутри транзакции, которая сохраняет заказ: событие фиксируется
+ * вместе с заказом или не фиксируется вовсе. Доставкой занимается NotificationOutboxRelay.
+ */
+@Component
+@Profile("!reactive")
+@RequiredArgsConstructor
+public class NotificationOutbox {
+    
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+    
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void enqueue(Long orderId, ServiceClients.NotificationRequest notification) {
+        LocalDateTime now = LocalDateTime.now();
+        outboxEventRepository.save(OutboxEvent.builder()
+                .aggregateId(orderId)
+                .eventType(notification.getType())
+                .payload(write(notification))
+                .status(OutboxEvent.Status.PENDING)
+                .attempts(0)
+                .nextAttemptAt(now)
+                .createdAt(now)
+                .build());
+    }
+    
+    private String write(ServiceClients.NotificationRequest notification) {
+        try {
+            return objectMapper.writeValueAsString(notification);
+        } catch (JsonProcessingException e) {
+            throw new RuntimeException("Failed to serialize notification for order outbox", e);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.shop.order.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.order.client.ServiceClients;
+import com.shop.order.model.OutboxEvent;
+import com.shop.order.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Фоновая доставка уведомлений из outbox_events в notification-service.
+ *
+ * События уходят пачками на /api/notifications/send-batch: один HTTP-вызов на пачку,
+ * а не на каждый заказ. Доставка at-least-once, повторы отсекаются на стороне
+ * notification-service по eventId. При ошибке пачка откладывается с экспоненциальной паузой.
+ */
+@Component
+@Profile("!reactive")
+@Slf4j
+public class NotificationOutboxRelay {
+    
+    private static final String EVENT_ID_PREFIX = "order-outbox-";
+    
+    private final OutboxEventRepository outboxEventRepository;
+    private final ServiceClients serviceClients;
+    private final ObjectMapper objectMapper;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration sendTimeout;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final AtomicLong lagMillis = new AtomicLong();
+    private final Counter delivered;
+    private final Counter deliveryFailures;
+    
+    public NotificationOutboxRelay(
+            OutboxEventRepository outboxEventRepository,
+            ServiceClients serviceClients,
+            ObjectMapper objectMapper,
+            MeterRegistry meterRegistry,
+            @Value("${orders.outbox.batch-size:100}") int batchSize,
+            @Value("${orders.outbox.max-attempts:10}") int maxAttempts,
+            @Value("${orders.outbox.send-timeout:10s}") Duration sendTimeout,
+            @Value("${orders.outbox.initial-backoff:1s}") Duration initialBackoff,
+            @Value("${orders.outbox.max-backoff:5m}") Duration maxBackoff) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.serviceClients = serviceClients;
+        this.objectMapper = objectMapper;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.sendTimeout = sendTimeout;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.delivered = Counter.builder("orders.outbox.delivered")
+                .description("Outbox events delivered to notification-service")
+                .register(meterRegistry);
+        this.deliveryFailures = Counter.builder("orders.outbox.delivery.failures")
+                .description("Outbox events whose delivery attempt failed")
+                .register(meterRegistry);
+        Gauge.builder("orders.outbox.lag", lagMillis, AtomicLong::get)
+                .description("Age of the oldest undelivered outbox event")
+                .baseUnit("milliseconds")
+                .register(meterRegistry);
+    }
+    
+    @Scheduled(fixedDelayString = "${orders.outbox.poll-interval:PT1S}")
+    public void relay() {
+        // Полная пачка означает, что в очереди могут быть ещё события: разбираем сразу
+        List<OutboxEvent> batch;
+        do {
+            batch = outboxEventRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                    OutboxEvent.Status.PENDING, LocalDateTime.now(), PageRequest.of(0, batchSize));
+            if (!batch.isEmpty() && !deliver(batch)) {
+                break;
+            }
+        } while (batch.size() == batchSize);
+        
+        updateLag();
+    }
+    
+    private boolean deliver(List<OutboxEvent> batch) {
+        // Нечитаемый payload повтор не исправит: такое событие сразу уходит в FAILED, остальные отправляются
+        List<OutboxEvent> readable = new ArrayList<>(batch.size());
+        List<ServiceClients.NotificationRequest> notifications = new ArrayList<>(batch.size());
+        for (OutboxEvent event : batch) {
+            try {
+                notifications.add(toNotification(event));
+                readable.add(event);
+            } catch (JsonProcessingException e) {
+                markUnreadable(event, e);
+            }
+        }
+        if (readable.isEmpty()) {
+            return true;
+        }
+        
+        try {
+            serviceClients.sendNotificationBatchAsync(notifications).block(sendTimeout);
+            outboxEventRepository.deleteAllInBatch(readable);
+            delivered.increment(readable.size());
+            return true;
+        } catch (WebClientResponseException e) {
+            // Ответ 4xx означает битое событие, а не недоступность сервиса: изолируем его поштучной отправкой
+            if (e.getStatusCode().is4xxClientError() && readable.size() > 1) {
+                readable.forEach(event -> deliver(List.of(event)));
+                return true;
+            }
+            scheduleRetry(readable, e);
+            return false;
+        } catch (RuntimeException e) {
+            scheduleRetry(readable, e);
+            return false;
+        }
+    }
+    
+    private void markUnreadable(OutboxEvent event, JsonProcessingException e) {
+        log.error("Giving up on outbox event {} for order {}: unreadable payload",
+                event.getId(), event.getAggregateId(), e);
+        deliveryFailures.increment();
+        event.setStatus(OutboxEvent.Status.FAILED);
+        event.setLastError(truncate("Unreadable payload: " + e.getOriginalMessage()));
+        outboxEventRepository.save(event);
+    }
+    
+    private void scheduleRetry(List<OutboxEvent> batch, RuntimeException e) {
+        log.warn("Failed to deliver {} outbox events: {}", batch.size(), e.getMessage());
+        deliveryFailures.increment(batch.size());
+        LocalDateTime now = LocalDateTime.now();
+        
+        for (OutboxEvent event : batch) {
+            int attempts = event.getAttempts() + 1;
+            event.setAttempts(attempts);
+            event.setLastError(truncate(e.getMessage()));
+            event.setNextAttemptAt(now.plus(backoff(attempts)));
+            if (attempts >= maxAttempts) {
+                event.setStatus(OutboxEvent.Status.FAILED);
+                log.error("Giving up on outbox event {} for order {} after {} attempts",
+                        event.getId(), event.getAggregateId(), attempts);
+            }
+        }
+        outboxEventRepository.saveAll(batch);
+    }
+    
+    private Duration backoff(int attempts) {
+        long multiplier = 1L << Math.min(attempts - 1, 20);
+        Duration delay = initialBackoff.multipliedBy(multiplier);
+        return delay.compareTo(maxBackoff) > 0 ? maxBackoff : delay;
+    }
+    
+    private void updateLag() {
+        lagMillis.set(outboxEventRepository.findFirstByStatusOrderByIdAsc(OutboxEvent.Status.PENDING)
+                .map(event -> Duration.between(event.getCreatedAt(), LocalDateTime.now()).toMillis())
+                .orElse(0L));
+    }
+    
+    private ServiceClients.NotificationRequest toNotification(OutboxEvent event) throws JsonProcessingException {
+        ServiceClients.NotificationRequest notification =
+                objectMapper.readValue(event.getPayload(), ServiceClients.NotificationRequest.class);
+        notification.setEventId(EVENT_ID_PREFIX + event.getId());
+        return notification;
+    }
+    
+    private String truncate(String message) {
+        if (message == null) {
+            return null;
+        }
+        return message.length() > 1000 ? message.substring(0, 1000) : message;
+    }
+}
@@ -0,0 +1,292 @@
+package com.shop.order.service;
+
+import com.shop.order.client.ServiceClients;
+import com.shop.order.model.Order;
+import com.shop.order.model.OrderItem;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+import reactor.util.function.Tuple2;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Проверка заказов, принятых асинхронно (PENDING_VALIDATION), микропакетами.
+ *
+ * На пачку заказов уходит один запрос за товарами и один за остатками. Остаток распределяется
+ * по заказам в порядке приёма: поместившиеся резервируются одним пакетным вызовом склада
+ * и переходят в PENDING, остальные — в REJECTED. Если склад отклонил пакет (остаток успели
+ * забрать другие заказы), остатки перечитываются и заказы резервируются по одному, чтобы один
+ * лишний заказ не задерживал всю пачку. Если соседний сервис недоступен, пачка остаётся
+ * в PENDING_VALIDATION и позже подбирается OrderAcceptanceQueue. Резерв принятых заказов
+ * закрепляет ReservationPinner.
+ */
+@Component
+@Profile("!reactive")
+@Slf4j
+public class OrderAcceptanceProcessor {
+    
+    private final OrderRepository orderRepository;
+    private final ServiceClients serviceClients;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationOutbox notificationOutbox;
+    private final ReservationPinner reservationPinner;
+    private final Counter accepted;
+    private final Counter rejected;
+    
+    public OrderAcceptanceProcessor(
+            OrderRepository orderRepository,
+            ServiceClients serviceClients,
+            TransactionTemplate transactionTemplate,
+            NotificationOutbox notificationOutbox,
+            ReservationPinner reservationPinner,
+            MeterRegistry meterRegistry) {
+        this.orderRepository = orderRepository;
+        this.serviceClients = serviceClients;
+        this.transactionTemplate = transactionTemplate;
+        this.notificationOutbox = notificationOutbox;
+        this.reservationPinner = reservationPinner;
+        this.accepted = Counter.builder("orders.acceptance.validated")
+                .tag("outcome", "accepted")
+                .description("Asynchronously accepted orders that passed validation")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("orders.acceptance.validated")
+                .tag("outcome", "rejected")
+                .description("Asynchronously accepted orders rejected during validation")
+                .register(meterRegistry);
+    }
+    
+    public void process(List<Long> orderIds) {
+        List<Order> orders = orderRepository.findWithItemsByIdIn(orderIds).stream()
+                .filter(order -> order.getStatus() == OrderStatus.PENDING_VALIDATION)
+                .sorted(Comparator.comparing(Order::getId))
+                .collect(Collectors.toList());
+        if (orders.isEmpty()) {
+            return;
+        }
+        
+        List<OrderItem> allItems = orders.stream()
+                .flatMap(order -> order.getItems().stream())
+                .collect(Collectors.toList());
+        Set<Long> productIds = allItems.stream()
+                .map(OrderItem::getProductId)
+                .collect(Collectors.toCollection(LinkedHashSet::new));
+        
+        // Товары и остатки всей пачки запрашиваются параллельно, по одному запросу на сервис
+        Tuple2<ServiceClients.ProductBatchResponse, List<ServiceClients.StockCheckResponse>> data = Mono.zip(
+                serviceClients.getProductsAsync(productIds),
+                serviceClients.checkStockBatchAsync(toStockRequests(null, allItems))).block();
+        Map<Long, ServiceClients.ProductResponse> products = data.getT1().getProducts().stream()
+                .collect(Collectors.toMap(ServiceClients.ProductResponse::getId, Function.identity()));
+        Map<Long, Integer> remaining = available(data.getT2());
+        
+        Map<Long, String> rejections = new LinkedHashMap<>();
+        List<Order> admitted = reserve(orders, allItems, products, remaining, rejections);
+        if (admitted.isEmpty() && rejections.isEmpty()) {
+            return;
+        }
+        
+        List<ServiceClients.StockRequest> reservation = toStockRequests(admitted);
+        Saved saved;
+        try {
+            saved = transactionTemplate.execute(status -> save(admitted, rejections, products));
+        } catch (RuntimeException e) {
+            log.error("Failed to save validated orders {}, releasing reserved stock", orderIds, e);
+            if (!reservation.isEmpty()) {
+                serviceClients.releaseOrderStock(reservation);
+            }
+            throw e;
+        }
+        
+        // Заказ успел провести другой инстанс. Резерв привязан к заказу, поэтому второй раз склад его
+        // не взял, и снимать нечего: снятие отпустило бы резерв, который держит победивший инстанс
+        if (!saved.lost().isEmpty()) {
+            log.warn("Orders {} were validated concurrently",
+                    saved.lost().stream().map(Order::getId).collect(Collectors.toList()));
+        }
+        reservationPinner.pin(saved.pending());
+        // Счётчики меняются после коммита: откат транзакции не должен оставлять в метриках отказы
+        accepted.increment(saved.pending().size());
+        rejected.increment(saved.rejected());
+    }
+    
+    // Поместившиеся в остаток заказы резервируются одним пакетом. Отказы посчитаны с учётом этого резерва,
+    // поэтому, если склад отклонил пакет, они считаются заново при резерве по одному
+    private List<Order> reserve(List<Order> orders, List<OrderItem> allItems,
+                                Map<Long, ServiceClients.ProductResponse> products, Map<Long, Integer> remaining,
+                                Map<Long, String> rejections) {
+        List<Order> admitted = new ArrayList<>();
+        for (Order order : orders) {
+            String reason = allocate(order, products, remaining);
+            if (reason == null) {
+                admitted.add(order);
+            } else {
+                rejections.put(order.getId(), reason);
+            }
+        }
+        if (admitted.isEmpty()) {
+            return admitted;
+        }
+        
+        try {
+            serviceClients.reserveOrderStock(toStockRequests(admitted));
+            return admitted;
+        } catch (RuntimeException e) {
+            log.warn("Failed to reserve stock for orders {}, re-checking stock and reserving one by one",
+                    admitted.stream().map(Order::getId).collect(Collectors.toList()), e);
+        }
+        rejections.clear();
+        return reserveOneByOne(orders, allItems, products, rejections);
+    }
+    
+    // Остатки перечитываются, каждый заказ резервируется отдельно. Отказ получает только заказ, которому
+    // не хватило остатка после уже зарезервированных; заказ, который склад не взял при достаточном
+    // остатке, остаётся в PENDING_VALIDATION до повторной проверки
+    private List<Order> reserveOneByOne(List<Order> orders, List<OrderItem> allItems,
+                                        Map<Long, ServiceClients.ProductResponse> products,
+                                        Map<Long, String> rejections) {
+        Map<Long, Integer> remaining = available(
+                serviceClients.checkStockBatchAsync(toStockRequests(null, allItems)).block());
+        List<Order> reserved = new ArrayList<>();
+        for (Order order : orders) {
+            String reason = allocate(order, products, remaining);
+            if (reason != null) {
+                rejections.put(order.getId(), reason);
+                continue;
+            }
+            try {
+                serviceClients.reserveOrderStock(toStockRequests(order.getId(), order.getItems()));
+                reserved.add(order);
+            } catch (RuntimeException e) {
+                log.warn("Failed to reserve stock for order {}, leaving it for retry", order.getId(), e);
+                mergeQuantities(order.getItems())
+                        .forEach((productId, quantity) -> remaining.merge(productId, quantity, Integer::sum));
+            }
+        }
+        return reserved;
+    }
+    
+    private Map<Long, Integer> available(List<ServiceClients.StockCheckResponse> stocks) {
+        Map<Long, Integer> remaining = new HashMap<>();
+        for (ServiceClients.StockCheckResponse stock : stocks) {
+            remaining.put(stock.getProductId(), stock.getAvailableQuantity());
+        }
+        return remaining;
+    }
+    
+    // Списывает позиции заказа с остатка пачки; возвращает причину отказа или null
+    private String allocate(Order order, Map<Long, ServiceClients.ProductResponse> products,
+                            Map<Long, Integer> remaining) {
+        Map<Long, Integer> quantities = mergeQuantities(order.getItems());
+        for (Map.Entry<Long, Integer> entry : quantities.entrySet()) {
+            if (!products.containsKey(entry.getKey())) {
+                return "Product not found: " + entry.getKey();
+            }
+            int available = remaining.getOrDefault(entry.getKey(), 0);
+            if (available < entry.getValue()) {
+                return "Product " + entry.getKey() + " is out of stock. Available: " + available;
+            }
+        }
+        quantities.forEach((productId, quantity) -> remaining.merge(productId, -quantity, Integer::sum));
+        return null;
+    }
+    
+    // Заказы перечитываются с блокировкой: если статус уже сменил другой инстанс, заказ возвращается как потерянный.
+    // Переведённые в PENDING возвращаются для закрепления резерва после коммита
+    private Saved save(List<Order> admitted, Map<Long, String> rejections,
+                             Map<Long, ServiceClients.ProductResponse> products) {
+        List<Long> ids = new ArrayList<>(rejections.keySet());
+        admitted.forEach(order -> ids.add(order.getId()));
+        Set<Long> locked = orderRepository.lockByIdInAndStatus(ids, OrderStatus.PENDING_VALIDATION).stream()
+                .map(Order::getId)
+                .collect(Collectors.toSet());
+        Map<Long, Order> managed = locked.isEmpty() ? Map.of() : orderRepository.findWithItemsByIdIn(locked).stream()
+                .collect(Collectors.toMap(Order::getId, Function.identity()));
+        
+        List<Order> pending = new ArrayList<>();
+        List<Order> lost = new ArrayList<>();
+        for (Order order : admitted) {
+            Order current = managed.get(order.getId());
+            if (current == null) {
+                lost.add(order);
+                continue;
+            }
+            for (OrderItem item : current.getItems()) {
+                ServiceClients.ProductResponse product = products.get(item.getProductId());
+                item.setProductName(product.getName());
+                item.setPrice(product.getPrice());
+            }
+            current.setTotalAmount(current.getItems().stream()
+                    .map(OrderItem::getSubtotal)
+                    .reduce(BigDecimal.ZERO, BigDecimal::add));
+            current.setStatus(OrderStatus.PENDING);
+            current.setStockPinned(false);
+            pending.add(current);
+            notificationOutbox.enqueue(current.getId(), new ServiceClients.NotificationRequest(
+                    current.getUserId(),
+                    "ORDER_CREATED",
+                    "Order Created",
+                    "Your order #" + current.getId() + " has been created successfully!"
+            ));
+        }
+        
+        int rejectedCount = 0;
+        for (Map.Entry<Long, String> rejection : rejections.entrySet()) {
+            Order current = managed.get(rejection.getKey());
+            if (current == null) {
+                continue;
+            }
+            String reason = rejection.getValue();
+            current.setStatus(OrderStatus.REJECTED);
+            current.setStatusReason(reason);
+            notificationOutbox.enqueue(current.getId(), new ServiceClients.NotificationRequest(
+                    current.getUserId(),
+                    "ORDER_REJECTED",
+                    "Order Rejected",
+                    "Your order #" + current.getId() + " was rejected: " + reason
+            ));
+            rejectedCount++;
+        }
+        return new Saved(pending, lost, rejectedCount);
+    }
+    
+    private Map<Long, Integer> mergeQuantities(List<OrderItem> items) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItem item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+    
+    private List<ServiceClients.StockRequest> toStockRequests(List<Order> orders) {
+        return orders.stream()
+                .flatMap(order -> toStockRequests(order.getId(), order.getItems()).stream())
+                .collect(Collectors.toList());
+    }
+    
+    // orderId == null — позиции без привязки к заказу, для проверки наличия
+    private List<ServiceClients.StockRequest> toStockRequests(Long orderId, List<OrderItem> items) {
+        return mergeQuantities(items).entrySet().stream()
+                .map(entry -> new ServiceClients.StockRequest(orderId, entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+    
+    private record Saved(List<Order> pending, List<Order> lost, int rejected) {
+    }
+}
@@ -0,0 +1,215 @@
+package com.shop.order.service;
+
+import com.shop.order.dto.CreateOrderRequest;
+import com.shop.order.dto.OrderDto;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.OrderRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Асинхронный приём заказов (orders.acceptance.enabled).
+ *
+ * POST /api/orders только записывает заказ в PENDING_VALIDATION и ставит его ID в ограниченную
+ * очередь; если мест нет, запрос сразу получает 503. Рабочие потоки забирают ID пачками
+ * до batch-size и передают их OrderAcceptanceProcessor. Сколько заказов принимается, определяет
+ * ёмкость очереди, а не задержка склада. Заказы, которые не удалось проверить (сбой соседнего
+ * сервиса, рестарт инстанса), повторно ставятся в очередь через stale-after.
+ */
+@Service
+@Profile("!reactive")
+@Slf4j
+public class OrderAcceptanceQueue {
+    
+    private final OrderService orderService;
+    private final OrderAcceptanceProcessor processor;
+    private final OrderRepository orderRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int workers;
+    private final int batchSize;
+    private final Duration batchWait;
+    private final Duration staleAfter;
+    private final BlockingQueue<Long> queue;
+    private final Semaphore slots;
+    private final Set<Long> queued = ConcurrentHashMap.newKeySet();
+    private final Counter overflows;
+    private ExecutorService executor;
+    private volatile boolean running;
+    
+    public OrderAcceptanceQueue(
+            OrderService orderService,
+            OrderAcceptanceProcessor processor,
+            OrderRepository orderRepository,
+            TransactionTemplate transactionTemplate,
+            MeterRegistry meterRegistry,
+            @Value("${orders.acceptance.enabled:false}") boolean enabled,
+            @Value("${orders.acceptance.queue-capacity:1000}") int queueCapacity,
+            @Value("${orders.acceptance.workers:4}") int workers,
+            @Value("${orders.acceptance.batch-size:50}") int batchSize,
+            @Value("${orders.acceptance.batch-wait:20ms}") Duration batchWait,
+            @Value("${orders.acceptance.stale-after:2m}") Duration staleAfter) {
+        this.orderService = orderService;
+        this.processor = processor;
+        this.orderRepository = orderRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.enabled = enabled;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.batchWait = batchWait;
+        this.staleAfter = staleAfter;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        // Место занимается до записи заказа, поэтому записанный заказ всегда помещается в очередь
+        this.slots = new Semaphore(queueCapacity);
+        this.overflows = Counter.builder("orders.acceptance.overflow")
+                .description("Order submissions refused because the acceptance queue was full")
+                .register(meterRegistry);
+        Gauge.builder("orders.acceptance.queue.size", queue, BlockingQueue::size)
+                .description("Accepted orders waiting for validation")
+                .register(meterRegistry);
+    }
+    
+    public boolean isEnabled() {
+        return enabled;
+    }
+    
+    public OrderDto submit(Long userId, CreateOrderRequest request) {
+        if (!slots.tryAcquire()) {
+            overflows.increment();
+            throw new OrderQueueFullException("Too many orders are waiting for validation, please retry later");
+        }
+        try {
+            OrderDto order = orderService.acceptOrder(userId, request);
+            enqueue(order.getId());
+            return order;
+        } catch (RuntimeException e) {
+            slots.release();
+            throw e;
+        }
+    }
+    
+    @PostConstruct
+    void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        executor = Executors.newFixedThreadPool(workers, Thread.ofPlatform()
+                .name("order-acceptance-", 0)
+                .daemon(true)
+                .factory());
+        for (int i = 0; i < workers; i++) {
+            executor.execute(this::drain);
+        }
+    }
+    
+    @PreDestroy
+    void stop() throws InterruptedException {
+        running = false;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+    
+    // Заказы в PENDING_VALIDATION, которые давно не обновлялись и не стоят в очереди этого инстанса.
+    // Брошенные синхронным приёмом заказы не берутся: их удаляет PendingOrderCleanup
+    @Scheduled(fixedDelayString = "${orders.acceptance.recovery-interval:PT30S}")
+    public void requeueStale() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime before = now.minus(staleAfter);
+        List<Long> stale = orderRepository.findIdsByStatusUpdatedBefore(
+                OrderStatus.PENDING_VALIDATION, false, before, PageRequest.of(0, batchSize));
+        for (Long orderId : stale) {
+            if (queued.contains(orderId)) {
+                continue;
+            }
+            if (!slots.tryAcquire()) {
+                return;
+            }
+            Integer claimed = transactionTemplate.execute(status -> orderRepository.claimStale(
+                    orderId, OrderStatus.PENDING_VALIDATION, before, now));
+            if (claimed != null && claimed == 1) {
+                log.info("Requeueing order {} stuck in {}", orderId, OrderStatus.PENDING_VALIDATION);
+                enqueue(orderId);
+            } else {
+                slots.release();
+            }
+        }
+    }
+    
+    private void enqueue(Long orderId) {
+        queued.add(orderId);
+        queue.add(orderId);
+    }
+    
+    private void drain() {
+        List<Long> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Long first = queue.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                
+                // Добираем пачку, но ждём не дольше batch-wait, чтобы одиночный заказ не залёживался
+                long deadline = System.nanoTime() + batchWait.toNanos();
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long left = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || left <= 0) {
+                        break;
+                    }
+                    Long next = queue.poll(left, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                slots.release(batch.size());
+                process(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+    
+    private void process(List<Long> batch) {
+        try {
+            processor.process(List.copyOf(batch));
+        } catch (RuntimeException e) {
+            log.warn("Failed to validate orders {}, they will be retried after {}", batch, staleAfter, e);
+        } finally {
+            batch.forEach(queued::remove);
+            batch.clear();
+        }
+    }
+}
@@ -0,0 +1,122 @@
+package com.shop.order.service;
+
+import com.shop.order.client.ServiceClients;
+import com.shop.order.dto.OrderItemRequest;
+import com.shop.order.model.OrderItem;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+@Component
+public class OrderItemResolver {
+    
+    private final ServiceClients serviceClients;
+    private final boolean fanOutEnabled;
+    private final Duration fanOutTimeout;
+    
+    public OrderItemResolver(
+            ServiceClients serviceClients,
+            @Value("${orders.fan-out.enabled:true}") boolean fanOutEnabled,
+            @Value("${orders.fan-out.timeout:5s}") Duration fanOutTimeout) {
+        this.serviceClients = serviceClients;
+        this.fanOutEnabled = fanOutEnabled;
+        this.fanOutTimeout = fanOutTimeout;
+    }
+    
+    public List<OrderItem> resolve(List<OrderItemRequest> requests) {
+        return fanOutEnabled ? resolveConcurrently(requests) : resolveSequentially(requests);
+    }
+    
+    private List<OrderItem> resolveSequentially(List<OrderItemRequest> requests) {
+        List<OrderItem> orderItems = new ArrayList<>();
+        
+        for (OrderItemRequest itemRequest : requests) {
+            // Проверяем наличие на складе
+            ServiceClients.StockCheckResponse stockCheck =
+                    serviceClients.checkStock(itemRequest.getProductId(), itemRequest.getQuantity());
+            ensureInStock(itemRequest.getProductId(), stockCheck);
+            
+            // Получаем информацию о товаре
+            ServiceClients.ProductResponse product = serviceClients.getProduct(itemRequest.getProductId());
+            orderItems.add(toOrderItem(product, itemRequest.getQuantity()));
+        }
+        
+        return orderItems;
+    }
+    
+    private List<OrderItem> resolveConcurrently(List<OrderItemRequest> requests) {
+        return resolveAsync(requests).block();
+    }
+    
+    public Mono<List<OrderItem>> resolveAsync(List<OrderItemRequest> requests) {
+        // Повторяющиеся товары объединяем, количество суммируем
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItemRequest itemRequest : requests) {
+            quantities.merge(itemRequest.getProductId(), itemRequest.getQuantity(), Integer::sum);
+        }
+        
+        // Наличие всех позиций проверяется одним пакетным запросом
+        Mono<Map<Long, ServiceClients.StockCheckResponse>> stockChecks = serviceClients
+                .checkStockBatchAsync(toStockRequests(quantities))
+                .map(responses -> responses.stream()
+                        .collect(Collectors.toMap(ServiceClients.StockCheckResponse::getProductId, Function.identity())));
+        
+        // Данные всех товаров получаем одним пакетным запросом
+        Mono<Map<Long, ServiceClients.ProductResponse>> products = serviceClients
+                .getProductsAsync(quantities.keySet())
+                .map(response -> {
+                    if (!response.getMissingIds().isEmpty()) {
+                        throw new RuntimeException("Product not found: " + response.getMissingIds().get(0));
+                    }
+                    return response.getProducts().stream()
+                            .collect(Collectors.toMap(ServiceClients.ProductResponse::getId, Function.identity()));
+                });
+        
+        // Оба запроса выполняются параллельно, ждём их с одним общим дедлайном
+        return Mono.zip(stockChecks, products)
+                .timeout(fanOutTimeout, Mono.error(new RuntimeException(
+                        "Timed out after " + fanOutTimeout.toMillis() + " ms waiting for product and stock data")))
+                .map(results -> {
+                    for (Long productId : quantities.keySet()) {
+                        ensureInStock(productId, results.getT1().get(productId));
+                    }
+                    
+                    List<OrderItem> orderItems = new ArrayList<>();
+                    for (OrderItemRequest itemRequest : requests) {
+                        ServiceClients.ProductResponse product = results.getT2().get(itemRequest.getProductId());
+                        orderItems.add(toOrderItem(product, itemRequest.getQuantity()));
+                    }
+                    return orderItems;
+                });
+    }
+    
+    private List<ServiceClients.StockRequest> toStockRequests(Map<Long, Integer> quantities) {
+        return quantities.entrySet().stream()
+                .map(entry -> new ServiceClients.StockRequest(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+    
+    private void ensureInStock(Long productId, ServiceClients.StockCheckResponse stockCheck) {
+        if (stockCheck == null || !stockCheck.isInStock()) {
+            throw new RuntimeException("Product " + productId +
+                    " is out of stock. Available: " + (stockCheck != null ? stockCheck.getAvailableQuantity() : 0));
+        }
+    }
+    
+    private OrderItem toOrderItem(ServiceClients.ProductResponse product, Integer quantity) {
+        return OrderItem.builder()
+                .productId(product.getId())
+                .productName(product.getName())
+                .quantity(quantity)
+                .price(product.getPrice())
+                .build();
+    }
+}
@@ -0,0 +1,11 @@
+package com.shop.order.service;
+
+/**
+ * Очередь асинхронного приёма заполнена: заказ не записан, клиент может повторить позже.
+ */
+public class OrderQueueFullException extends RuntimeException {
+    
+    public OrderQueueFullException(String message) {
+        super(message);
+    }
+}
@@ -8,61 +8,57 @@ import com.shop.order.model.OrderStatus;
 import com.shop.order.repository.OrderRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Sort;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
+@Profile("!reactive")
 @RequiredArgsConstructor
 @Slf4j
 public class OrderService {
     
     private final OrderRepository orderRepository;
     private final ServiceClients serviceClients;
+    private final OrderItemResolver orderItemResolver;
+    private final TransactionTemplate transactionTemplate;
+    private final NotificationOutbox notificationOutbox;
+    private final ReservationPinner reservationPinner;
     
-    @Transactional
+    private static final int MAX_PAGE_SIZE = 100;
+    
+    // Удалённые вызовы выполняются вне транзакции, соединение с БД берётся только на сохранение.
+    // Резерв склада привязан к заказу, поэтому заказ записывается до резерва в PENDING_VALIDATION.
+    // Если инстанс упадёт между шагами, заказ удалит PendingOrderCleanup, а резерв склад снимет
+    // по истечении срока. Резерв заказа, дошедшего до PENDING, закрепляет ReservationPinner
     public OrderDto createOrder(Long userId, CreateOrderRequest request) {
         // Проверяем наличие товаров и собираем информацию
-        List<OrderItem> orderItems = new ArrayList<>();
-        BigDecimal totalAmount = BigDecimal.ZERO;
-        
-        for (OrderItemRequest itemRequest : request.getItems()) {
-            // Проверяем наличие на складе
-            ServiceClients.StockCheckResponse stockCheck = 
-                    serviceClients.checkStock(itemRequest.getProductId(), itemRequest.getQuantity());
-            
-            if (!stockCheck.isInStock()) {
-                throw new RuntimeException("Product " + itemRequest.getProductId() + 
-                        " is out of stock. Available: " + stockCheck.getAvailableQuantity());
-            }
-            
-            // Получаем информацию о товаре
-            ServiceClients.ProductResponse product = serviceClients.getProduct(itemRequest.getProductId());
-            
-            OrderItem item = OrderItem.builder()
-                    .productId(product.getId())
-                    .productName(product.getName())
-                    .quantity(itemRequest.getQuantity())
-                    .price(product.getPrice())
-                    .build();
-            
-            orderItems.add(item);
-            totalAmount = totalAmount.add(item.getSubtotal());
-        }
+        List<OrderItem> orderItems = orderItemResolver.resolve(request.getItems());
+        BigDecimal totalAmount = orderItems.stream()
+                .map(OrderItem::getSubtotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
         
-        // Резервируем товары
-        for (OrderItemRequest itemRequest : request.getItems()) {
-            serviceClients.reserveStock(itemRequest.getProductId(), itemRequest.getQuantity());
-        }
-        
-        // Создаём заказ
         Order order = Order.builder()
                 .userId(userId)
-                .status(OrderStatus.PENDING)
+                .status(OrderStatus.PENDING_VALIDATION)
+                .synchronousCreation(true)
                 .totalAmount(totalAmount)
                 .shippingAddress(request.getShippingAddress())
                 .items(new ArrayList<>())
@@ -71,76 +67,176 @@ public class OrderService {
         for (OrderItem item : orderItems) {
             order.addItem(item);
         }
+        Order created = transactionTemplate.execute(status -> orderRepository.save(order));
+        Long orderId = created.getId();
         
-        order = orderRepository.save(order);
+        // Резервируем товары заказа одним пакетным запросом. Не вышло — заказа нет;
+        // резерв, дошедший до склада несмотря на ошибку, снимется по истечении срока
+        List<ServiceClients.StockRequest> stockRequests = toStockRequests(orderId, orderItems);
+        try {
+            serviceClients.reserveOrderStock(stockRequests);
+        } catch (RuntimeException e) {
+            transactionTemplate.executeWithoutResult(status -> orderRepository.deleteById(orderId));
+            throw e;
+        }
         
-        // Отправляем уведомление
-        serviceClients.sendNotification(new ServiceClients.NotificationRequest(
-                userId,
-                "ORDER_CREATED",
-                "Order Created",
-                "Your order #" + order.getId() + " has been created successfully!"
-        ));
+        // Короткая локальная транзакция: статус заказа и уведомление в outbox фиксируются вместе.
+        // Если сохранить не удалось, снимаем резерв и удаляем заказ, как при неудачном резерве
+        try {
+            created = transactionTemplate.execute(status -> {
+                Order saved = orderRepository.findWithItemsById(orderId)
+                        .orElseThrow(() -> new RuntimeException("Order not found"));
+                saved.setStatus(OrderStatus.PENDING);
+                saved.setStockPinned(false);
+                notificationOutbox.enqueue(saved.getId(), new ServiceClients.NotificationRequest(
+                        userId,
+                        "ORDER_CREATED",
+                        "Order Created",
+                        "Your order #" + saved.getId() + " has been created successfully!"
+                ));
+                return saved;
+            });
+        } catch (RuntimeException e) {
+            log.error("Failed to save order {} for user {}, releasing reserved stock", orderId, userId, e);
+            discard(orderId, stockRequests);
+            throw e;
+        }
+        reservationPinner.pin(List.of(created));
         
-        return toDto(order);
+        return toDto(created);
     }
     
+    // Асинхронный приём: только запись заказа, без обращений к соседним сервисам.
+    // Цены и наличие проставит OrderAcceptanceProcessor, до этого суммы нулевые
+    @Transactional
+    public OrderDto acceptOrder(Long userId, CreateOrderRequest request) {
+        Order order = Order.builder()
+                .userId(userId)
+                .status(OrderStatus.PENDING_VALIDATION)
+                .synchronousCreation(false)
+                .totalAmount(BigDecimal.ZERO)
+                .shippingAddress(request.getShippingAddress())
+                .items(new ArrayList<>())
+                .build();
+        
+        for (OrderItemRequest itemRequest : request.getItems()) {
+            order.addItem(OrderItem.builder()
+                    .productId(itemRequest.getProductId())
+                    .quantity(itemRequest.getQuantity())
+                    .price(BigDecimal.ZERO)
+                    .build());
+        }
+        
+        return toDto(orderRepository.save(order));
+    }
+    
+    @Transactional(readOnly = true)
     public OrderDto getOrderById(Long orderId) {
         Order order = orderRepository.findById(orderId)
                 .orElseThrow(() -> new RuntimeException("Order not found"));
         return toDto(order);
     }
     
+    @Transactional(readOnly = true)
     public List<OrderDto> getOrdersByUserId(Long userId) {
         return orderRepository.findByUserIdOrderByCreatedAtDesc(userId).stream()
                 .map(this::toDto)
                 .collect(Collectors.toList());
     }
     
+    @Transactional(readOnly = true)
     public List<OrderDto> getAllOrders() {
-        return orderRepository.findAll().stream()
+        return orderRepository.findAllWithItemsByOrderByCreatedAtDesc().stream()
                 .map(this::toDto)
                 .collect(Collectors.toList());
     }
     
-    @Transactional
+    @Transactional(readOnly = true)
+    public OrderPageDto getOrdersPage(int page, int size) {
+        return toPageDto(orderRepository.findIds(pageRequest(page, size)));
+    }
+    
+    @Transactional(readOnly = true)
+    public OrderPageDto getOrdersPageByUserId(Long userId, int page, int size) {
+        return toPageDto(orderRepository.findIdsByUserId(userId, pageRequest(page, size)));
+    }
+    
+    // Keyset-пагинация: следующая страница начинается строго после (createdAt, id) последнего заказа
+    @Transactional(readOnly = true)
+    public OrderCursorPageDto getOrdersAfter(String cursor, int size) {
+        Pageable limit = PageRequest.of(0, clampSize(size));
+        if (cursor == null || cursor.isBlank()) {
+            return toCursorPageDto(orderRepository.findFirstIds(limit), limit);
+        }
+        OrderCursor after = OrderCursor.decode(cursor);
+        return toCursorPageDto(orderRepository.findIdsBefore(after.createdAt(), after.id(), limit), limit);
+    }
+    
+    @Transactional(readOnly = true)
+    public OrderCursorPageDto getOrdersByUserIdAfter(Long userId, String cursor, int size) {
+        Pageable limit = PageRequest.of(0, clampSize(size));
+        if (cursor == null || cursor.isBlank()) {
+            return toCursorPageDto(orderRepository.findFirstIdsByUserId(userId, limit), limit);
+        }
+        OrderCursor after = OrderCursor.decode(cursor);
+        return toCursorPageDto(
+                orderRepository.findIdsByUserIdBefore(userId, after.createdAt(), after.id(), limit), limit);
+    }
+    
     public OrderDto updateOrderStatus(Long orderId, OrderStatus newStatus) {
-        Order order = orderRepository.findById(orderId)
+        Order order = orderRepository.findWithItemsById(orderId)
                 .orElseThrow(() -> new RuntimeException("Order not found"));
+        return changeStatus(order, newStatus);
+    }
+    
+    // Массовая смена статуса: одна выборка заказов, один пакетный вызов склада и одна транзакция на сохранение.
+    // Если пакетный вызов склада не прошёл, заказы отправляются на склад по одному
+    public BulkStatusUpdateResponse updateOrderStatuses(List<Long> orderIds, OrderStatus newStatus) {
+        Set<Long> uniqueIds = new LinkedHashSet<>(orderIds);
+        Map<Long, Order> orders = orderRepository.findWithItemsByIdIn(uniqueIds).stream()
+                .collect(Collectors.toMap(Order::getId, Function.identity()));
+        Map<Long, BulkStatusUpdateResponse.Result> results = new HashMap<>();
         
-        OrderStatus oldStatus = order.getStatus();
-        order.setStatus(newStatus);
-        
-        // Если заказ подтверждён, снимаем резерв и списываем товары
-        if (newStatus == OrderStatus.CONFIRMED && oldStatus == OrderStatus.PENDING) {
-            for (OrderItem item : order.getItems()) {
-                serviceClients.confirmStock(item.getProductId(), item.getQuantity());
+        List<Order> accepted = new ArrayList<>();
+        for (Long orderId : uniqueIds) {
+            Order order = orders.get(orderId);
+            if (order == null) {
+                results.put(orderId, bulkFailure(orderId, null, newStatus, "Order not found"));
+            } else if (!order.getStatus().canTransitionTo(newStatus)) {
+                results.put(orderId, bulkFailure(orderId, order.getStatus(), newStatus,
+                        "Cannot change status from " + order.getStatus() + " to " + newStatus));
+            } else {
+                accepted.add(order);
             }
         }
         
-        // Если заказ отменён, освобождаем резерв
-        if (newStatus == OrderStatus.CANCELLED && oldStatus == OrderStatus.PENDING) {
-            for (OrderItem item : order.getItems()) {
-                serviceClients.releaseStock(item.getProductId(), item.getQuantity());
+        List<Order> adjusted = accepted.isEmpty() ? accepted : adjustInventory(accepted, newStatus, results);
+        if (!adjusted.isEmpty()) {
+            try {
+                saveStatuses(adjusted, newStatus, results);
+            } catch (RuntimeException e) {
+                log.error("Inventory was updated but {} orders could not be saved with status {}",
+                        adjusted.size(), newStatus, e);
+                for (Order order : adjusted) {
+                    results.put(order.getId(), stockAdjustedFailure(order.getId(), order.getStatus(), newStatus,
+                            e.getMessage()));
+                }
             }
         }
         
-        order = orderRepository.save(order);
-        
-        // Отправляем уведомление
-        serviceClients.sendNotification(new ServiceClients.NotificationRequest(
-                order.getUserId(),
-                "ORDER_STATUS_CHANGED",
-                "Order Status Updated",
-                "Your order #" + order.getId() + " status changed to " + newStatus
-        ));
-        
-        return toDto(order);
+        List<BulkStatusUpdateResponse.Result> report = uniqueIds.stream()
+                .map(results::get)
+                .collect(Collectors.toList());
+        int succeeded = (int) report.stream().filter(BulkStatusUpdateResponse.Result::isSuccess).count();
+        return BulkStatusUpdateResponse.builder()
+                .succeeded(succeeded)
+                .failed(report.size() - succeeded)
+                .results(report)
+                .build();
     }
     
-    @Transactional
     public OrderDto cancelOrder(Long orderId, Long userId) {
-        Order order = orderRepository.findById(orderId)
+        Order order = orderRepository.findWithItemsById(orderId)
                 .orElseThrow(() -> new RuntimeException("Order not found"));
         
         if (!order.getUserId().equals(userId)) {
@@ -151,7 +247,210 @@ public class OrderService {
             throw new RuntimeException("Only pending orders can be cancelled");
         }
         
-        return updateOrderStatus(orderId, OrderStatus.CANCELLED);
+        return changeStatus(order, OrderStatus.CANCELLED);
+    }
+    
+    private OrderDto changeStatus(Order order, OrderStatus newStatus) {
+        OrderStatus oldStatus = order.getStatus();
+        order.setStatus(newStatus);
+        
+        // Если заказ подтверждён, снимаем резерв и списываем товары
+        if (newStatus == OrderStatus.CONFIRMED && oldStatus == OrderStatus.PENDING) {
+            serviceClients.confirmOrderStock(toStockRequests(order.getId(), order.getItems()));
+        }
+        
+        // Если заказ отменён, освобождаем резерв
+        if (newStatus == OrderStatus.CANCELLED && oldStatus == OrderStatus.PENDING) {
+            serviceClients.releaseOrderStock(toStockRequests(order.getId(), order.getItems()));
+        }
+        
+        Order saved;
+        try {
+            saved = transactionTemplate.execute(status -> {
+                Order updated = orderRepository.save(order);
+                notificationOutbox.enqueue(updated.getId(), new ServiceClients.NotificationRequest(
+                        updated.getUserId(),
+                        "ORDER_STATUS_CHANGED",
+                        "Order Status Updated",
+                        "Your order #" + updated.getId() + " status changed to " + newStatus
+                ));
+                return updated;
+            });
+        } catch (RuntimeException e) {
+            log.error("Inventory was updated but order {} could not be saved with status {}",
+                    order.getId(), newStatus, e);
+            throw e;
+        }
+        
+        return toDto(saved);
+    }
+    
+    // Все переходы из PENDING в одном направлении, поэтому позиции всех заказов уходят одним запросом к складу.
+    // Склад применяет пакет целиком или никак; при ошибке каждый заказ повторяется отдельно, чтобы один
+    // плохой заказ не проваливал остальные. Возвращает заказы, по которым склад отработал
+    private List<Order> adjustInventory(List<Order> orders, OrderStatus newStatus,
+                                        Map<Long, BulkStatusUpdateResponse.Result> results) {
+        if (newStatus != OrderStatus.CONFIRMED && newStatus != OrderStatus.CANCELLED) {
+            return orders;
+        }
+        try {
+            adjustStock(orders, newStatus);
+            return orders;
+        } catch (RuntimeException e) {
+            log.warn("Bulk inventory update to {} failed for {} orders, retrying one by one",
+                    newStatus, orders.size(), e);
+        }
+        
+        List<Order> adjusted = new ArrayList<>();
+        for (Order order : orders) {
+            try {
+                adjustStock(List.of(order), newStatus);
+                adjusted.add(order);
+            } catch (RuntimeException e) {
+                log.error("Inventory update to {} failed for order {}", newStatus, order.getId(), e);
+                results.put(order.getId(), bulkFailure(order.getId(), order.getStatus(), newStatus, e.getMessage()));
+            }
+        }
+        return adjusted;
+    }
+    
+    private void adjustStock(List<Order> orders, OrderStatus newStatus) {
+        List<ServiceClients.StockRequest> items = orders.stream()
+                .flatMap(order -> toStockRequests(order.getId(), order.getItems()).stream())
+                .collect(Collectors.toList());
+        if (newStatus == OrderStatus.CONFIRMED) {
+            serviceClients.confirmOrderStock(items);
+        } else {
+            serviceClients.releaseOrderStock(items);
+        }
+    }
+    
+    // Заказы перечитываются в транзакции, изменения уходят пакетными UPDATE при коммите.
+    // Заказ, сменивший статус после вызова склада, не перезаписывается: склад обратно не откатить,
+    // поэтому такой заказ возвращается с признаком stockAdjusted для ручной сверки
+    private void saveStatuses(List<Order> orders, OrderStatus newStatus,
+                              Map<Long, BulkStatusUpdateResponse.Result> results) {
+        Map<Long, OrderStatus> expected = orders.stream()
+                .collect(Collectors.toMap(Order::getId, Order::getStatus));
+        
+        transactionTemplate.executeWithoutResult(status -> {
+            for (Order order : orderRepository.findAllById(expected.keySet())) {
+                OrderStatus previous = expected.get(order.getId());
+                if (order.getStatus() != previous) {
+                    log.error("Inventory was updated but order {} changed concurrently to {}",
+                            order.getId(), order.getStatus());
+                    results.put(order.getId(), stockAdjustedFailure(order.getId(), previous, newStatus,
+                            "Order status changed concurrently to " + order.getStatus()));
+                    continue;
+                }
+                order.setStatus(newStatus);
+                notificationOutbox.enqueue(order.getId(), new ServiceClients.NotificationRequest(
+                        order.getUserId(),
+                        "ORDER_STATUS_CHANGED",
+                        "Order Status Updated",
+                        "Your order #" + order.getId() + " status changed to " + newStatus
+                ));
+                results.put(order.getId(), BulkStatusUpdateResponse.Result.builder()
+                        .orderId(order.getId())
+                        .success(true)
+                        .previousStatus(previous)
+                        .status(newStatus)
+                        .build());
+            }
+        });
+    }
+    
+    private BulkStatusUpdateResponse.Result bulkFailure(Long orderId, OrderStatus previous,
+                                                        OrderStatus newStatus, String error) {
+        return BulkStatusUpdateResponse.Result.builder()
+                .orderId(orderId)
+                .success(false)
+                .previousStatus(previous)
+                .status(previous)
+                .error(error)
+                .build();
+    }
+    
+    private BulkStatusUpdateResponse.Result stockAdjustedFailure(Long orderId, OrderStatus previous,
+                                                                 OrderStatus newStatus, String error) {
+        BulkStatusUpdateResponse.Result result = bulkFailure(orderId, previous, newStatus, error);
+        result.setStockAdjusted(newStatus == OrderStatus.CONFIRMED || newStatus == OrderStatus.CANCELLED);
+        return result;
+    }
+    
+    private Pageable pageRequest(int page, int size) {
+        if (page < 0) {
+            throw new RuntimeException("Page index must not be negative");
+        }
+        return PageRequest.of(page, clampSize(size),
+                Sort.by(Sort.Direction.DESC, "createdAt").and(Sort.by(Sort.Direction.DESC, "id")));
+    }
+    
+    private int clampSize(int size) {
+        if (size < 1) {
+            throw new RuntimeException("Page size must be positive");
+        }
+        return Math.min(size, MAX_PAGE_SIZE);
+    }
+    
+    // Сначала выбирается страница ID, затем заказы с позициями одним запросом через entity graph
+    private List<Order> loadWithItems(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return List.of();
+        }
+        Map<Long, Order> byId = orderRepository.findWithItemsByIdIn(ids).stream()
+                .collect(Collectors.toMap(Order::getId, Function.identity()));
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+    
+    private OrderPageDto toPageDto(Page<Long> ids) {
+        return OrderPageDto.builder()
+                .items(loadWithItems(ids.getContent()).stream().map(this::toDto).collect(Collectors.toList()))
+                .page(ids.getNumber())
+                .size(ids.getSize())
+                .totalElements(ids.getTotalElements())
+                .totalPages(ids.getTotalPages())
+                .build();
+    }
+    
+    private OrderCursorPageDto toCursorPageDto(List<Long> ids, Pageable limit) {
+        List<Order> orders = loadWithItems(ids);
+        String nextCursor = null;
+        if (ids.size() == limit.getPageSize() && !orders.isEmpty()) {
+            Order last = orders.get(orders.size() - 1);
+            nextCursor = new OrderCursor(last.getCreatedAt(), last.getId()).encode();
+        }
+        return OrderCursorPageDto.builder()
+                .items(orders.stream().map(this::toDto).collect(Collectors.toList()))
+                .nextCursor(nextCursor)
+                .build();
+    }
+    
+    // Ошибки компенсации не заменяют исходную: резерв истечёт сам, заказ удалит PendingOrderCleanup
+    private void discard(Long orderId, List<ServiceClients.StockRequest> stockRequests) {
+        try {
+            serviceClients.releaseOrderStock(stockRequests);
+        } catch (RuntimeException e) {
+            log.warn("Failed to release stock of order {}", orderId, e);
+        }
+        try {
+            transactionTemplate.executeWithoutResult(status -> orderRepository.deleteById(orderId));
+        } catch (RuntimeException e) {
+            log.warn("Failed to delete order {}", orderId, e);
+        }
+    }
+    
+    private List<ServiceClients.StockRequest> toStockRequests(Long orderId, List<OrderItem> items) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItem item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities.entrySet().stream()
+                .map(entry -> new ServiceClients.StockRequest(orderId, entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
     }
     
     private OrderDto toDto(Order order) {
@@ -170,6 +469,7 @@ public class OrderService {
                 .id(order.getId())
                 .userId(order.getUserId())
                 .status(order.getStatus())
+                .statusReason(order.getStatusReason())
                 .totalAmount(order.getTotalAmount())
                 .shippingAddress(order.getShippingAddress())
                 .items(itemDtos)
@@ -0,0 +1,72 @@
+package com.shop.order.service;
+
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Удаление заказов, которые синхронный OrderService.createOrder записал в PENDING_VALIDATION
+ * и не довёл до PENDING (инстанс упал между резервом и сменой статуса).
+ *
+ * Клиент такой заказ не получил, поэтому он удаляется так же, как при неудачном резерве;
+ * резерв, если он дошёл до склада, снимается там по истечении срока. Берутся только заказы
+ * с признаком synchronousCreation: при асинхронном приёме PENDING_VALIDATION — обычное состояние
+ * заказа в очереди, такие заказы повторно проверяет OrderAcceptanceQueue, на каком бы инстансе
+ * и с какими настройками они ни были записаны.
+ */
+@Component
+@Profile("!reactive")
+@Slf4j
+public class PendingOrderCleanup {
+    
+    private final OrderRepository orderRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration staleAfter;
+    private final int batchSize;
+    
+    public PendingOrderCleanup(
+            OrderRepository orderRepository,
+            TransactionTemplate transactionTemplate,
+            @Value("${orders.pending-cleanup.stale-after:10m}") Duration staleAfter,
+            @Value("${orders.pending-cleanup.batch-size:100}") int batchSize) {
+        this.orderRepository = orderRepository;
+        this.transactionTemplate = transactionTemplate;
+        this.staleAfter = staleAfter;
+        this.batchSize = batchSize;
+    }
+    
+    // Заказ удаляет только инстанс, чей условный UPDATE его забрал
+    @Scheduled(fixedDelayString = "${orders.pending-cleanup.interval:PT1M}")
+    public void deleteStale() {
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime before = now.minus(staleAfter);
+        List<Long> stale = orderRepository.findIdsByStatusUpdatedBefore(
+                OrderStatus.PENDING_VALIDATION, true, before, PageRequest.of(0, batchSize));
+        for (Long orderId : stale) {
+            try {
+                Boolean deleted = transactionTemplate.execute(status -> {
+                    if (orderRepository.claimStale(orderId, OrderStatus.PENDING_VALIDATION, before, now) != 1) {
+                        return false;
+                    }
+                    orderRepository.deleteById(orderId);
+                    return true;
+                });
+                if (Boolean.TRUE.equals(deleted)) {
+                    log.warn("Deleted order {} stuck in {}", orderId, OrderStatus.PENDING_VALIDATION);
+                }
+            } catch (RuntimeException e) {
+                log.error("Failed to delete stale order {}", orderId, e);
+            }
+        }
+    }
+}
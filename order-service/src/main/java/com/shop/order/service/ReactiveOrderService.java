@@ -0,0 +1,224 @@
+package com.shop.order.service;
+
+import com.shop.order.client.ServiceClients;
+import com.shop.order.dto.CreateOrderRequest;
+import com.shop.order.dto.OrderDto;
+import com.shop.order.dto.OrderItemDto;
+import com.shop.order.model.OrderItem;
+import com.shop.order.model.OrderItemRecord;
+import com.shop.order.model.OrderRecord;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.OrderItemRecordRepository;
+import com.shop.order.repository.OrderRecordRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+@Service
+@Profile("reactive")
+@RequiredArgsConstructor
+@Slf4j
+public class ReactiveOrderService {
+    
+    private final OrderRecordRepository orderRepository;
+    private final OrderItemRecordRepository orderItemRepository;
+    private final ServiceClients serviceClients;
+    private final OrderItemResolver orderItemResolver;
+    private final TransactionalOperator transactionalOperator;
+    
+    public Mono<OrderDto> createOrder(Long userId, CreateOrderRequest request) {
+        return orderItemResolver.resolveAsync(request.getItems())
+                .flatMap(orderItems -> {
+                    List<ServiceClients.StockRequest> stockRequests = toStockRequests(orderItems);
+                    return serviceClients.reserveStockBatchAsync(stockRequests)
+                            .then(saveOrder(userId, request.getShippingAddress(), orderItems)
+                                    // Если сохранить не удалось, снимаем резерв
+                                    .onErrorResume(e -> {
+                                        log.error("Failed to save order for user {}, releasing reserved stock", userId, e);
+                                        return serviceClients.releaseStockBatchAsync(stockRequests).then(Mono.error(e));
+                                    }));
+                })
+                .doOnNext(order -> serviceClients.sendNotification(new ServiceClients.NotificationRequest(
+                        userId,
+                        "ORDER_CREATED",
+                        "Order Created",
+                        "Your order #" + order.getId() + " has been created successfully!"
+                )));
+    }
+    
+    public Mono<OrderDto> getOrderById(Long orderId) {
+        return findOrder(orderId)
+                .flatMap(order -> orderItemRepository.findByOrderId(orderId).collectList()
+                        .map(items -> toDto(order, items)));
+    }
+    
+    public Flux<OrderDto> getOrdersByUserId(Long userId) {
+        return withItems(orderRepository.findByUserIdOrderByCreatedAtDesc(userId));
+    }
+    
+    public Flux<OrderDto> getAllOrders() {
+        return withItems(orderRepository.findAll());
+    }
+    
+    public Mono<OrderDto> updateOrderStatus(Long orderId, OrderStatus newStatus) {
+        return findOrder(orderId)
+                .flatMap(order -> changeStatus(order, newStatus));
+    }
+    
+    public Mono<OrderDto> cancelOrder(Long orderId, Long userId) {
+        return findOrder(orderId)
+                .flatMap(order -> {
+                    if (!order.getUserId().equals(userId)) {
+                        return Mono.error(new RuntimeException("Not authorized to cancel this order"));
+                    }
+                    if (order.getStatus() != OrderStatus.PENDING) {
+                        return Mono.error(new RuntimeException("Only pending orders can be cancelled"));
+                    }
+                    return changeStatus(order, OrderStatus.CANCELLED);
+                });
+    }
+    
+    private Mono<OrderDto> changeStatus(OrderRecord order, OrderStatus newStatus) {
+        OrderStatus oldStatus = order.getStatus();
+        
+        return orderItemRepository.findByOrderId(order.getId()).collectList()
+                .flatMap(items -> {
+                    Mono<Void> inventoryUpdate = Mono.empty();
+                    
+                    // Если заказ подтверждён, снимаем резерв и списываем товары
+                    if (newStatus == OrderStatus.CONFIRMED && oldStatus == OrderStatus.PENDING) {
+                        inventoryUpdate = serviceClients.confirmOrderStockAsync(toStockRequests(order.getId(), items));
+                    }
+                    
+                    // Если заказ отменён, освобождаем резерв
+                    if (newStatus == OrderStatus.CANCELLED && oldStatus == OrderStatus.PENDING) {
+                        inventoryUpdate = serviceClients.releaseOrderStockAsync(toStockRequests(order.getId(), items));
+                    }
+                    
+                    order.setStatus(newStatus);
+                    order.setUpdatedAt(LocalDateTime.now());
+                    return inventoryUpdate
+                            .then(orderRepository.save(order))
+                            .map(saved -> toDto(saved, items));
+                })
+                .doOnNext(saved -> serviceClients.sendNotification(new ServiceClients.NotificationRequest(
+                        saved.getUserId(),
+                        "ORDER_STATUS_CHANGED",
+                        "Order Status Updated",
+                        "Your order #" + saved.getId() + " status changed to " + newStatus
+                )));
+    }
+    
+    private Mono<OrderDto> saveOrder(Long userId, String shippingAddress, List<OrderItem> orderItems) {
+        BigDecimal totalAmount = orderItems.stream()
+                .map(OrderItem::getSubtotal)
+                .reduce(BigDecimal.ZERO, BigDecimal::add);
+        LocalDateTime now = LocalDateTime.now();
+        
+        OrderRecord order = OrderRecord.builder()
+                .userId(userId)
+                .status(OrderStatus.PENDING)
+                .totalAmount(totalAmount)
+                .shippingAddress(shippingAddress)
+                .createdAt(now)
+                .updatedAt(now)
+                .build();
+        
+        // Заказ и позиции сохраняются в одной короткой транзакции
+        return orderRepository.save(order)
+                .flatMap(saved -> orderItemRepository.saveAll(orderItems.stream()
+                                .map(item -> OrderItemRecord.builder()
+                                        .orderId(saved.getId())
+                                        .productId(item.getProductId())
+                                        .productName(item.getProductName())
+                                        .quantity(item.getQuantity())
+                                        .price(item.getPrice())
+                                        .build())
+                                .collect(Collectors.toList()))
+                        .collectList()
+                        .map(items -> toDto(saved, items)))
+                .as(transactionalOperator::transactional);
+    }
+    
+    private Mono<OrderRecord> findOrder(Long orderId) {
+        return orderRepository.findById(orderId)
+                .switchIfEmpty(Mono.error(new RuntimeException("Order not found")));
+    }
+    
+    // Позиции всех заказов загружаются одним запросом
+    private Flux<OrderDto> withItems(Flux<OrderRecord> orders) {
+        return orders.collectList()
+                .flatMapMany(orderList -> {
+                    if (orderList.isEmpty()) {
+                        return Flux.empty();
+                    }
+                    List<Long> orderIds = orderList.stream().map(OrderRecord::getId).collect(Collectors.toList());
+                    return orderItemRepository.findByOrderIdIn(orderIds)
+                            .collectMultimap(OrderItemRecord::getOrderId)
+                            .flatMapMany(itemsByOrder -> Flux.fromIterable(orderList)
+                                    .map(order -> toDto(order, List.copyOf(
+                                            itemsByOrder.getOrDefault(order.getId(), List.of())))));
+                });
+    }
+    
+    private List<ServiceClients.StockRequest> toStockRequests(List<OrderItem> items) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItem item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return toStockRequests(quantities);
+    }
+    
+    // Подтверждение и снятие идут через резервы по заказам: у заказов, созданных здесь пакетным
+    // резервом, записей резерва нет, и склад применяет переданные количества
+    private List<ServiceClients.StockRequest> toStockRequests(Long orderId, List<OrderItemRecord> items) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItemRecord item : items) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities.entrySet().stream()
+                .map(entry -> new ServiceClients.StockRequest(orderId, entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+    
+    private List<ServiceClients.StockRequest> toStockRequests(Map<Long, Integer> quantities) {
+        return quantities.entrySet().stream()
+                .map(entry -> new ServiceClients.StockRequest(entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+    
+    private OrderDto toDto(OrderRecord order, List<OrderItemRecord> items) {
+        List<OrderItemDto> itemDtos = items.stream()
+                .map(item -> OrderItemDto.builder()
+                        .id(item.getId())
+                        .productId(item.getProductId())
+                        .productName(item.getProductName())
+                        .quantity(item.getQuantity())
+                        .price(item.getPrice())
+                        .subtotal(item.getSubtotal())
+                        .build())
+                .collect(Collectors.toList());
+        
+        return OrderDto.builder()
+                .id(order.getId())
+                .userId(order.getUserId())
+                .status(order.getStatus())
+                .totalAmount(order.getTotalAmount())
+                .shippingAddress(order.getShippingAddress())
+                .items(itemDtos)
+                .createdAt(order.getCreatedAt())
+                .updatedAt(order.getUpdatedAt())
+                .build();
+    }
+}
@@ -0,0 +1,90 @@
+package com.shop.order.service;
+
+import com.shop.order.client.ServiceClients;
+import com.shop.order.model.Order;
+import com.shop.order.model.OrderItem;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.OrderRepository;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Profile;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Закрепление резерва склада за заказом, дошедшим до PENDING.
+ *
+ * Резерв на складе истекает через inventory.reservations.hold-for, чтобы остаток брошенных заказов
+ * не висел вечно. Принятый заказ переходит в PENDING с stockPinned = false, после коммита склад
+ * снимает срок с его резерва, и заказ помечается закреплённым. Если склад не ответил, заказ
+ * закрепляется повторно фоновым проходом, пока резерв не истёк.
+ */
+@Component
+@Profile("!reactive")
+@Slf4j
+public class ReservationPinner {
+    
+    private final OrderRepository orderRepository;
+    private final ServiceClients serviceClients;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration retryAfter;
+    private final int batchSize;
+    
+    public ReservationPinner(
+            OrderRepository orderRepository,
+            ServiceClients serviceClients,
+            TransactionTemplate transactionTemplate,
+            @Value("${orders.stock-pin.retry-after:30s}") Duration retryAfter,
+            @Value("${orders.stock-pin.batch-size:100}") int batchSize) {
+        this.orderRepository = orderRepository;
+        this.serviceClients = serviceClients;
+        this.transactionTemplate = transactionTemplate;
+        this.retryAfter = retryAfter;
+        this.batchSize = batchSize;
+    }
+    
+    // Ошибка не пробрасывается: заказ уже принят, незакреплённый резерв подберёт pinStale
+    public void pin(Collection<Order> orders) {
+        if (orders.isEmpty()) {
+            return;
+        }
+        List<Long> ids = orders.stream().map(Order::getId).collect(Collectors.toList());
+        try {
+            serviceClients.pinOrderStock(orders.stream()
+                    .flatMap(order -> toStockRequests(order).stream())
+                    .collect(Collectors.toList()));
+            transactionTemplate.executeWithoutResult(status -> orderRepository.markStockPinned(ids));
+        } catch (RuntimeException e) {
+            log.warn("Failed to pin stock reservations of orders {}, will retry", ids, e);
+        }
+    }
+    
+    @Scheduled(fixedDelayString = "${orders.stock-pin.interval:PT30S}")
+    public void pinStale() {
+        List<Long> unpinned = orderRepository.findUnpinnedIdsByStatusUpdatedBefore(
+                OrderStatus.PENDING, LocalDateTime.now().minus(retryAfter), PageRequest.of(0, batchSize));
+        if (!unpinned.isEmpty()) {
+            pin(orderRepository.findWithItemsByIdIn(unpinned));
+        }
+    }
+    
+    private List<ServiceClients.StockRequest> toStockRequests(Order order) {
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (OrderItem item : order.getItems()) {
+            quantities.merge(item.getProductId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities.entrySet().stream()
+                .map(entry -> new ServiceClients.StockRequest(order.getId(), entry.getKey(), entry.getValue()))
+                .collect(Collectors.toList());
+    }
+}
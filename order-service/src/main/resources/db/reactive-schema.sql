@@ -0,0 +1,28 @@
+-- Схема для реактивного профиля; совпадает с таблицами, которые создаёт JPA.
+-- id берутся из тех же последовательностей, что и у JPA: nextval занимает целый блок из 50,
+-- поэтому значения не пересекаются с блоками, выданными JPA-инстансам
+CREATE SEQUENCE IF NOT EXISTS orders_seq START WITH 1 INCREMENT BY 50;
+CREATE SEQUENCE IF NOT EXISTS order_items_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE IF NOT EXISTS orders (
+    id BIGINT DEFAULT nextval('orders_seq') PRIMARY KEY,
+    user_id BIGINT NOT NULL,
+    status VARCHAR(255) NOT NULL,
+    total_amount NUMERIC(38, 2) NOT NULL,
+    shipping_address VARCHAR(255),
+    created_at TIMESTAMP(6),
+    updated_at TIMESTAMP(6)
+);
+
+CREATE TABLE IF NOT EXISTS order_items (
+    id BIGINT DEFAULT nextval('order_items_seq') PRIMARY KEY,
+    order_id BIGINT NOT NULL REFERENCES orders (id),
+    product_id BIGINT NOT NULL,
+    product_name VARCHAR(255),
+    quantity INTEGER NOT NULL,
+    price NUMERIC(38, 2) NOT NULL
+);
+
+CREATE INDEX IF NOT EXISTS idx_orders_user_created ON orders (user_id, created_at);
+CREATE INDEX IF NOT EXISTS idx_orders_created ON orders (created_at);
+CREATE INDEX IF NOT EXISTS idx_order_items_order ON order_items (order_id);
@@ -0,0 +1,104 @@
+package client;
+
+import com.shop.order.client.DownstreamProperties;
+import com.shop.order.client.DownstreamWebClients;
+import com.sun.net.httpserver.HttpServer;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Юнит-тест для DownstreamWebClients
+ *
+ * Тестирует:
+ * - Circuit breaker перестаёт вызывать сервис, который отвечает 5xx
+ * - Bulkhead отклоняет вызовы сверх лимита одновременных
+ */
+class DownstreamWebClientsTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final AtomicInteger hits = new AtomicInteger();
+    private HttpServer server;
+    private volatile int status = 500;
+    private volatile long delayMillis = 0;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.createContext("/", exchange -> {
+            hits.incrementAndGet();
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop(0);
+    }
+
+    @Test
+    void create_DownstreamFailing_CircuitBreakerFailsFast() {
+        // Arrange (окно из двух вызовов, оба с ошибкой 5xx)
+        DownstreamProperties.Downstream settings = settings();
+        settings.getCircuitBreaker().setSlidingWindowSize(2);
+        settings.getCircuitBreaker().setMinimumNumberOfCalls(2);
+        WebClient client = new DownstreamWebClients(meterRegistry).create("failing-service", settings);
+
+        // Act
+        assertThrows(WebClientResponseException.class, () -> call(client));
+        assertThrows(WebClientResponseException.class, () -> call(client));
+
+        // Assert (третий вызов отклонён без обращения к сервису)
+        assertThrows(CallNotPermittedException.class, () -> call(client));
+        assertEquals(2, hits.get());
+        assertEquals(1.0, meterRegistry.get("resilience4j.circuitbreaker.state")
+                .tag("name", "failing-service").tag("state", "open").gauge().value());
+    }
+
+    @Test
+    void create_TooManyConcurrentCalls_BulkheadRejectsExtraCall() {
+        // Arrange (сервис отвечает медленно, одновременно разрешён один вызов)
+        status = 200;
+        delayMillis = 500;
+        DownstreamProperties.Downstream settings = settings();
+        settings.getBulkhead().setMaxConcurrentCalls(1);
+        WebClient client = new DownstreamWebClients(meterRegistry).create("slow-service", settings);
+
+        // Act
+        Mono<Void> first = client.get().uri("/").retrieve().bodyToMono(Void.class);
+        Mono<Void> second = client.get().uri("/").retrieve().bodyToMono(Void.class);
+
+        // Assert
+        assertThrows(BulkheadFullException.class, () -> Mono.when(first, second).block());
+    }
+
+    private DownstreamProperties.Downstream settings() {
+        DownstreamProperties.Downstream settings = new DownstreamProperties.Downstream();
+        settings.setUrl("http://localhost:" + server.getAddress().getPort());
+        return settings;
+    }
+
+    private void call(WebClient client) {
+        client.get().uri("/").retrieve().bodyToMono(Void.class).block();
+    }
+}
@@ -0,0 +1,118 @@
+package client;
+
+import com.shop.order.client.DownstreamProperties;
+import com.shop.order.client.HedgingClient;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Юнит-тест для HedgingClient
+ *
+ * Тестирует:
+ * - Медленный инстанс: ответ берётся у резервного запроса
+ * - Исчерпанный бюджет: резервный запрос не отправляется
+ * - Отменённый медленный запрос учитывается в задержках
+ * - Один инстанс: запрос не хеджируется
+ */
+class HedgingClientTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void execute_SlowPrimary_ReturnsBackupAnswer() {
+        // Arrange (основной инстанс отвечает за 10 с, резервный — сразу)
+        AtomicInteger backupCalls = new AtomicInteger();
+        HedgingClient client = new HedgingClient("inventory-service",
+                List.of(instance("slow", Duration.ofSeconds(10), new AtomicInteger()),
+                        instance("fast", Duration.ZERO, backupCalls)),
+                hedging(1.0), meterRegistry);
+
+        // Act
+        long start = System.nanoTime();
+        String result = client.execute(this::get).block();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        // Assert
+        assertEquals("fast", result);
+        assertEquals(1, backupCalls.get());
+        assertTrue(elapsed.compareTo(Duration.ofSeconds(5)) < 0, "Took " + elapsed);
+        assertEquals(1.0, meterRegistry.get("hedging.wins").counter().count());
+
+        // Отменённый основной запрос тоже записан, и его задержка не меньше задержки хеджирования.
+        // doFinally срабатывает уже после того, как ответ отдан подписчику, поэтому запись ждём
+        Timer latency = meterRegistry.get("hedging.latency").timer();
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (latency.count() < 2 && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(2, latency.count());
+        assertTrue(latency.max(TimeUnit.MILLISECONDS) >= 50, "Max " + latency.max(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    void execute_SingleInstance_DoesNotHedge() {
+        // Arrange (резервный запрос ушёл бы на тот же инстанс)
+        AtomicInteger calls = new AtomicInteger();
+        HedgingClient client = new HedgingClient("inventory-service",
+                List.of(instance("slow", Duration.ofMillis(300), calls)),
+                hedging(1.0), meterRegistry);
+
+        // Act
+        String result = client.execute(this::get).block();
+
+        // Assert
+        assertEquals("slow", result);
+        assertEquals(1, calls.get());
+        assertEquals(0.0, meterRegistry.get("hedging.requests").counter().count());
+    }
+
+    @Test
+    void execute_BudgetExhausted_WaitsForPrimary() {
+        // Arrange (бюджет не пополняется)
+        AtomicInteger backupCalls = new AtomicInteger();
+        HedgingClient client = new HedgingClient("inventory-service",
+                List.of(instance("slow", Duration.ofMillis(300), new AtomicInteger()),
+                        instance("fast", Duration.ZERO, backupCalls)),
+                hedging(0.0), meterRegistry);
+
+        // Act
+        String result = client.execute(this::get).block();
+
+        // Assert
+        assertEquals("slow", result);
+        assertEquals(0, backupCalls.get());
+        assertEquals(1.0, meterRegistry.get("hedging.budget.exhausted").counter().count());
+    }
+
+    private DownstreamProperties.Hedging hedging(double budgetRatio) {
+        DownstreamProperties.Hedging hedging = new DownstreamProperties.Hedging();
+        hedging.setEnabled(true);
+        hedging.setMaxDelay(Duration.ofMillis(50));
+        hedging.setBudgetRatio(budgetRatio);
+        return hedging;
+    }
+
+    private Mono<String> get(WebClient client) {
+        return client.get().uri("/api/inventory/check/1").retrieve().bodyToMono(String.class);
+    }
+
+    private WebClient instance(String body, Duration delay, AtomicInteger calls) {
+        return WebClient.builder()
+                .exchangeFunction(request -> Mono.delay(delay)
+                        .doOnNext(tick -> calls.incrementAndGet())
+                        .map(tick -> ClientResponse.create(HttpStatus.OK).body(body).build()))
+                .build();
+    }
+}
@@ -0,0 +1,89 @@
+package client;
+
+import com.shop.order.client.ProductCache;
+import com.shop.order.client.ServiceClients;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Юнит-тест для ProductCache
+ *
+ * Тестирует:
+ * - Объединение параллельных промахов в одну загрузку
+ * - Отдачу устаревшей записи, когда product-service недоступен
+ */
+class ProductCacheTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    void getAll_ConcurrentMisses_LoadOnce() {
+        // Arrange (загрузка отвечает с задержкой, чтобы запросы пересеклись)
+        AtomicInteger loads = new AtomicInteger();
+        ProductCache cache = new ProductCache(
+                ids -> Mono.fromSupplier(() -> {
+                    loads.incrementAndGet();
+                    return products(ids);
+                }).delayElement(Duration.ofMillis(100)),
+                100, Duration.ofMinutes(1), Duration.ofMinutes(10), meterRegistry);
+
+        // Act
+        List<Map<Long, ServiceClients.ProductResponse>> results = Mono.zip(
+                        cache.getAll(List.of(1L, 2L)),
+                        cache.getAll(List.of(1L, 2L)),
+                        cache.getAll(List.of(2L)))
+                .map(tuple -> List.of(tuple.getT1(), tuple.getT2(), tuple.getT3()))
+                .block();
+
+        // Assert
+        assertEquals(1, loads.get());
+        assertEquals("Product 1", results.get(0).get(1L).getName());
+        assertEquals("Product 2", results.get(2).get(2L).getName());
+    }
+
+    @Test
+    void getAll_ServiceDownAfterTtl_ServesStaleEntry() throws InterruptedException {
+        // Arrange
+        AtomicBoolean serviceDown = new AtomicBoolean(false);
+        ProductCache cache = new ProductCache(
+                ids -> serviceDown.get()
+                        ? Mono.error(new RuntimeException("product-service unavailable"))
+                        : Mono.just(products(ids)),
+                100, Duration.ofMillis(50), Duration.ofMinutes(10), meterRegistry);
+        cache.getAll(List.of(1L)).block();
+        double staleBefore = meterRegistry.get("product.cache.stale.served").counter().count();
+
+        // Act (TTL истёк, сервис недоступен)
+        serviceDown.set(true);
+        Thread.sleep(100);
+        Map<Long, ServiceClients.ProductResponse> first = cache.getAll(List.of(1L)).block();
+        Map<Long, ServiceClients.ProductResponse> second = cache.getAll(List.of(1L)).block();
+
+        // Assert
+        assertEquals("Product 1", first.get(1L).getName());
+        assertEquals("Product 1", second.get(1L).getName());
+        assertEquals(2.0, meterRegistry.get("product.cache.stale.served").counter().count() - staleBefore);
+    }
+
+    private Map<Long, ServiceClients.ProductResponse> products(Set<Long> ids) {
+        return ids.stream().collect(Collectors.toMap(id -> id, id -> {
+            ServiceClients.ProductResponse product = new ServiceClients.ProductResponse();
+            product.setId(id);
+            product.setName("Product " + id);
+            product.setPrice(new BigDecimal("10.00"));
+            return product;
+        }));
+    }
+}
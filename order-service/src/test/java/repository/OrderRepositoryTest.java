@@ -0,0 +1,118 @@
+package repository;
+
+import com.shop.order.OrderServiceApplication;
+import com.shop.order.model.Order;
+import com.shop.order.model.OrderItem;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.OrderRepository;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Тест сохранения заказов на H2
+ *
+ * Тестирует:
+ * - Заказ с 30 позициями сохраняется пакетными INSERT, а не 31 отдельным запросом
+ * - Зависшие заказы синхронного и асинхронного приёма выбираются раздельно, заказ без признака — асинхронный
+ */
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@ContextConfiguration(classes = OrderServiceApplication.class)
+class OrderRepositoryTest {
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private EntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Прогреваем сессию и последовательности, чтобы считать только запросы сохранения
+        orderRepository.save(order(1));
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+    }
+
+    @Test
+    void save_OrderWithManyItems_UsesBatchedInserts() {
+        // Act
+        orderRepository.save(order(30));
+        entityManager.flush();
+
+        // Assert (INSERT заказа, один пакетный INSERT позиций и не больше одного nextval на последовательность)
+        assertEquals(31, statistics.getEntityInsertCount());
+        assertTrue(statistics.getPrepareStatementCount() <= 4,
+                "Expected at most 4 statements, got " + statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    void findIdsByStatusUpdatedBefore_SplitsSynchronousAndQueuedOrders() {
+        // Arrange
+        Long synchronous = pendingValidation(true);
+        Long queued = pendingValidation(false);
+        Long legacy = pendingValidation(null);
+        LocalDateTime before = LocalDateTime.now().plusMinutes(1);
+
+        // Act
+        List<Long> orphans = orderRepository.findIdsByStatusUpdatedBefore(
+                OrderStatus.PENDING_VALIDATION, true, before, PageRequest.of(0, 10));
+        List<Long> stale = orderRepository.findIdsByStatusUpdatedBefore(
+                OrderStatus.PENDING_VALIDATION, false, before, PageRequest.of(0, 10));
+
+        // Assert
+        assertEquals(List.of(synchronous), orphans);
+        assertEquals(List.of(queued, legacy), stale);
+    }
+
+    private Long pendingValidation(Boolean synchronousCreation) {
+        Order order = order(1);
+        order.setStatus(OrderStatus.PENDING_VALIDATION);
+        order.setSynchronousCreation(synchronousCreation);
+        return orderRepository.saveAndFlush(order).getId();
+    }
+
+    private Order order(int itemCount) {
+        Order order = Order.builder()
+                .userId(1L)
+                .status(OrderStatus.PENDING)
+                .totalAmount(new BigDecimal("10.00").multiply(BigDecimal.valueOf(itemCount)))
+                .shippingAddress("Test Address")
+                .items(new ArrayList<>())
+                .build();
+        for (int i = 0; i < itemCount; i++) {
+            order.addItem(OrderItem.builder()
+                    .productId(100L + i)
+                    .productName("Product " + i)
+                    .quantity(1)
+                    .price(new BigDecimal("10.00"))
+                    .build());
+        }
+        return order;
+    }
+}
@@ -0,0 +1,205 @@
+package service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.order.config.GlobalExceptionHandler;
+import com.shop.order.dto.CreateOrderRequest;
+import com.shop.order.dto.OrderDto;
+import com.shop.order.dto.OrderItemRequest;
+import com.shop.order.model.IdempotencyRecord;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.IdempotencyRecordRepository;
+import com.shop.order.service.IdempotencyConflictException;
+import com.shop.order.service.IdempotencyService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для IdempotencyService
+ *
+ * Тестирует:
+ * - Параллельный дубликат ждёт первый запрос, заказ создаётся один раз
+ * - Повтор после рестарта отдаёт сохранённый ответ без создания заказа
+ * - Запрет повторного использования ключа для другого запроса: 409 без Retry-After
+ * - Повтор, пока первый запрос выполняется на другом инстансе: 409 с Retry-After
+ */
+@ExtendWith(MockitoExtension.class)
+class IdempotencyServiceTest {
+
+    @Mock
+    private IdempotencyRecordRepository repository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+
+    private IdempotencyService idempotencyService;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        lenient().doAnswer(inv -> {
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+        idempotencyService = new IdempotencyService(repository, transactionTemplate, objectMapper,
+                new SimpleMeterRegistry(), Duration.ofHours(24), 100, Duration.ofSeconds(5), Duration.ofMinutes(2));
+    }
+
+    @Test
+    void execute_ConcurrentDuplicate_WaitsForFirstResult() throws Exception {
+        // Arrange (первый запрос держим, пока не придёт дубликат)
+        when(repository.findById("1:key-1")).thenReturn(Optional.empty());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger created = new AtomicInteger();
+
+        // Act
+        CompletableFuture<OrderDto> first = CompletableFuture.supplyAsync(() ->
+                idempotencyService.execute("key-1", 1L, request(100L), () -> {
+                    started.countDown();
+                    awaitQuietly(release);
+                    created.incrementAndGet();
+                    return order(10L);
+                }));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<OrderDto> duplicate = CompletableFuture.supplyAsync(() ->
+                idempotencyService.execute("key-1", 1L, request(100L), () -> {
+                    created.incrementAndGet();
+                    return order(11L);
+                }));
+        release.countDown();
+
+        // Assert
+        assertEquals(10L, first.get(5, TimeUnit.SECONDS).getId());
+        assertEquals(10L, duplicate.get(5, TimeUnit.SECONDS).getId());
+        assertEquals(1, created.get());
+        verify(repository).complete(eq("1:key-1"), eq(IdempotencyRecord.Status.COMPLETED), any());
+    }
+
+    @Test
+    void execute_StoredResult_ReturnsItWithoutCreatingOrder() throws Exception {
+        // Arrange (ответ сохранён в БД, локальный кэш пуст, как после рестарта)
+        String hash = fingerprint(request(100L));
+        when(repository.findById("1:key-2")).thenReturn(Optional.of(IdempotencyRecord.builder()
+                .key("1:key-2")
+                .requestHash(hash)
+                .status(IdempotencyRecord.Status.COMPLETED)
+                .responseBody(objectMapper.writeValueAsString(order(20L)))
+                .createdAt(LocalDateTime.now())
+                .expiresAt(LocalDateTime.now().plusHours(1))
+                .build()));
+
+        // Act
+        OrderDto result = idempotencyService.execute("key-2", 1L, request(100L), () -> {
+            throw new AssertionError("Order must not be created again");
+        });
+
+        // Assert
+        assertEquals(20L, result.getId());
+        assertEquals(OrderStatus.PENDING, result.getStatus());
+        verify(repository, never()).insertInProgress(any(), any(), any(), any());
+    }
+
+    @Test
+    void execute_SameKeyDifferentRequest_Returns409() {
+        // Arrange
+        when(repository.findById("1:key-3")).thenReturn(Optional.empty());
+        idempotencyService.execute("key-3", 1L, request(100L), () -> order(30L));
+
+        // Act & Assert
+        IdempotencyConflictException exception = assertThrows(IdempotencyConflictException.class, () ->
+                idempotencyService.execute("key-3", 1L, request(200L), () -> order(31L)));
+        ResponseEntity<Map<String, String>> response = new GlobalExceptionHandler().handleIdempotencyConflict(exception);
+
+        assertEquals("Idempotency-Key was already used for a different request", exception.getMessage());
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertNull(response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void execute_InProgressOnAnotherInstance_Returns409WithRetryAfter() throws Exception {
+        // Arrange (запись IN_PROGRESS свежая: первый запрос ещё выполняется)
+        when(repository.findById("1:key-4")).thenReturn(Optional.of(IdempotencyRecord.builder()
+                .key("1:key-4")
+                .requestHash(fingerprint(request(100L)))
+                .status(IdempotencyRecord.Status.IN_PROGRESS)
+                .createdAt(LocalDateTime.now())
+                .expiresAt(LocalDateTime.now().plusHours(1))
+                .build()));
+
+        // Act & Assert
+        IdempotencyConflictException exception = assertThrows(IdempotencyConflictException.class, () ->
+                idempotencyService.execute("key-4", 1L, request(100L), () -> order(40L)));
+        ResponseEntity<Map<String, String>> response = new GlobalExceptionHandler().handleIdempotencyConflict(exception);
+
+        assertEquals(HttpStatus.CONFLICT, response.getStatusCode());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    private String fingerprint(CreateOrderRequest request) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256")
+                .digest(objectMapper.writeValueAsString(request).getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest);
+    }
+
+    private CreateOrderRequest request(Long productId) {
+        OrderItemRequest item = new OrderItemRequest();
+        item.setProductId(productId);
+        item.setQuantity(1);
+        CreateOrderRequest request = new CreateOrderRequest();
+        request.setItems(List.of(item));
+        request.setShippingAddress("Test Address");
+        return request;
+    }
+
+    private OrderDto order(Long id) {
+        return OrderDto.builder()
+                .id(id)
+                .userId(1L)
+                .status(OrderStatus.PENDING)
+                .totalAmount(new BigDecimal("10.00"))
+                .items(List.of())
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+
+    private void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
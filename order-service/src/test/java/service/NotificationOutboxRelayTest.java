@@ -0,0 +1,135 @@
+package service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.shop.order.client.ServiceClients;
+import com.shop.order.model.OutboxEvent;
+import com.shop.order.repository.OutboxEventRepository;
+import com.shop.order.service.NotificationOutboxRelay;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для NotificationOutboxRelay
+ *
+ * Тестирует:
+ * - Доставка накопленных событий одним пакетным запросом
+ * - Отложенный повтор, когда notification-service недоступен
+ * - Событие с нечитаемым payload уходит в FAILED, не задерживая остальные события пачки
+ */
+@ExtendWith(MockitoExtension.class)
+class NotificationOutboxRelayTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private ServiceClients serviceClients;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    private NotificationOutboxRelay relay;
+
+    @BeforeEach
+    void setUp() {
+        relay = new NotificationOutboxRelay(outboxEventRepository, serviceClients, objectMapper,
+                new SimpleMeterRegistry(), 100, 10, Duration.ofSeconds(1), Duration.ofSeconds(1), Duration.ofMinutes(5));
+    }
+
+    @Test
+    void relay_PendingEvents_SendsOneBatchAndDeletesThem() throws Exception {
+        // Arrange
+        List<OutboxEvent> events = List.of(event(1L, 10L), event(2L, 11L));
+        when(outboxEventRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                eq(OutboxEvent.Status.PENDING), any(), any())).thenReturn(events);
+        when(serviceClients.sendNotificationBatchAsync(any())).thenReturn(Mono.empty());
+
+        // Act
+        relay.relay();
+
+        // Assert
+        ArgumentCaptor<List<ServiceClients.NotificationRequest>> sent = ArgumentCaptor.forClass(List.class);
+        verify(serviceClients, times(1)).sendNotificationBatchAsync(sent.capture());
+        assertEquals(2, sent.getValue().size());
+        assertEquals("order-outbox-1", sent.getValue().get(0).getEventId());
+        assertEquals("Your order #11 has been created successfully!", sent.getValue().get(1).getMessage());
+        verify(outboxEventRepository).deleteAllInBatch(events);
+    }
+
+    @Test
+    void relay_ServiceDown_SchedulesRetry() throws Exception {
+        // Arrange
+        OutboxEvent event = event(1L, 10L);
+        when(outboxEventRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                eq(OutboxEvent.Status.PENDING), any(), any())).thenReturn(List.of(event));
+        when(serviceClients.sendNotificationBatchAsync(any()))
+                .thenReturn(Mono.error(new RuntimeException("notification-service unavailable")));
+
+        // Act
+        relay.relay();
+
+        // Assert (событие остаётся в outbox и ждёт следующей попытки)
+        verify(outboxEventRepository, never()).deleteAllInBatch(any());
+        verify(outboxEventRepository).saveAll(List.of(event));
+        assertEquals(1, event.getAttempts());
+        assertEquals(OutboxEvent.Status.PENDING, event.getStatus());
+        assertEquals("notification-service unavailable", event.getLastError());
+        assertTrue(event.getNextAttemptAt().isAfter(LocalDateTime.now()));
+    }
+
+    @Test
+    void relay_UnreadablePayload_FailsOnlyThatEvent() throws Exception {
+        // Arrange
+        OutboxEvent first = event(1L, 10L);
+        OutboxEvent poison = event(2L, 11L);
+        poison.setPayload("{not json");
+        OutboxEvent third = event(3L, 12L);
+        when(outboxEventRepository.findByStatusAndNextAttemptAtLessThanEqualOrderByIdAsc(
+                eq(OutboxEvent.Status.PENDING), any(), any())).thenReturn(List.of(first, poison, third));
+        when(serviceClients.sendNotificationBatchAsync(any())).thenReturn(Mono.empty());
+
+        // Act
+        relay.relay();
+
+        // Assert
+        ArgumentCaptor<List<ServiceClients.NotificationRequest>> sent = ArgumentCaptor.forClass(List.class);
+        verify(serviceClients, times(1)).sendNotificationBatchAsync(sent.capture());
+        assertEquals(List.of("order-outbox-1", "order-outbox-3"),
+                sent.getValue().stream().map(ServiceClients.NotificationRequest::getEventId).toList());
+        verify(outboxEventRepository).deleteAllInBatch(List.of(first, third));
+        verify(outboxEventRepository).save(poison);
+        verify(outboxEventRepository, never()).saveAll(any());
+        assertEquals(OutboxEvent.Status.FAILED, poison.getStatus());
+        assertTrue(poison.getLastError().startsWith("Unreadable payload"));
+    }
+
+    private OutboxEvent event(Long id, Long orderId) throws Exception {
+        ServiceClients.NotificationRequest notification = new ServiceClients.NotificationRequest(
+                1L, "ORDER_CREATED", "Order Created",
+                "Your order #" + orderId + " has been created successfully!");
+        return OutboxEvent.builder()
+                .id(id)
+                .aggregateId(orderId)
+                .eventType("ORDER_CREATED")
+                .payload(objectMapper.writeValueAsString(notification))
+                .status(OutboxEvent.Status.PENDING)
+                .attempts(0)
+                .nextAttemptAt(LocalDateTime.now())
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+}
@@ -0,0 +1,211 @@
+package service;
+
+import com.shop.order.client.ServiceClients;
+import com.shop.order.model.Order;
+import com.shop.order.model.OrderItem;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.OrderRepository;
+import com.shop.order.service.NotificationOutbox;
+import com.shop.order.service.OrderAcceptanceProcessor;
+import com.shop.order.service.ReservationPinner;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для OrderAcceptanceProcessor
+ *
+ * Тестирует:
+ * - Распределение остатка между заказами пачки в порядке приёма
+ * - Один пакетный резерв на всю пачку и отказ с причиной для не поместившихся
+ * - Склад отклонил пакет: остатки перечитываются, заказы резервируются по одному
+ * - Пачка остаётся в PENDING_VALIDATION, если склад недоступен
+ * - Отказы попадают в метрики только после коммита
+ * - Резерв закрепляется за заказами, переведёнными в PENDING
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderAcceptanceProcessorTest {
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private ServiceClients serviceClients;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private NotificationOutbox notificationOutbox;
+
+    @Mock
+    private ReservationPinner reservationPinner;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private OrderAcceptanceProcessor processor;
+
+    private Order first;
+    private Order second;
+
+    @BeforeEach
+    void setUp() {
+        processor = new OrderAcceptanceProcessor(orderRepository, serviceClients, transactionTemplate,
+                notificationOutbox, reservationPinner, meterRegistry);
+
+        // Два заказа по 2 шт. одного товара, на складе доступно 3
+        first = pendingValidation(1L, 100L, 2);
+        second = pendingValidation(2L, 100L, 2);
+        when(orderRepository.findWithItemsByIdIn(anyCollection())).thenReturn(List.of(second, first));
+
+        ServiceClients.ProductResponse product = new ServiceClients.ProductResponse();
+        product.setId(100L);
+        product.setName("MacBook Pro");
+        product.setPrice(new BigDecimal("1999.99"));
+        ServiceClients.ProductBatchResponse products = new ServiceClients.ProductBatchResponse();
+        products.setProducts(List.of(product));
+        products.setMissingIds(List.of());
+        when(serviceClients.getProductsAsync(any())).thenReturn(Mono.just(products));
+
+        when(serviceClients.checkStockBatchAsync(any())).thenReturn(Mono.just(List.of(stock(3))));
+    }
+
+    @Test
+    void process_StockForOneOrder_ReservesFirstAndRejectsSecond() {
+        // Arrange
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(orderRepository.lockByIdInAndStatus(anyCollection(), eq(OrderStatus.PENDING_VALIDATION)))
+                .thenReturn(List.of(first, second));
+
+        // Act
+        processor.process(List.of(1L, 2L));
+
+        // Assert: резерв одним вызовом только под первый заказ
+        verify(serviceClients).reserveOrderStock(List.of(new ServiceClients.StockRequest(1L, 100L, 2)));
+        verify(serviceClients, never()).releaseOrderStock(any());
+
+        assertEquals(OrderStatus.PENDING, first.getStatus());
+        assertEquals(new BigDecimal("3999.98"), first.getTotalAmount());
+        assertEquals("MacBook Pro", first.getItems().get(0).getProductName());
+
+        assertEquals(OrderStatus.REJECTED, second.getStatus());
+        assertEquals("Product 100 is out of stock. Available: 1", second.getStatusReason());
+
+        verify(notificationOutbox).enqueue(eq(1L), argThat(n -> n.getType().equals("ORDER_CREATED")));
+        verify(notificationOutbox).enqueue(eq(2L), argThat(n -> n.getType().equals("ORDER_REJECTED")));
+        assertEquals(1.0, validated("accepted"));
+        assertEquals(1.0, validated("rejected"));
+
+        // Резерв закрепляется только за принятым заказом
+        assertEquals(Boolean.FALSE, first.getStockPinned());
+        verify(reservationPinner).pin(List.of(first));
+    }
+
+    @Test
+    void process_CommitFails_CountsNothing() {
+        // Arrange: изменения применены в callback, но транзакция не зафиксировалась
+        when(transactionTemplate.execute(any())).thenAnswer(inv -> {
+            inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null);
+            throw new RuntimeException("Commit failed");
+        });
+        when(orderRepository.lockByIdInAndStatus(anyCollection(), eq(OrderStatus.PENDING_VALIDATION)))
+                .thenReturn(List.of(first, second));
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> processor.process(List.of(1L, 2L)));
+
+        // Резерв снят, отказ второго заказа не записан и не посчитан
+        verify(serviceClients).releaseOrderStock(List.of(new ServiceClients.StockRequest(1L, 100L, 2)));
+        verify(reservationPinner, never()).pin(any());
+        assertEquals(0.0, validated("accepted"));
+        assertEquals(0.0, validated("rejected"));
+    }
+
+    @Test
+    void process_BatchOvercommitted_ReservesOneByOneAfterRecheck() {
+        // Arrange: пока пачка проверялась, остаток упал до 2; на обоих заказах пакет не проходит
+        when(serviceClients.checkStockBatchAsync(any()))
+                .thenReturn(Mono.just(List.of(stock(5))), Mono.just(List.of(stock(2))));
+        List<ServiceClients.StockRequest> firstOnly = List.of(new ServiceClients.StockRequest(1L, 100L, 2));
+        List<ServiceClients.StockRequest> both = List.of(
+                new ServiceClients.StockRequest(1L, 100L, 2), new ServiceClients.StockRequest(2L, 100L, 2));
+        doThrow(new RuntimeException("Insufficient stock for product 100"))
+                .when(serviceClients).reserveOrderStock(both);
+        when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+        when(orderRepository.lockByIdInAndStatus(anyCollection(), eq(OrderStatus.PENDING_VALIDATION)))
+                .thenReturn(List.of(first, second));
+
+        // Act
+        processor.process(List.of(1L, 2L));
+
+        // Assert: первый заказ зарезервирован отдельно, второй отклонён по свежему остатку без ожидания
+        verify(serviceClients).reserveOrderStock(firstOnly);
+        assertEquals(OrderStatus.PENDING, first.getStatus());
+        assertEquals(OrderStatus.REJECTED, second.getStatus());
+        assertEquals("Product 100 is out of stock. Available: 0", second.getStatusReason());
+        verify(reservationPinner).pin(List.of(first));
+    }
+
+    @Test
+    void process_InventoryUnavailable_LeavesBatchPendingValidation() {
+        // Arrange
+        doThrow(new RuntimeException("Service Unavailable")).when(serviceClients).reserveOrderStock(any());
+        when(serviceClients.checkStockBatchAsync(any()))
+                .thenReturn(Mono.just(List.of(stock(3))), Mono.error(new RuntimeException("Service Unavailable")));
+
+        // Act & Assert
+        assertThrows(RuntimeException.class, () -> processor.process(List.of(1L, 2L)));
+
+        // Ничего не сохранено: оба заказа будут проверены повторно
+        verify(transactionTemplate, never()).execute(any());
+        assertEquals(OrderStatus.PENDING_VALIDATION, first.getStatus());
+        assertEquals(OrderStatus.PENDING_VALIDATION, second.getStatus());
+    }
+
+    private ServiceClients.StockCheckResponse stock(int available) {
+        ServiceClients.StockCheckResponse stock = new ServiceClients.StockCheckResponse();
+        stock.setProductId(100L);
+        stock.setInStock(true);
+        stock.setAvailableQuantity(available);
+        return stock;
+    }
+
+    private double validated(String outcome) {
+        return meterRegistry.get("orders.acceptance.validated").tag("outcome", outcome).counter().count();
+    }
+
+    private Order pendingValidation(Long id, Long productId, int quantity) {
+        Order order = Order.builder()
+                .id(id)
+                .userId(1L)
+                .status(OrderStatus.PENDING_VALIDATION)
+                .totalAmount(BigDecimal.ZERO)
+                .items(new ArrayList<>())
+                .build();
+        order.addItem(OrderItem.builder()
+                .id(id * 10)
+                .productId(productId)
+                .quantity(quantity)
+                .price(BigDecimal.ZERO)
+                .build());
+        return order;
+    }
+}
@@ -0,0 +1,142 @@
+package service;
+
+import com.shop.order.config.GlobalExceptionHandler;
+import com.shop.order.dto.CreateOrderRequest;
+import com.shop.order.dto.OrderDto;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.OrderRepository;
+import com.shop.order.service.OrderAcceptanceProcessor;
+import com.shop.order.service.OrderAcceptanceQueue;
+import com.shop.order.service.OrderQueueFullException;
+import com.shop.order.service.OrderService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для OrderAcceptanceQueue
+ *
+ * Рабочие потоки не запускаются, поэтому очередь только наполняется.
+ *
+ * Тестирует:
+ * - Переполнение очереди: заказ не записывается, клиент получает 503 с Retry-After
+ * - Место в очереди освобождается, если записать заказ не удалось
+ * - Зависшие заказы забираются условным UPDATE, стоящие в очереди и забранные другим инстансом пропускаются;
+ *   заказы синхронного приёма не запрашиваются
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderAcceptanceQueueTest {
+
+    @Mock
+    private OrderService orderService;
+
+    @Mock
+    private OrderAcceptanceProcessor processor;
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private final CreateOrderRequest request = new CreateOrderRequest();
+
+    @BeforeEach
+    void setUp() {
+        // TransactionTemplate просто выполняет переданный callback
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    void submit_QueueFull_RefusesWith503() {
+        // Arrange
+        OrderAcceptanceQueue queue = queue(1);
+        when(orderService.acceptOrder(1L, request)).thenReturn(order(10L));
+        queue.submit(1L, request);
+
+        // Act
+        OrderQueueFullException exception = assertThrows(OrderQueueFullException.class,
+                () -> queue.submit(1L, request));
+        ResponseEntity<Map<String, String>> response = new GlobalExceptionHandler().handleOrderQueueFull(exception);
+
+        // Assert: второй заказ не записан
+        verify(orderService, times(1)).acceptOrder(1L, request);
+        assertEquals(1.0, meterRegistry.get("orders.acceptance.overflow").counter().count());
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("1", response.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void submit_AcceptFails_ReleasesSlot() {
+        // Arrange
+        OrderAcceptanceQueue queue = queue(1);
+        when(orderService.acceptOrder(1L, request))
+                .thenThrow(new RuntimeException("Database unavailable"))
+                .thenReturn(order(10L));
+
+        // Act
+        assertThrows(RuntimeException.class, () -> queue.submit(1L, request));
+        OrderDto accepted = queue.submit(1L, request);
+
+        // Assert: единственное место вернулось после ошибки
+        assertEquals(10L, accepted.getId());
+        assertEquals(1.0, queueSize());
+    }
+
+    @Test
+    void requeueStale_StaleOrders_RequeuesOnlyClaimed() {
+        // Arrange: заказ 1 уже стоит в очереди, заказ 3 забрал другой инстанс
+        OrderAcceptanceQueue queue = queue(10);
+        when(orderService.acceptOrder(1L, request)).thenReturn(order(1L));
+        queue.submit(1L, request);
+        when(orderRepository.findIdsByStatusUpdatedBefore(eq(OrderStatus.PENDING_VALIDATION), eq(false),
+                any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(1L, 2L, 3L));
+        when(orderRepository.claimStale(eq(2L), eq(OrderStatus.PENDING_VALIDATION), any(), any())).thenReturn(1);
+        when(orderRepository.claimStale(eq(3L), eq(OrderStatus.PENDING_VALIDATION), any(), any())).thenReturn(0);
+
+        // Act
+        queue.requeueStale();
+
+        // Assert
+        verify(orderRepository, never()).claimStale(eq(1L), any(), any(), any());
+        assertEquals(2.0, queueSize());
+    }
+
+    private OrderAcceptanceQueue queue(int capacity) {
+        return new OrderAcceptanceQueue(orderService, processor, orderRepository, transactionTemplate, meterRegistry,
+                true, capacity, 1, 50, Duration.ofMillis(20), Duration.ofMinutes(2));
+    }
+
+    private double queueSize() {
+        return meterRegistry.get("orders.acceptance.queue.size").gauge().value();
+    }
+
+    private OrderDto order(Long id) {
+        return OrderDto.builder()
+                .id(id)
+                .status(OrderStatus.PENDING_VALIDATION)
+                .build();
+    }
+}
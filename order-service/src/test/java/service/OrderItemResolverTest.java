@@ -0,0 +1,142 @@
+package service;
+
+import com.shop.order.client.ServiceClients;
+import com.shop.order.dto.OrderItemRequest;
+import com.shop.order.model.OrderItem;
+import com.shop.order.service.OrderItemResolver;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для OrderItemResolver
+ *
+ * Тестирует:
+ * - Позиции возвращаются в порядке запроса, как бы ни были упорядочены ответы соседних сервисов
+ * - Повторяющиеся товары запрашиваются один раз, наличие проверяется по суммарному количеству
+ * - Одна недоступная позиция проваливает разбор всего заказа
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderItemResolverTest {
+
+    @Mock
+    private ServiceClients serviceClients;
+
+    @Test
+    void resolve_FanOut_KeepsRequestOrder() {
+        // Arrange: ответы приходят в другом порядке, чем позиции заказа
+        when(serviceClients.checkStockBatchAsync(any()))
+                .thenReturn(Mono.just(List.of(stock(1L, true, 10), stock(2L, true, 10), stock(3L, true, 10))));
+        when(serviceClients.getProductsAsync(any()))
+                .thenReturn(Mono.just(products(product(2L, "20.00"), product(1L, "10.00"), product(3L, "30.00"))));
+
+        // Act
+        List<OrderItem> items = resolver().resolve(List.of(item(3L, 1), item(1L, 2), item(2L, 3)));
+
+        // Assert
+        assertEquals(List.of(3L, 1L, 2L), items.stream().map(OrderItem::getProductId).toList());
+        assertEquals(List.of(1, 2, 3), items.stream().map(OrderItem::getQuantity).toList());
+        assertEquals(new BigDecimal("30.00"), items.get(0).getPrice());
+        assertEquals("Product 1", items.get(1).getProductName());
+        verify(serviceClients, times(1)).checkStockBatchAsync(any());
+        verify(serviceClients, times(1)).getProductsAsync(any());
+    }
+
+    @Test
+    void resolve_DuplicateProducts_ChecksMergedQuantityOnce() {
+        // Arrange
+        when(serviceClients.checkStockBatchAsync(any()))
+                .thenReturn(Mono.just(List.of(stock(1L, true, 5), stock(2L, true, 1))));
+        when(serviceClients.getProductsAsync(any()))
+                .thenReturn(Mono.just(products(product(1L, "10.00"), product(2L, "20.00"))));
+
+        // Act
+        List<OrderItem> items = resolver().resolve(List.of(item(1L, 2), item(2L, 1), item(1L, 3)));
+
+        // Assert: склад и каталог видят товар 1 один раз, позиции заказа остаются как в запросе
+        verify(serviceClients).checkStockBatchAsync(List.of(
+                new ServiceClients.StockRequest(1L, 5), new ServiceClients.StockRequest(2L, 1)));
+        verify(serviceClients).getProductsAsync(Set.of(1L, 2L));
+        assertEquals(List.of(1L, 2L, 1L), items.stream().map(OrderItem::getProductId).toList());
+        assertEquals(List.of(2, 1, 3), items.stream().map(OrderItem::getQuantity).toList());
+    }
+
+    @Test
+    void resolve_OneLineOutOfStock_FailsWholeOrder() {
+        // Arrange
+        when(serviceClients.checkStockBatchAsync(any()))
+                .thenReturn(Mono.just(List.of(stock(1L, true, 10), stock(2L, false, 1))));
+        when(serviceClients.getProductsAsync(any()))
+                .thenReturn(Mono.just(products(product(1L, "10.00"), product(2L, "20.00"))));
+        OrderItemResolver resolver = resolver();
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> resolver.resolve(List.of(item(1L, 1), item(2L, 2))));
+
+        assertEquals("Product 2 is out of stock. Available: 1", exception.getMessage());
+    }
+
+    @Test
+    void resolve_OneProductMissing_FailsWholeOrder() {
+        // Arrange
+        when(serviceClients.checkStockBatchAsync(any()))
+                .thenReturn(Mono.just(List.of(stock(1L, true, 10), stock(2L, true, 10))));
+        ServiceClients.ProductBatchResponse response = products(product(1L, "10.00"));
+        response.setMissingIds(List.of(2L));
+        when(serviceClients.getProductsAsync(any())).thenReturn(Mono.just(response));
+        OrderItemResolver resolver = resolver();
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class,
+                () -> resolver.resolve(List.of(item(1L, 1), item(2L, 2))));
+
+        assertEquals("Product not found: 2", exception.getMessage());
+    }
+
+    private OrderItemResolver resolver() {
+        return new OrderItemResolver(serviceClients, true, Duration.ofSeconds(1));
+    }
+
+    private OrderItemRequest item(Long productId, int quantity) {
+        OrderItemRequest request = new OrderItemRequest();
+        request.setProductId(productId);
+        request.setQuantity(quantity);
+        return request;
+    }
+
+    private ServiceClients.StockCheckResponse stock(Long productId, boolean inStock, int available) {
+        ServiceClients.StockCheckResponse response = new ServiceClients.StockCheckResponse();
+        response.setProductId(productId);
+        response.setInStock(inStock);
+        response.setAvailableQuantity(available);
+        return response;
+    }
+
+    private ServiceClients.ProductResponse product(Long id, String price) {
+        ServiceClients.ProductResponse product = new ServiceClients.ProductResponse();
+        product.setId(id);
+        product.setName("Product " + id);
+        product.setPrice(new BigDecimal(price));
+        return product;
+    }
+
+    private ServiceClients.ProductBatchResponse products(ServiceClients.ProductResponse... products) {
+        ServiceClients.ProductBatchResponse response = new ServiceClients.ProductBatchResponse();
+        response.setProducts(new ArrayList<>(List.of(products)));
+        response.setMissingIds(new ArrayList<>());
+        return response;
+    }
+}
@@ -1,27 +1,39 @@
 package service;
 
 import com.shop.order.client.ServiceClients;
+import com.shop.order.dto.BulkStatusUpdateResponse;
+import com.shop.order.dto.CreateOrderRequest;
+import com.shop.order.dto.OrderCursorPageDto;
 import com.shop.order.dto.OrderDto;
+import com.shop.order.dto.OrderItemRequest;
 import com.shop.order.model.Order;
 import com.shop.order.model.OrderItem;
 import com.shop.order.model.OrderStatus;
 import com.shop.order.repository.OrderRepository;
+import com.shop.order.service.NotificationOutbox;
+import com.shop.order.service.OrderItemResolver;
 import com.shop.order.service.OrderService;
+import com.shop.order.service.ReservationPinner;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -31,7 +43,13 @@ import static org.mockito.Mockito.*;
  * - Отмена заказа со статусом PENDING
  * - Проверка авторизации (только владелец может отменить)
  * - Запрет отмены подтверждённых заказов
- * - Взаимодействие с Inventory и Notification сервисами
+ * - Взаимодействие с Inventory сервисом и запись уведомлений в outbox
+ * - Компенсация резерва и удаление заказа, если его не удалось перевести в PENDING
+ * - Заказ удаляется, если склад не зарезервировал товары
+ * - Keyset-пагинация списка заказов пользователя
+ * - Массовая смена статуса с одним вызовом склада
+ * - Массовая смена статуса: при ошибке пакета склад вызывается по заказу, неудача одного не проваливает остальные
+ * - Заказ, сменивший статус после вызова склада, помечается stockAdjusted
  */
 @ExtendWith(MockitoExtension.class)
 class OrderServiceTest {
@@ -42,6 +60,18 @@ class OrderServiceTest {
     @Mock
     private ServiceClients serviceClients;
 
+    @Mock
+    private OrderItemResolver orderItemResolver;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Mock
+    private NotificationOutbox notificationOutbox;
+
+    @Mock
+    private ReservationPinner reservationPinner;
+
     @InjectMocks
     private OrderService orderService;
 
@@ -50,6 +80,10 @@ class OrderServiceTest {
 
     @BeforeEach
     void setUp() {
+        // TransactionTemplate просто выполняет переданный callback
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+
         // Заказ со статусом PENDING
         OrderItem item = OrderItem.builder()
                 .id(1L)
@@ -85,7 +119,7 @@ class OrderServiceTest {
     @Test
     void cancelOrder_PendingOrder_CancelsSuccessfully() {
         // Arrange
-        when(orderRepository.findById(1L)).thenReturn(Optional.of(pendingOrder));
+        when(orderRepository.findWithItemsById(1L)).thenReturn(Optional.of(pendingOrder));
 
         Order cancelledOrder = Order.builder()
                 .id(1L)
@@ -104,16 +138,16 @@ class OrderServiceTest {
         assertEquals(OrderStatus.CANCELLED, result.getStatus());
 
         // Проверяем, что резерв был освобождён
-        verify(serviceClients).releaseStock(100L, 2);
+        verify(serviceClients).releaseOrderStock(List.of(new ServiceClients.StockRequest(1L, 100L, 2)));
 
-        // Проверяем, что уведомление было отправлено
-        verify(serviceClients).sendNotification(any(ServiceClients.NotificationRequest.class));
+        // Проверяем, что уведомление записано в outbox
+        verify(notificationOutbox).enqueue(eq(1L), any(ServiceClients.NotificationRequest.class));
     }
 
     @Test
     void cancelOrder_NotOwner_ThrowsException() {
         // Arrange
-        when(orderRepository.findById(1L)).thenReturn(Optional.of(pendingOrder));
+        when(orderRepository.findWithItemsById(1L)).thenReturn(Optional.of(pendingOrder));
 
         // Act & Assert (пользователь 2 пытается отменить заказ пользователя 1)
         RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -124,13 +158,13 @@ class OrderServiceTest {
 
         // Проверяем, что save и releaseStock НЕ были вызваны
         verify(orderRepository, never()).save(any(Order.class));
-        verify(serviceClients, never()).releaseStock(anyLong(), anyInt());
+        verify(serviceClients, never()).releaseOrderStock(any());
     }
 
     @Test
     void cancelOrder_ConfirmedOrder_ThrowsException() {
         // Arrange
-        when(orderRepository.findById(2L)).thenReturn(Optional.of(confirmedOrder));
+        when(orderRepository.findWithItemsById(2L)).thenReturn(Optional.of(confirmedOrder));
 
         // Act & Assert
         RuntimeException exception = assertThrows(RuntimeException.class, () -> {
@@ -161,4 +195,236 @@ class OrderServiceTest {
 
         verify(orderRepository).findById(1L);
     }
-}
\ No newline at end of file
+
+    @Test
+    void createOrder_SaveFails_ReleasesReservedStockAndDeletesOrder() {
+        // Arrange: заказ записан до резерва, перевести его в PENDING не удалось
+        CreateOrderRequest request = createRequest();
+        when(orderRepository.save(any(Order.class))).thenAnswer(inv -> {
+            Order order = inv.getArgument(0);
+            order.setId(10L);
+            return order;
+        });
+        when(orderRepository.findWithItemsById(10L)).thenThrow(new RuntimeException("Database unavailable"));
+        doAnswer(inv -> {
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+            orderService.createOrder(1L, request);
+        });
+
+        assertEquals("Database unavailable", exception.getMessage());
+
+        // Резерв по заказу сделан до смены статуса и снят после ошибки, заказ в PENDING_VALIDATION не остаётся
+        List<ServiceClients.StockRequest> stockRequests = List.of(new ServiceClients.StockRequest(10L, 100L, 2));
+        verify(serviceClients).reserveOrderStock(stockRequests);
+        verify(serviceClients).releaseOrderStock(stockRequests);
+        verify(orderRepository).deleteById(10L);
+        verify(notificationOutbox, never()).enqueue(any(), any());
+        verify(reservationPinner, never()).pin(any());
+    }
+
+    @Test
+    void createOrder_SaveAndReleaseFail_StillDeletesOrder() {
+        // Arrange: склад недоступен и для снятия резерва — он истечёт сам, а заказ всё равно удаляется
+        CreateOrderRequest request = createRequest();
+        when(orderRepository.save(any(Order.class))).thenAnswer(inv -> {
+            Order order = inv.getArgument(0);
+            order.setId(10L);
+            return order;
+        });
+        when(orderRepository.findWithItemsById(10L)).thenThrow(new RuntimeException("Database unavailable"));
+        doThrow(new RuntimeException("Inventory unavailable")).when(serviceClients).releaseOrderStock(any());
+        doAnswer(inv -> {
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // Act & Assert: клиент получает исходную ошибку
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+            orderService.createOrder(1L, request);
+        });
+
+        assertEquals("Database unavailable", exception.getMessage());
+        verify(orderRepository).deleteById(10L);
+    }
+
+    @Test
+    void createOrder_ReserveFails_DeletesOrder() {
+        // Arrange
+        CreateOrderRequest request = createRequest();
+        when(orderRepository.save(any(Order.class))).thenAnswer(inv -> {
+            Order order = inv.getArgument(0);
+            order.setId(10L);
+            assertEquals(OrderStatus.PENDING_VALIDATION, order.getStatus());
+            return order;
+        });
+        doThrow(new RuntimeException("Insufficient stock for product: 100"))
+                .when(serviceClients).reserveOrderStock(any());
+        doAnswer(inv -> {
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // Act & Assert
+        RuntimeException exception = assertThrows(RuntimeException.class, () -> {
+            orderService.createOrder(1L, request);
+        });
+
+        assertEquals("Insufficient stock for product: 100", exception.getMessage());
+        verify(orderRepository).deleteById(10L);
+        verify(serviceClients, never()).releaseOrderStock(any());
+        verify(notificationOutbox, never()).enqueue(any(), any());
+    }
+
+    @Test
+    void getOrdersByUserIdAfter_FullPage_ReturnsCursorForNextPage() {
+        // Arrange: первая страница из одного заказа
+        when(orderRepository.findFirstIdsByUserId(eq(1L), any())).thenReturn(List.of(1L));
+        when(orderRepository.findWithItemsByIdIn(List.of(1L))).thenReturn(List.of(pendingOrder));
+
+        // Act
+        OrderCursorPageDto firstPage = orderService.getOrdersByUserIdAfter(1L, null, 1);
+
+        // Assert
+        assertEquals(1, firstPage.getItems().size());
+        assertEquals(1, firstPage.getItems().get(0).getItems().size());
+        assertNotNull(firstPage.getNextCursor());
+
+        // Следующая страница запрашивается строго после (createdAt, id) последнего заказа
+        when(orderRepository.findIdsByUserIdBefore(eq(1L), any(), any(), any())).thenReturn(List.of());
+
+        OrderCursorPageDto secondPage = orderService.getOrdersByUserIdAfter(1L, firstPage.getNextCursor(), 1);
+
+        assertTrue(secondPage.getItems().isEmpty());
+        assertNull(secondPage.getNextCursor());
+        verify(orderRepository).findIdsByUserIdBefore(
+                eq(1L), eq(pendingOrder.getCreatedAt()), eq(1L), any());
+    }
+
+    @Test
+    void updateOrderStatuses_MixedOrders_ConfirmsStockOnceAndReportsEachOrder() {
+        // Arrange (два ожидающих заказа с одним товаром, подтверждённый заказ и несуществующий ID)
+        Order secondPending = secondPending();
+        when(orderRepository.findWithItemsByIdIn(any()))
+                .thenReturn(List.of(pendingOrder, confirmedOrder, secondPending));
+        when(orderRepository.findAllById(any())).thenReturn(List.of(pendingOrder, secondPending));
+        doAnswer(inv -> {
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // Act
+        BulkStatusUpdateResponse response = orderService.updateOrderStatuses(
+                List.of(1L, 2L, 3L, 99L), OrderStatus.CONFIRMED);
+
+        // Assert
+        assertEquals(2, response.getSucceeded());
+        assertEquals(2, response.getFailed());
+        assertEquals(List.of(1L, 2L, 3L, 99L), response.getResults().stream()
+                .map(BulkStatusUpdateResponse.Result::getOrderId)
+                .toList());
+        assertTrue(response.getResults().get(0).isSuccess());
+        assertEquals("Cannot change status from CONFIRMED to CONFIRMED", response.getResults().get(1).getError());
+        assertEquals("Order not found", response.getResults().get(3).getError());
+        assertEquals(OrderStatus.CONFIRMED, secondPending.getStatus());
+
+        // Склад получает один запрос с резервами обоих заказов
+        verify(serviceClients, times(1)).confirmOrderStock(List.of(
+                new ServiceClients.StockRequest(1L, 100L, 2),
+                new ServiceClients.StockRequest(3L, 100L, 1)));
+        verify(notificationOutbox, times(2)).enqueue(any(), any());
+    }
+
+    @Test
+    void updateOrderStatuses_BatchConfirmFails_RetriesEachOrder() {
+        // Arrange: пакет отклонён из-за заказа 3, заказ 1 проходит отдельно
+        Order secondPending = secondPending();
+        when(orderRepository.findWithItemsByIdIn(any())).thenReturn(List.of(pendingOrder, secondPending));
+        when(orderRepository.findAllById(any())).thenReturn(List.of(pendingOrder));
+        ServiceClients.StockRequest first = new ServiceClients.StockRequest(1L, 100L, 2);
+        ServiceClients.StockRequest second = new ServiceClients.StockRequest(3L, 100L, 1);
+        doAnswer(inv -> {
+            if (inv.<List<ServiceClients.StockRequest>>getArgument(0).contains(second)) {
+                throw new RuntimeException("Stock reservation for order 3 was released");
+            }
+            return null;
+        }).when(serviceClients).confirmOrderStock(any());
+        doAnswer(inv -> {
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // Act
+        BulkStatusUpdateResponse response = orderService.updateOrderStatuses(List.of(1L, 3L), OrderStatus.CONFIRMED);
+
+        // Assert
+        verify(serviceClients).confirmOrderStock(List.of(first));
+        assertEquals(1, response.getSucceeded());
+        assertTrue(response.getResults().get(0).isSuccess());
+        assertEquals("Stock reservation for order 3 was released", response.getResults().get(1).getError());
+        assertFalse(response.getResults().get(1).isStockAdjusted());
+        assertEquals(OrderStatus.PENDING, secondPending.getStatus());
+    }
+
+    @Test
+    void updateOrderStatuses_ChangedAfterInventory_ReportsStockAdjusted() {
+        // Arrange: пока склад подтверждал, заказ отменил пользователь
+        Order cancelled = Order.builder()
+                .id(1L)
+                .userId(1L)
+                .status(OrderStatus.CANCELLED)
+                .items(new ArrayList<>())
+                .build();
+        when(orderRepository.findWithItemsByIdIn(any())).thenReturn(List.of(pendingOrder));
+        when(orderRepository.findAllById(any())).thenReturn(List.of(cancelled));
+        doAnswer(inv -> {
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // Act
+        BulkStatusUpdateResponse response = orderService.updateOrderStatuses(List.of(1L), OrderStatus.CONFIRMED);
+
+        // Assert
+        BulkStatusUpdateResponse.Result result = response.getResults().get(0);
+        assertFalse(result.isSuccess());
+        assertTrue(result.isStockAdjusted());
+        assertEquals("Order status changed concurrently to CANCELLED", result.getError());
+        assertEquals(OrderStatus.CANCELLED, cancelled.getStatus());
+    }
+
+    private Order secondPending() {
+        return Order.builder()
+                .id(3L)
+                .userId(2L)
+                .status(OrderStatus.PENDING)
+                .totalAmount(new BigDecimal("1999.99"))
+                .items(new ArrayList<>(List.of(OrderItem.builder()
+                        .productId(100L)
+                        .quantity(1)
+                        .price(new BigDecimal("1999.99"))
+                        .build())))
+                .build();
+    }
+
+    private CreateOrderRequest createRequest() {
+        OrderItemRequest itemRequest = new OrderItemRequest();
+        itemRequest.setProductId(100L);
+        itemRequest.setQuantity(2);
+        CreateOrderRequest request = new CreateOrderRequest();
+        request.setItems(List.of(itemRequest));
+        request.setShippingAddress("Test Address");
+
+        when(orderItemResolver.resolve(request.getItems())).thenReturn(List.of(OrderItem.builder()
+                .productId(100L)
+                .productName("MacBook Pro")
+                .quantity(2)
+                .price(new BigDecimal("1999.99"))
+                .build()));
+        return request;
+    }
+}
@@ -0,0 +1,76 @@
+package service;
+
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.OrderRepository;
+import com.shop.order.service.PendingOrderCleanup;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для PendingOrderCleanup
+ *
+ * Тестирует:
+ * - Брошенный заказ в PENDING_VALIDATION удаляется после условного UPDATE
+ * - Заказ, который забрал другой инстанс, не удаляется
+ * - Берутся только заказы синхронного приёма, независимо от настройки асинхронного приёма
+ */
+@ExtendWith(MockitoExtension.class)
+class PendingOrderCleanupTest {
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @BeforeEach
+    void setUp() {
+        // TransactionTemplate просто выполняет переданный callback
+        lenient().when(transactionTemplate.execute(any()))
+                .thenAnswer(inv -> inv.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    void deleteStale_ClaimedOrder_DeletesIt() {
+        // Arrange
+        when(orderRepository.findIdsByStatusUpdatedBefore(eq(OrderStatus.PENDING_VALIDATION), eq(true),
+                any(LocalDateTime.class), any(Pageable.class))).thenReturn(List.of(10L, 11L));
+        when(orderRepository.claimStale(eq(10L), eq(OrderStatus.PENDING_VALIDATION), any(), any())).thenReturn(1);
+        when(orderRepository.claimStale(eq(11L), eq(OrderStatus.PENDING_VALIDATION), any(), any())).thenReturn(0);
+
+        // Act
+        cleanup().deleteStale();
+
+        // Assert: 11 успел забрать другой инстанс или заказ сменил статус
+        verify(orderRepository).deleteById(10L);
+        verify(orderRepository, never()).deleteById(11L);
+    }
+
+    @Test
+    void deleteStale_QueuedOrders_AreNotQueried() {
+        // Act
+        cleanup().deleteStale();
+
+        // Assert: заказы асинхронного приёма ждут очереди, их не ищут и не удаляют
+        verify(orderRepository, never()).findIdsByStatusUpdatedBefore(any(), eq(false), any(), any());
+        verify(orderRepository, never()).deleteById(any());
+    }
+
+    private PendingOrderCleanup cleanup() {
+        return new PendingOrderCleanup(orderRepository, transactionTemplate, Duration.ofMinutes(10), 100);
+    }
+}
@@ -0,0 +1,82 @@
+package service;
+
+import com.shop.order.OrderServiceApplication;
+import com.shop.order.client.ServiceClients;
+import com.shop.order.dto.CreateOrderRequest;
+import com.shop.order.dto.OrderDto;
+import com.shop.order.dto.OrderItemRequest;
+import com.shop.order.model.OrderItem;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.service.OrderItemResolver;
+import com.shop.order.service.ReactiveOrderService;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import reactor.core.publisher.Mono;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Интеграционный тест реактивного стека на H2/R2DBC (профиль reactive-local)
+ *
+ * Тестирует:
+ * - Создание заказа с сохранением позиций через R2DBC
+ * - Чтение заказа вместе с позициями
+ * - Отмену заказа с освобождением резерва
+ */
+@SpringBootTest(classes = OrderServiceApplication.class)
+@ActiveProfiles({"reactive", "reactive-local"})
+class ReactiveOrderServiceTest {
+
+    @Autowired
+    private ReactiveOrderService orderService;
+
+    @MockBean
+    private ServiceClients serviceClients;
+
+    @MockBean
+    private OrderItemResolver orderItemResolver;
+
+    @Test
+    void createOrder_ThenCancel_PersistsAndReleasesStock() {
+        // Arrange
+        OrderItemRequest itemRequest = new OrderItemRequest();
+        itemRequest.setProductId(100L);
+        itemRequest.setQuantity(2);
+        CreateOrderRequest request = new CreateOrderRequest();
+        request.setItems(List.of(itemRequest));
+        request.setShippingAddress("Test Address");
+
+        when(orderItemResolver.resolveAsync(request.getItems())).thenReturn(Mono.just(List.of(OrderItem.builder()
+                .productId(100L)
+                .productName("MacBook Pro")
+                .quantity(2)
+                .price(new BigDecimal("1999.99"))
+                .build())));
+        when(serviceClients.reserveStockBatchAsync(any())).thenReturn(Mono.empty());
+        when(serviceClients.releaseOrderStockAsync(any())).thenReturn(Mono.empty());
+
+        // Act
+        OrderDto created = orderService.createOrder(1L, request).block();
+        OrderDto loaded = orderService.getOrderById(created.getId()).block();
+        OrderDto cancelled = orderService.cancelOrder(created.getId(), 1L).block();
+
+        // Assert
+        assertEquals(OrderStatus.PENDING, loaded.getStatus());
+        assertEquals(0, new BigDecimal("3999.98").compareTo(loaded.getTotalAmount()));
+        assertEquals(1, loaded.getItems().size());
+        assertEquals("MacBook Pro", loaded.getItems().get(0).getProductName());
+        assertEquals(OrderStatus.CANCELLED, cancelled.getStatus());
+
+        verify(serviceClients).reserveStockBatchAsync(List.of(new ServiceClients.StockRequest(100L, 2)));
+        verify(serviceClients).releaseOrderStockAsync(
+                List.of(new ServiceClients.StockRequest(created.getId(), 100L, 2)));
+    }
+}
@@ -0,0 +1,115 @@
+package service;
+
+import com.shop.order.client.ServiceClients;
+import com.shop.order.model.Order;
+import com.shop.order.model.OrderItem;
+import com.shop.order.model.OrderStatus;
+import com.shop.order.repository.OrderRepository;
+import com.shop.order.service.ReservationPinner;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+/**
+ * Юнит-тест для ReservationPinner
+ *
+ * Тестирует:
+ * - Закрепление резерва одним вызовом склада с суммарным количеством по товару
+ * - Заказ не помечается закреплённым, если склад не ответил
+ * - Повторное закрепление принятых заказов, оставшихся незакреплёнными
+ */
+@ExtendWith(MockitoExtension.class)
+class ReservationPinnerTest {
+
+    @Mock
+    private OrderRepository orderRepository;
+
+    @Mock
+    private ServiceClients serviceClients;
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Test
+    void pin_Orders_PinsStockAndMarksOrders() {
+        // Arrange
+        doAnswer(inv -> {
+            inv.<Consumer<TransactionStatus>>getArgument(0).accept(null);
+            return null;
+        }).when(transactionTemplate).executeWithoutResult(any());
+
+        // Act
+        pinner().pin(List.of(order(1L, 100L, 100L), order(2L, 200L)));
+
+        // Assert
+        verify(serviceClients).pinOrderStock(List.of(
+                new ServiceClients.StockRequest(1L, 100L, 2),
+                new ServiceClients.StockRequest(2L, 200L, 1)));
+        verify(orderRepository).markStockPinned(List.of(1L, 2L));
+    }
+
+    @Test
+    void pin_InventoryUnavailable_LeavesOrdersUnpinned() {
+        // Arrange
+        doThrow(new RuntimeException("Service Unavailable")).when(serviceClients).pinOrderStock(any());
+
+        // Act: ошибка не доходит до вызывающего, заказ уже принят
+        pinner().pin(List.of(order(1L, 100L)));
+
+        // Assert
+        verify(orderRepository, never()).markStockPinned(any());
+    }
+
+    @Test
+    void pinStale_UnpinnedOrders_PinsThem() {
+        // Arrange
+        Order order = order(3L, 100L);
+        when(orderRepository.findUnpinnedIdsByStatusUpdatedBefore(eq(OrderStatus.PENDING), any(LocalDateTime.class),
+                any(Pageable.class))).thenReturn(List.of(3L));
+        when(orderRepository.findWithItemsByIdIn(List.of(3L))).thenReturn(List.of(order));
+
+        // Act
+        pinner().pinStale();
+
+        // Assert
+        verify(serviceClients).pinOrderStock(List.of(new ServiceClients.StockRequest(3L, 100L, 1)));
+    }
+
+    private ReservationPinner pinner() {
+        return new ReservationPinner(orderRepository, serviceClients, transactionTemplate, Duration.ofSeconds(30), 100);
+    }
+
+    private Order order(Long id, Long... productIds) {
+        Order order = Order.builder()
+                .id(id)
+                .userId(1L)
+                .status(OrderStatus.PENDING)
+                .stockPinned(false)
+                .totalAmount(BigDecimal.ZERO)
+                .items(new ArrayList<>())
+                .build();
+        for (Long productId : productIds) {
+            order.addItem(OrderItem.builder()
+                    .productId(productId)
+                    .quantity(1)
+                    .price(BigDecimal.ZERO)
+                    .build());
+        }
+        return order;
+    }
+}
@@ -1,5 +1,6 @@
 package com.shop.product.controller;
 
+import com.shop.product.dto.ProductBatchResponse;
 import com.shop.product.dto.ProductDto;
 import com.shop.product.service.ProductService;
 import jakarta.validation.Valid;
@@ -22,6 +23,16 @@ public class ProductController {
         return ResponseEntity.ok(productService.getAllProducts());
     }
     
+    @GetMapping("/batch")
+    public ResponseEntity<ProductBatchResponse> getProductsBatch(@RequestParam List<Long> ids) {
+        return ResponseEntity.ok(productService.getProductsByIds(ids));
+    }
+    
+    @PostMapping("/batch")
+    public ResponseEntity<ProductBatchResponse> getProductsBatchByBody(@RequestBody List<Long> ids) {
+        return ResponseEntity.ok(productService.getProductsByIds(ids));
+    }
+    
     @GetMapping("/{id}")
     public ResponseEntity<ProductDto> getProduct(@PathVariable Long id) {
         return ResponseEntity.ok(productService.getProductById(id));
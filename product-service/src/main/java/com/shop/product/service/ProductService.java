@@ -1,5 +1,6 @@
 package com.shop.product.service;
 
+import com.shop.product.dto.ProductBatchResponse;
 import com.shop.product.dto.ProductDto;
 import com.shop.product.model.Product;
 import com.shop.product.repository.ProductRepository;
@@ -7,7 +8,13 @@ import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Service
@@ -28,6 +35,29 @@ public class ProductService {
         return toDto(product);
     }
     
+    public ProductBatchResponse getProductsByIds(Collection<Long> ids) {
+        // Порядок ответа совпадает с порядком запрошенных ID, дубликаты отбрасываются
+        Set<Long> requestedIds = new LinkedHashSet<>(ids);
+        Map<Long, Product> found = productRepository.findAllById(requestedIds).stream()
+                .collect(Collectors.toMap(Product::getId, Function.identity()));
+        
+        List<ProductDto> products = new ArrayList<>();
+        List<Long> missingIds = new ArrayList<>();
+        for (Long id : requestedIds) {
+            Product product = found.get(id);
+            if (product != null) {
+                products.add(toDto(product));
+            } else {
+                missingIds.add(id);
+            }
+        }
+        
+        return ProductBatchResponse.builder()
+                .products(products)
+                .missingIds(missingIds)
+                .build();
+    }
+    
     public List<ProductDto> getProductsByCategory(String category) {
         return productRepository.findByCategory(category).stream()
                 .map(this::toDto)
@@ -1,3 +1,4 @@
+import com.shop.product.dto.ProductBatchResponse;
 import com.shop.product.dto.ProductDto;
 import com.shop.product.model.Product;
 import com.shop.product.repository.ProductRepository;
@@ -15,6 +16,7 @@ import java.util.List;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyIterable;
 import static org.mockito.Mockito.*;
 
 /**
@@ -24,6 +26,7 @@ import static org.mockito.Mockito.*;
  * - Получение товара по ID
  * - Поиск товаров по названию
  * - Обработка случая "товар не найден"
+ * - Пакетное получение товаров по списку ID
  */
 @ExtendWith(MockitoExtension.class)
 class ProductServiceTest {
@@ -105,4 +108,25 @@ class ProductServiceTest {
 
         verify(productRepository).findByNameContainingIgnoreCase("MacBook");
     }
+
+    @Test
+    void getProductsByIds_KeepsRequestOrderAndReportsMissing() {
+        // Arrange
+        Product product2 = Product.builder()
+                .id(2L)
+                .name("MacBook Air")
+                .price(new BigDecimal("999.99"))
+                .build();
+
+        when(productRepository.findAllById(anyIterable())).thenReturn(Arrays.asList(testProduct, product2));
+
+        // Act (ID 2 запрошен дважды, ID 999 не существует)
+        ProductBatchResponse result = productService.getProductsByIds(List.of(2L, 999L, 1L, 2L));
+
+        // Assert
+        assertEquals(List.of(2L, 1L), result.getProducts().stream().map(ProductDto::getId).toList());
+        assertEquals(List.of(999L), result.getMissingIds());
+
+        verify(productRepository, times(1)).findAllById(anyIterable());
+    }
 }
\ No newline at end of file